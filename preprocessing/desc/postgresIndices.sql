@@ -59,7 +59,8 @@ CREATE INDEX co_s_w2_id_sig_idx ON co_s USING btree (w2_id, sig);
 CREATE INDEX document_id_idx ON document USING btree (id);
 
 
-CREATE INDEX documententity_docid_entityid_idx ON documententity USING btree (docid, entityid);
+/* covers per-document entity lookups (index-only scans) */
+CREATE INDEX documententity_docid_entityid_frequency_idx ON documententity USING btree (docid, entityid, frequency);
 
 
 CREATE INDEX documententity_docid_idx ON documententity USING btree (docid);
@@ -68,6 +69,19 @@ CREATE INDEX documententity_docid_idx ON documententity USING btree (docid);
 CREATE INDEX documententity_entityid_idx ON documententity USING btree (entityid);
 
 
+ALTER TABLE ONLY entity
+    ADD CONSTRAINT unique_name_type UNIQUE (name, type);
+
+
+CREATE INDEX entity_id_idx ON entity USING btree (id);
+
+
+CREATE INDEX "Entity_Name_idx" ON entity USING btree ("left"((name)::text, 60));
+
+
+CREATE INDEX entity_id_name_idx ON entity USING btree (id, "left"((name)::text, 60));
+
+
 CREATE INDEX entityoffset_docid_entid_idx ON entityoffset USING btree (docid, entid);
 
 
@@ -39,16 +39,10 @@ CREATE TABLE entity (
     name character varying,
     type character varying,
     frequency integer,
-    isblacklisted boolean DEFAULT false NOT NULL,
-    CONSTRAINT unique_name_type UNIQUE (name, type)
+    isblacklisted boolean DEFAULT false NOT NULL
 );
 
 
-CREATE INDEX entity_id_idx ON entity USING btree (id);
-CREATE INDEX "Entity_Name_idx" ON entity USING btree ("left"((name)::text, 60));
-CREATE INDEX entity_id_name_idx ON entity USING btree (id, "left"((name)::text, 60));
-
-
 CREATE TABLE entityoffset (
     docid bigint NOT NULL,
     entid bigint NOT NULL,
@@ -2,8 +2,9 @@ package uhh_lt.newsleak.annotator;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.regex.Matcher;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.MatchResult;
 import java.util.regex.Pattern;
 
 import org.apache.uima.UimaContext;
@@ -20,9 +21,12 @@ import org.apache.uima.util.Logger;
 
 import opennlp.uima.Token;
 import uhh_lt.newsleak.resources.DictionaryResource;
-import uhh_lt.newsleak.resources.DictionaryResource.Dictionary;
+import uhh_lt.newsleak.resources.DictionaryResource.StemEntry;
 import uhh_lt.newsleak.types.DictTerm;
 import uhh_lt.newsleak.services.StatsService;
+import uhh_lt.newsleak.util.AhoCorasickAutomaton;
+import uhh_lt.newsleak.util.AhoCorasickAutomaton.Match;
+import uhh_lt.newsleak.util.PatternScanner;
 
 /**
  * A UIMA annotator to annotate regular expression patterns and dictionary
@@ -31,8 +35,10 @@ import uhh_lt.newsleak.services.StatsService;
  * files should be stored in <i>conf/dictionaries</i> and follow the naming
  * convention <i>dictionarytype.langcode</i> (e.g. spam.deu for German spam
  * terms). The files should contain dictionary terms one per line. Terms can be
- * multi word units (MWU). MWUs are searched by regular expression patterns
- * (case-insensitive). Single work units are stemmed and lowercased before
+ * multi word units (MWU). MWUs of all dictionaries are searched at once with a
+ * (case-insensitive) Aho-Corasick automaton. All enabled REs are matched in a
+ * single pass over the document text (see @see
+ * uhh_lt.newsleak.util.PatternScanner). Single work units are stemmed and lowercased before
  * comparison with tokens. Matching tokens are annotated as DictTerm type.
  */
 @OperationalProperties(multipleDeploymentAllowed = true, modifiesCas = true)
@@ -81,11 +87,14 @@ public class DictionaryExtractor extends JCasAnnotator_ImplBase {
 
 	private Logger log;
 
-	/** The unigram dictionaries. */
-	private HashMap<String, Dictionary> unigramDictionaries;
+	/** The mwu automaton. */
+	private AhoCorasickAutomaton<String> mwuAutomaton;
 
-	/** The mwu dictionaries. */
-	private HashMap<String, Dictionary> mwuDictionaries;
+	/** The scanner for the enabled regex patterns. */
+	private PatternScanner patternScanner;
+
+	/** The types of the regex patterns (indexed as in the pattern scanner). */
+	private static final String[] PATTERN_TYPES = { "EMAIL", "URL", "IP", "PHONE" };
 
 	/*
 	 * Uima initializer fetching dictionary entries.
@@ -97,8 +106,9 @@ public class DictionaryExtractor extends JCasAnnotator_ImplBase {
 	public void initialize(UimaContext context) throws ResourceInitializationException {
 		super.initialize(context);
 		log = context.getLogger();
-		unigramDictionaries = dictTermExtractor.getUnigramDictionaries();
-		mwuDictionaries = dictTermExtractor.getMwuDictionaries();
+		mwuAutomaton = dictTermExtractor.getMwuAutomaton();
+		patternScanner = new PatternScanner(extractEmail ? REGEX_EMAIL : null, extractUrl ? REGEX_URL : null,
+				extractIp ? REGEX_IP : null, extractPhone ? REGEX_PHONE : null);
 	}
 
 	/*
@@ -114,21 +124,13 @@ public class DictionaryExtractor extends JCasAnnotator_ImplBase {
 		StatsService.getInstance().addStatsEvent(StatsService.EVENT_TYPE_START, StatsService.DICTIONARY);
 		ArrayList<DictTerm> termsToTokenList = new ArrayList<DictTerm>();
 
-		// EMAIL
-		if (extractEmail)
-			termsToTokenList.addAll(annotateRegex(jcas, REGEX_EMAIL, "EMAIL"));
-
-		// URL
-		if (extractUrl)
-			termsToTokenList.addAll(annotateRegex(jcas, REGEX_URL, "URL"));
-
-		// IP
-		if (extractIp)
-			termsToTokenList.addAll(annotateRegex(jcas, REGEX_IP, "IP"));
-
-		// PHONE
-		if (extractPhone)
-			termsToTokenList.addAll(annotateRegex(jcas, REGEX_PHONE, "PHONE"));
+		// EMAIL, URL, IP and PHONE
+		List<List<MatchResult>> patternMatches = patternScanner.scan(jcas.getDocumentText());
+		for (int i = 0; i < PATTERN_TYPES.length; i++) {
+			for (MatchResult match : patternMatches.get(i)) {
+				termsToTokenList.add(annotateMatch(jcas, match, PATTERN_TYPES[i]));
+			}
+		}
 
 		// Set new token and sentence boundaries for pattern matches
 		correctTokenBoundaries(jcas, termsToTokenList);
@@ -155,9 +157,20 @@ public class DictionaryExtractor extends JCasAnnotator_ImplBase {
 	 *            the terms to token list
 	 */
 	private void correctTokenBoundaries(JCas jcas, ArrayList<DictTerm> termsToTokenList) {
+		if (termsToTokenList.isEmpty()) {
+			return;
+		}
+		// covered tokens of all matches in one sweep over the index, unless matches
+		// overlap (then a merged token may be covered by a later match)
+		Map<DictTerm, Collection<Token>> tokenIndex = overlap(termsToTokenList) ? null
+				: JCasUtil.indexCovered(jcas, DictTerm.class, Token.class);
 		for (DictTerm dictTerm : termsToTokenList) {
 			// tokens
-			Collection<Token> coveredTokens = JCasUtil.selectCovered(jcas, Token.class, dictTerm);
+			Collection<Token> coveredTokens = tokenIndex == null ? JCasUtil.selectCovered(jcas, Token.class, dictTerm)
+					: tokenIndex.get(dictTerm);
+			if (coveredTokens == null) {
+				continue;
+			}
 			if (coveredTokens.size() > 1) {
 				Token newToken = new Token(jcas);
 				boolean firstTok = true;
@@ -175,6 +188,24 @@ public class DictionaryExtractor extends JCasAnnotator_ImplBase {
 		}
 	}
 
+	/**
+	 * Checks if any two annotations overlap.
+	 *
+	 * @param terms
+	 *            the annotations
+	 * @return true, if there is an overlap
+	 */
+	private boolean overlap(List<DictTerm> terms) {
+		List<DictTerm> sortedTerms = new ArrayList<DictTerm>(terms);
+		sortedTerms.sort((a, b) -> Integer.compare(a.getBegin(), b.getBegin()));
+		for (int i = 1; i < sortedTerms.size(); i++) {
+			if (sortedTerms.get(i).getBegin() < sortedTerms.get(i - 1).getEnd()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Annotate dict types.
 	 *
@@ -192,13 +223,12 @@ public class DictionaryExtractor extends JCasAnnotator_ImplBase {
 		StringList typeList = new StringList(jcas);
 		StringList baseFormList = new StringList(jcas);
 
-		for (String dictType : unigramDictionaries.keySet()) {
-			HashMap<String, String> dict = unigramDictionaries.get(dictType);
-			if (dict.containsKey(tokenStem)) {
-				String baseForm = dict.get(tokenStem);
-				if (tokenValue.startsWith(baseForm)) {
-					typeList = typeList.push(dictType);
-					baseFormList = baseFormList.push(baseForm);
+		StemEntry[] entries = dictTermExtractor.getStemEntries(tokenStem);
+		if (entries != null) {
+			for (StemEntry entry : entries) {
+				if (tokenValue.startsWith(entry.getBaseForm())) {
+					typeList = typeList.push(entry.getDictType());
+					baseFormList = baseFormList.push(entry.getBaseForm());
 					dictTermFound = true;
 				}
 			}
@@ -217,50 +247,54 @@ public class DictionaryExtractor extends JCasAnnotator_ImplBase {
 	}
 
 	/**
-	 * Annotate multi word units (with regex pattern).
+	 * Annotate multi word units (in a single pass over the document text). Each
+	 * match is annotated once with all dictionary types of the matched unit.
 	 *
 	 * @param jcas
 	 *            the jcas
 	 */
 	private void annotateMultiWordUnits(JCas jcas) {
-		for (String dictType : mwuDictionaries.keySet()) {
-			HashMap<String, String> dict = mwuDictionaries.get(dictType);
-			for (String regexPattern : dict.keySet()) {
-				annotateRegex(jcas, Pattern.compile(regexPattern), dictType);
+		String docText = jcas.getDocumentText();
+		for (Match<String> match : mwuAutomaton.findAll(docText)) {
+			String matchedText = docText.substring(match.getBegin(), match.getEnd());
+			StringList typeList = new StringList(jcas);
+			StringList baseFormList = new StringList(jcas);
+			for (String dictType : match.getValues()) {
+				typeList = typeList.push(dictType);
+				baseFormList = baseFormList.push(matchedText);
 			}
+			DictTerm dictTerm = new DictTerm(jcas);
+			dictTerm.setBegin(match.getBegin());
+			dictTerm.setEnd(match.getEnd());
+			dictTerm.setDictType(typeList);
+			dictTerm.setDictTerm(baseFormList);
+			dictTerm.addToIndexes();
 		}
 	}
 
 	/**
-	 * Annotate regex patterns (URLs, IPs, email addresses and Phone numbers)
+	 * Annotate a regex match.
 	 *
 	 * @param jcas
 	 *            the jcas
-	 * @param pattern
-	 *            the pattern
+	 * @param match
+	 *            the match
 	 * @param type
 	 *            the type
-	 * @return the array list
+	 * @return the dict term
 	 */
-	public ArrayList<DictTerm> annotateRegex(JCas jcas, Pattern pattern, String type) {
-		String docText = jcas.getDocumentText();
-		ArrayList<DictTerm> regexMatches = new ArrayList<DictTerm>();
-		Matcher matcher = pattern.matcher(docText);
-		// Check all occurrences
-		while (matcher.find()) {
-			DictTerm dictTerm = new DictTerm(jcas);
-			dictTerm.setBegin(matcher.start());
-			dictTerm.setEnd(matcher.end());
-			StringList typeList = new StringList(jcas);
-			StringList baseFormList = new StringList(jcas);
-			typeList = typeList.push(type);
-			baseFormList = baseFormList.push(matcher.group());
-			dictTerm.setDictType(typeList);
-			dictTerm.setDictTerm(baseFormList);
-			dictTerm.addToIndexes();
-			regexMatches.add(dictTerm);
-		}
-		return regexMatches;
+	private DictTerm annotateMatch(JCas jcas, MatchResult match, String type) {
+		DictTerm dictTerm = new DictTerm(jcas);
+		dictTerm.setBegin(match.start());
+		dictTerm.setEnd(match.end());
+		StringList typeList = new StringList(jcas);
+		StringList baseFormList = new StringList(jcas);
+		typeList = typeList.push(type);
+		baseFormList = baseFormList.push(match.group());
+		dictTerm.setDictType(typeList);
+		dictTerm.setDictTerm(baseFormList);
+		dictTerm.addToIndexes();
+		return dictTerm;
 	}
 
 	/**
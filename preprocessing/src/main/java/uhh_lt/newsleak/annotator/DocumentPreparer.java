@@ -0,0 +1,203 @@
+package uhh_lt.newsleak.annotator;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.fit.component.JCasMultiplier_ImplBase;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.fit.descriptor.ExternalResource;
+import org.apache.uima.fit.descriptor.OperationalProperties;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.Level;
+import org.apache.uima.util.Logger;
+
+import de.unihd.dbs.uima.types.heideltime.Dct;
+import uhh_lt.newsleak.resources.ElasticsearchResource;
+import uhh_lt.newsleak.types.Metadata;
+import uhh_lt.newsleak.writer.ElasticsearchDocumentWriter;
+
+/**
+ * CAS multiplier which prepares a document from a reader for information
+ * extraction in the same pipeline (instead of writing it to a temporary
+ * elasticsearch index and reading it again).
+ *
+ * For each input document of one of the languages to process, a new CAS is
+ * created which contains the same content as the @see
+ * uhh_lt.newsleak.reader.NewsleakElasticsearchReader would read after the
+ * @see uhh_lt.newsleak.writer.ElasticsearchDocumentWriter: the normalized
+ * fulltext, the document language, a new newsleak document id, the document
+ * date and the document creation time for heideltime. The mapping of
+ * temporary to new document ids is kept by the @see
+ * uhh_lt.newsleak.resources.ElasticsearchResource.
+ *
+ * Paragraph splitting is not supported. Documents of other languages, empty
+ * documents and overly long documents do not produce a new CAS.
+ */
+@OperationalProperties(multipleDeploymentAllowed = true, modifiesCas = false, outputsNewCases = true)
+public class DocumentPreparer extends JCasMultiplier_ImplBase {
+
+	/** The logger. */
+	private Logger logger;
+
+	/** The Constant RESOURCE_ESCLIENT. */
+	public static final String RESOURCE_ESCLIENT = "esResource";
+
+	/** The es resource (document ids and id mapping). */
+	@ExternalResource(key = RESOURCE_ESCLIENT)
+	private ElasticsearchResource esResource;
+
+	/** The Constant PARAM_PROCESS_LANGUAGES. */
+	public static final String PARAM_PROCESS_LANGUAGES = "processLanguages";
+
+	/** The process languages. */
+	@ConfigurationParameter(name = PARAM_PROCESS_LANGUAGES, mandatory = true, description = "ISO 639-3 codes of the languages to process.")
+	private String[] processLanguages;
+
+	/** The Constant PARAM_MAX_DOC_LENGTH. */
+	public static final String PARAM_MAX_DOC_LENGTH = "maxDocumentLength";
+
+	/** The max document length. */
+	@ConfigurationParameter(name = PARAM_MAX_DOC_LENGTH, mandatory = false)
+	private Integer maxDocumentLength = Integer.MAX_VALUE;
+
+	/** The languages to process. */
+	private HashSet<String> languages;
+
+	/** The fulltext of the next new CAS (null, if there is none). */
+	private String nextText;
+
+	/** The language of the next new CAS. */
+	private String nextLanguage;
+
+	/** The document id of the next new CAS. */
+	private Integer nextDocId;
+
+	/** The document date of the next new CAS. */
+	private String nextDate;
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.apache.uima.fit.component.JCasMultiplier_ImplBase#initialize(org.apache.
+	 * uima.UimaContext)
+	 */
+	@Override
+	public void initialize(UimaContext context) throws ResourceInitializationException {
+		super.initialize(context);
+		logger = context.getLogger();
+		languages = new HashSet<String>(Arrays.asList(processLanguages));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.apache.uima.analysis_component.JCasMultiplier_ImplBase#process(org.apache.
+	 * uima.jcas.JCas)
+	 */
+	@Override
+	public void process(JCas jcas) throws AnalysisEngineProcessException {
+		nextText = null;
+		String docText = jcas.getDocumentText();
+		Metadata metadata = (Metadata) jcas.getAnnotationIndex(Metadata.type).iterator().next();
+		String tmpDocId = metadata.getDocId();
+
+		// skip empty documents and documents of other languages
+		if (docText.trim().length() == 0 || !languages.contains(jcas.getDocumentLanguage())) {
+			return;
+		}
+
+		// same normalization as for the temporary elasticsearch index
+		docText = docText.replaceAll("\\r\\n", "\n");
+		docText = docText.replaceAll("\\r", "\n");
+		docText = ElasticsearchDocumentWriter.dehyphenate(docText);
+		docText = ElasticsearchDocumentWriter.replaceHtmlLineBreaks(docText);
+
+		if (docText.length() > maxDocumentLength) {
+			// skip overly long documents
+			logger.log(Level.SEVERE,
+					"Skipping document " + tmpDocId + ". Exceeds maximum length (" + maxDocumentLength + ")");
+			return;
+		}
+
+		DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+		try {
+			Date created = dateFormat.parse(metadata.getTimestamp());
+			nextDate = dateFormat.format(created);
+		} catch (ParseException e) {
+			logger.log(Level.SEVERE, "Could not parse document date from document " + tmpDocId);
+			return;
+		} catch (NullPointerException e) {
+			logger.log(Level.SEVERE, "No date for document " + tmpDocId);
+			return;
+		}
+
+		// generate new id from auto-increment and keep track of the mapping
+		nextDocId = esResource.getNextDocumentId();
+		esResource.addDocumentIdMapping(Integer.parseInt(tmpDocId), new ArrayList<Integer>(Arrays.asList(nextDocId)));
+		nextLanguage = jcas.getDocumentLanguage();
+		nextText = docText;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.apache.uima.analysis_component.AnalysisComponent#hasNext()
+	 */
+	@Override
+	public boolean hasNext() throws AnalysisEngineProcessException {
+		return nextText != null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.apache.uima.analysis_component.JCasMultiplier_ImplBase#next()
+	 */
+	@Override
+	public JCas next() throws AnalysisEngineProcessException {
+		JCas newCas = getEmptyJCas();
+		newCas.setDocumentText(nextText);
+		newCas.setDocumentLanguage(nextLanguage);
+
+		// metadata
+		Metadata metaCas = new Metadata(newCas);
+		metaCas.setDocId(nextDocId.toString());
+		metaCas.setTimestamp(nextDate);
+		metaCas.addToIndexes();
+
+		// heideltime
+		Dct dct = new Dct(newCas);
+		dct.setValue(nextDate);
+		dct.addToIndexes();
+
+		nextText = null;
+		return newCas;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.apache.uima.analysis_component.AnalysisComponent_ImplBase#
+	 * collectionProcessComplete()
+	 */
+	@Override
+	public void collectionProcessComplete() throws AnalysisEngineProcessException {
+		try {
+			esResource.writeDocumentIdMapping();
+		} catch (Exception e) {
+			throw new AnalysisEngineProcessException(e);
+		}
+		super.collectionProcessComplete();
+	}
+
+}
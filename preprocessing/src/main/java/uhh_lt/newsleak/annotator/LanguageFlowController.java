@@ -0,0 +1,133 @@
+package uhh_lt.newsleak.annotator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.flow.FinalStep;
+import org.apache.uima.flow.Flow;
+import org.apache.uima.flow.FlowControllerContext;
+import org.apache.uima.flow.JCasFlow_ImplBase;
+import org.apache.uima.flow.SimpleStep;
+import org.apache.uima.flow.Step;
+import org.apache.uima.fit.component.JCasFlowController_ImplBase;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+
+/**
+ * Flow controller of the single-pass information extraction pipeline. Input
+ * CASes (as produced by a reader) pass the pre steps (e.g. language detection
+ * and the @see uhh_lt.newsleak.annotator.DocumentPreparer CAS multiplier).
+ * CASes created within the aggregate are routed to the annotation branch of
+ * their document language (the branch is the component with the language code
+ * as key), then pass the post steps (e.g. the writers) and are dropped
+ * afterwards.
+ */
+public class LanguageFlowController extends JCasFlowController_ImplBase {
+
+	/** The Constant PARAM_PRE_STEPS. */
+	public static final String PARAM_PRE_STEPS = "preSteps";
+
+	/** The pre steps. */
+	@ConfigurationParameter(name = PARAM_PRE_STEPS, mandatory = true, description = "Keys of the components each input CAS passes.")
+	private String[] preSteps;
+
+	/** The Constant PARAM_POST_STEPS. */
+	public static final String PARAM_POST_STEPS = "postSteps";
+
+	/** The post steps. */
+	@ConfigurationParameter(name = PARAM_POST_STEPS, mandatory = true, description = "Keys of the components each new CAS passes after its language branch.")
+	private String[] postSteps;
+
+	/** The keys of all components of the aggregate. */
+	private Set<String> componentKeys;
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.apache.uima.flow.FlowController_ImplBase#initialize(org.apache.uima.flow.
+	 * FlowControllerContext)
+	 */
+	@Override
+	public void initialize(FlowControllerContext context) throws ResourceInitializationException {
+		super.initialize(context);
+		componentKeys = context.getAnalysisEngineMetaDataMap().keySet();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * org.apache.uima.flow.JCasFlowController_ImplBase#computeFlow(org.apache.uima.
+	 * jcas.JCas)
+	 */
+	@Override
+	public Flow computeFlow(JCas jcas) throws AnalysisEngineProcessException {
+		return new StepFlow(Arrays.asList(preSteps), false);
+	}
+
+	/**
+	 * A flow along a fixed list of steps.
+	 */
+	private class StepFlow extends JCasFlow_ImplBase {
+
+		/** The steps. */
+		private List<String> steps;
+
+		/** True, if the CAS has been created within the aggregate. */
+		private boolean newCas;
+
+		/** The index of the next step. */
+		private int nextStep = 0;
+
+		/**
+		 * Instantiates a new step flow.
+		 *
+		 * @param steps
+		 *            the keys of the components to pass
+		 * @param newCas
+		 *            true, if the CAS has been created within the aggregate
+		 */
+		StepFlow(List<String> steps, boolean newCas) {
+			this.steps = steps;
+			this.newCas = newCas;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.apache.uima.flow.Flow#next()
+		 */
+		@Override
+		public Step next() throws AnalysisEngineProcessException {
+			if (nextStep < steps.size()) {
+				return new SimpleStep(steps.get(nextStep++));
+			}
+			// new CASes do not leave the aggregate
+			return newCas ? new FinalStep(true) : new FinalStep();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * org.apache.uima.flow.JCasFlow_ImplBase#newCasProduced(org.apache.uima.jcas.
+		 * JCas, java.lang.String)
+		 */
+		@Override
+		protected Flow newCasProduced(JCas newCas, String producedBy) throws AnalysisEngineProcessException {
+			List<String> newCasSteps = new ArrayList<String>();
+			String language = newCas.getDocumentLanguage();
+			if (componentKeys.contains(language)) {
+				newCasSteps.add(language);
+			}
+			newCasSteps.addAll(Arrays.asList(postSteps));
+			return new StepFlow(newCasSteps, true);
+		}
+	}
+
+}
@@ -7,16 +7,18 @@ import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.ObjectInputStream;
+import java.sql.ResultSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
 import org.apache.commons.csv.CSVRecord;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.uima.analysis_engine.AnalysisEngineDescription;
 import org.apache.uima.collection.CollectionProcessingEngine;
@@ -25,21 +27,27 @@ import org.apache.uima.fit.cpe.CpeBuilder;
 import org.apache.uima.fit.factory.AnalysisEngineFactory;
 import org.apache.uima.fit.factory.CollectionReaderFactory;
 import org.apache.uima.fit.factory.ExternalResourceFactory;
+import org.apache.uima.fit.factory.FlowControllerFactory;
+import org.apache.uima.flow.FlowControllerDescription;
 import org.apache.uima.resource.ExternalResourceDescription;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.util.Level;
 import org.postgresql.copy.CopyManager;
 import org.postgresql.core.BaseConnection;
 import uhh_lt.newsleak.annotator.DictionaryExtractor;
+import uhh_lt.newsleak.annotator.DocumentPreparer;
 import uhh_lt.newsleak.annotator.HeidelTimeOpenNLP;
 import uhh_lt.newsleak.annotator.KeytermExtractor;
 import uhh_lt.newsleak.annotator.LanguageDetector;
+import uhh_lt.newsleak.annotator.LanguageFlowController;
 import uhh_lt.newsleak.annotator.NerMicroservice;
 import uhh_lt.newsleak.annotator.SentenceCleaner;
 import uhh_lt.newsleak.annotator.SegmenterICU;
 import uhh_lt.newsleak.reader.*;
 import uhh_lt.newsleak.resources.*;
 import uhh_lt.newsleak.util.Doc2VecUtil;
+import uhh_lt.newsleak.util.SqlScriptRunner;
+import uhh_lt.newsleak.services.CooccurrenceService;
 import uhh_lt.newsleak.services.StatsService;
 import uhh_lt.newsleak.writer.Doc2VecWriter;
 import uhh_lt.newsleak.writer.ElasticsearchDocumentWriter;
@@ -62,10 +70,22 @@ import uhh_lt.newsleak.writer.PostgresDbWriter;
  * 
  * Extracted information is written into a relation database (postgres) to allow
  * the newsleak explorer app relational queries lateron.
+ * 
+ * With fusedpipeline = true, both processes run as a single pass without the
+ * temporary elasticsearch index: documents are routed to the annotation
+ * components of their language right after language detection (not available
+ * in combination with paragraphsasdocuments).
+ * 
+ * With the command line option --resume, an interrupted run is continued:
+ * language detection is skipped and documents already stored in the database
+ * are not processed again (two-pass pipeline only).
  *
  */
 public class InformationExtraction2Postgres extends NewsleakPreprocessor {
 
+	/** Ids of documents processed by an interrupted run (resume mode only). */
+	private String processedIdsFile = null;
+
 	/**
 	 * The main method running language detection and information extraction.
 	 *
@@ -84,29 +104,179 @@ public class InformationExtraction2Postgres extends NewsleakPreprocessor {
 		//sets the run information
 		StatsService.getInstance().setRunInformation(np.statsDirectory, np.threads);
 
-		String pathToTrainingFile = np.doc2vecTrainingDir+File.separator+np.trainingFileName+".txt";
-		Doc2VecUtil.deleteOldTrainingData(pathToTrainingFile, np.logger);
-		// run language detection
-		np.pipelineLanguageDetection();
-		// extract information (per language)
-		np.pipelineAnnotation();
+		if (np.resume && np.fusedPipeline && !np.paragraphsAsDocuments) {
+			// the single-pass pipeline keeps no temporary index to resume from
+			np.logger.log(Level.SEVERE, "Resuming is not supported by the single-pass pipeline. "
+					+ "Run again without --resume, or set fusedpipeline = false.");
+			System.exit(1);
+		}
+
+		if (np.resume && np.prepareResume()) {
+			np.logger.log(Level.INFO, "Resuming interrupted run (language detection is skipped)");
+			// extract information (per language)
+			np.pipelineAnnotation();
+		} else {
+			// a fresh run must not be resumed with the id mapping of an earlier run
+			np.deleteDocumentIdMapping();
+			String pathToTrainingFile = np.doc2vecTrainingDir+File.separator+np.trainingFileName+".txt";
+			Doc2VecUtil.deleteOldTrainingData(pathToTrainingFile, np.logger);
+			if (np.fusedPipeline && !np.paragraphsAsDocuments) {
+				// language detection and information extraction in one pass
+				np.pipelineFused();
+			} else {
+				if (np.fusedPipeline) {
+					np.logger.log(Level.WARNING,
+							"Single-pass pipeline does not support paragraphsasdocuments. Running two passes.");
+				}
+				// run language detection
+				np.pipelineLanguageDetection();
+				// extract information (per language)
+				np.pipelineAnnotation();
+			}
+		}
 
 		// init postgres db
 		np.initDb(np.dbName, np.dbUrl, np.dbUser, np.dbPass);
 		
-		// create postgres indices
-		String indexSql = FileUtils.readFileToString(new File(np.dbIndices)).replace("\n", "");
+		// import temporary metadata.csv
+		np.metadataToPostgres();
+
+		// entity co-occurrences counted during annotation of all languages
+		if (np.dbCooccurrences) {
+			CooccurrenceService.getInstance().writeToPostgres(conn, np.logger);
+		}
+
+		// create postgres indices on the loaded tables
+		np.createIndices();
+
+		conn.close();
+	}
+
+	/**
+	 * Prepares resuming an interrupted run. The document table serves as
+	 * checkpoint: a document is written in the same transaction as its entities,
+	 * offsets, time expressions and key terms, so every document in the table
+	 * has been processed completely. Ids of these documents are exported for the
+	 * reader to skip them, and the database is appended to instead of being
+	 * recreated.
+	 * 
+	 * Resuming requires a finished language detection of the interrupted run
+	 * (i.e. the document id mapping file), since document ids are assigned
+	 * there. The file is deleted at the start of each new run, so it never stems
+	 * from an earlier run.
+	 *
+	 * @return true, if the run can be resumed
+	 */
+	private boolean prepareResume() {
+		if (!getDocumentIdMappingFile().exists()) {
+			this.logger.log(Level.WARNING,
+					"Language detection of the interrupted run has not finished. Starting a new run.");
+			return false;
+		}
+
 		try {
-			st.executeUpdate(indexSql);
-			np.logger.log(Level.INFO, "Index created");
+			initDb(this.dbName, this.dbUrl, this.dbUser, this.dbPass);
+
+			// checkpoint: ids of all committed documents
+			File skipIdsFile = new File(this.dataDirectory + File.separator + "processed-ids.txt");
+			CopyManager cpManager = new CopyManager((BaseConnection) conn);
+			long n;
+			try (BufferedWriter writer = new BufferedWriter(new FileWriter(skipIdsFile))) {
+				n = cpManager.copyOut("COPY (SELECT id FROM document) TO STDOUT", writer);
+			}
+			this.processedIdsFile = skipIdsFile.getAbsolutePath();
+			this.logger.log(Level.INFO, n + " documents have been processed by the interrupted run");
+
+			// entity frequencies may contain mentions of uncommitted documents
+			st.executeUpdate("UPDATE entity AS e SET frequency = d.frequency FROM (SELECT entityid, "
+					+ "sum(frequency) AS frequency FROM documententity GROUP BY entityid) AS d WHERE e.id = d.entityid");
+			int nRemoved = st.executeUpdate(
+					"DELETE FROM entity AS e WHERE NOT EXISTS (SELECT 1 FROM documententity AS d WHERE d.entityid = e.id)");
+			this.logger.log(Level.INFO, "Entity frequencies recounted (" + nRemoved + " entities removed)");
+
+			if (this.dbCooccurrences) {
+				CooccurrenceService.getInstance().restoreDocumentCooccurrences(conn, this.logger);
+				this.logger.log(Level.WARNING,
+						"Sentence co-occurrences only cover documents processed after resuming");
+			}
+
+			conn.close();
 		} catch (Exception e) {
+			this.logger.log(Level.WARNING, "Could not read the db of the interrupted run. Starting a new run.");
 			e.printStackTrace();
+			this.processedIdsFile = null;
+			return false;
 		}
-		
-		// import temporary metadata.csv
-		np.metadataToPostgres();
+		return true;
+	}
 
-		conn.close();
+	/**
+	 * Gets the document id mapping file, which is written when the language
+	 * detection (i.e. the assignment of document ids) has finished.
+	 *
+	 * @return the id mapping file
+	 */
+	private File getDocumentIdMappingFile() {
+		if (this.readerType.equals("hoover") || this.readerType.equals("hoover-transparenz")) {
+			this.metadataFile = this.hooverTmpMetadata;
+		}
+		return new File(this.dataDirectory + File.separator + this.metadataFile + ".id-map");
+	}
+
+	/**
+	 * Deletes the document id mapping file of a previous run. The file then only
+	 * exists, if the language detection of the current run has finished.
+	 */
+	private void deleteDocumentIdMapping() {
+		File idMapFile = getDocumentIdMappingFile();
+		if (idMapFile.exists() && !idMapFile.delete()) {
+			this.logger.log(Level.SEVERE, "Could not delete document id mapping file " + idMapFile);
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Creates the indices (and constraints) from the index script after all data
+	 * has been loaded. Index definitions are executed concurrently over several
+	 * connections, remaining statements (e.g. privileges) afterwards. In bulk
+	 * load mode, unlogged tables are switched to logged at the end.
+	 */
+	private void createIndices() {
+		try {
+			List<String> indexStatements = new ArrayList<String>();
+			List<String> otherStatements = new ArrayList<String>();
+			for (String statement : SqlScriptRunner.readStatements(this.dbIndices)) {
+				if (statement.startsWith("CREATE INDEX") || statement.startsWith("ALTER TABLE")) {
+					indexStatements.add(statement);
+				} else {
+					otherStatements.add(statement);
+				}
+			}
+
+			SqlScriptRunner sqlScriptRunner = new SqlScriptRunner(this.dbUrl, this.dbName, this.dbUser, this.dbPass,
+					this.dbIndexThreads, this.logger);
+			long start = System.currentTimeMillis();
+			int failed = sqlScriptRunner.executeParallel(indexStatements);
+			for (String statement : otherStatements) {
+				st.execute(statement);
+			}
+			this.logger.log(Level.INFO, (indexStatements.size() - failed) + " indices created in "
+					+ (System.currentTimeMillis() - start) + " ms (" + failed + " failed)");
+
+			if (this.dbBulkLoad) {
+				List<String> loggedStatements = new ArrayList<String>();
+				ResultSet rs = st.executeQuery("SELECT relname FROM pg_class WHERE relkind = 'r' "
+						+ "AND relpersistence = 'u' AND relnamespace = 'public'::regnamespace");
+				while (rs.next()) {
+					loggedStatements.add("ALTER TABLE " + rs.getString(1) + " SET LOGGED");
+				}
+				rs.close();
+				failed = sqlScriptRunner.executeParallel(loggedStatements);
+				this.logger.log(Level.INFO, (loggedStatements.size() - failed) + " tables switched to logged");
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
 	}
 
 	/**
@@ -141,7 +311,7 @@ public class InformationExtraction2Postgres extends NewsleakPreprocessor {
 
 	private void mappingIdsInMetadata(String mappedMetadataFile) throws Exception {
 		// read mappings file
-		FileInputStream fis = new FileInputStream(this.dataDirectory + File.separator + this.metadataFile + ".id-map");
+		FileInputStream fis = new FileInputStream(getDocumentIdMappingFile());
 		ObjectInputStream ois = new ObjectInputStream(fis);
 		HashMap<Integer, ArrayList<Integer>> documentIdMapping = (HashMap<Integer, ArrayList<Integer>>) ois
 				.readObject();
@@ -206,29 +376,37 @@ public class InformationExtraction2Postgres extends NewsleakPreprocessor {
 			ExternalResourceDescription hooverResource = ExternalResourceFactory.createExternalResourceDescription(
 					HooverResource.class, HooverResource.PARAM_HOST, this.hooverHost, HooverResource.PARAM_CLUSTERNAME,
 					this.hooverClustername, HooverResource.PARAM_INDEX, this.hooverIndex, HooverResource.PARAM_PORT,
-					this.hooverPort, HooverResource.PARAM_SEARCHURL, this.hooverSearchUrl);
+					this.hooverPort, HooverResource.PARAM_SEARCHURL, this.hooverSearchUrl,
+					HooverResource.PARAM_MAX_CONNECTIONS, this.hooverConnections, HooverResource.PARAM_MGET_BATCH_SIZE,
+					this.hooverMgetBatchSize, HooverResource.PARAM_PREFETCH_BATCHES, this.hooverPrefetchBatches,
+					HooverResource.PARAM_SCROLL_KEEP_ALIVE, this.hooverScrollKeepAlive);
 			reader = CollectionReaderFactory.createReaderDescription(HooverElasticsearchReader.class, this.typeSystem,
 					HooverElasticsearchReader.RESOURCE_HOOVER, hooverResource,
 					HooverElasticsearchReader.RESOURCE_METADATA, this.getMetadataResourceDescription(),
 					NewsleakReader.PARAM_DEBUG_MAX_DOCS, this.debugMaxDocuments, NewsleakReader.PARAM_MAX_DOC_LENGTH,
-					this.maxDocumentLength);
+					this.maxDocumentLength, NewsleakReader.PARAM_DOCUMENT_CACHE, this.documentCacheDirectory);
 		} else if (type.equals("transparenz")) {
 			reader = CollectionReaderFactory.createReaderDescription(TransparenzReader.class, this.typeSystem,
 					TransparenzReader.PARAM_DEFAULT_LANG, this.defaultLanguage, TransparenzReader.RESOURCE_METADATA, this.getMetadataResourceDescription(),
 					TransparenzReader.TRANSPARENZ_CORE_ADDRESS, this.transparenzCoreAddress,
+					TransparenzReader.PARAM_SOLR_PAGE_SIZE, this.transparenzPageSize,
 					NewsleakReader.PARAM_DEBUG_MAX_DOCS, this.debugMaxDocuments, NewsleakReader.PARAM_MAX_DOC_LENGTH,
-					this.maxDocumentLength);
+					this.maxDocumentLength, NewsleakReader.PARAM_DOCUMENT_CACHE, this.documentCacheDirectory);
 		} else if(type.equals("hoover-transparenz")){
 			this.metadataFile = this.hooverTmpMetadata;
 			ExternalResourceDescription hooverResource = ExternalResourceFactory.createExternalResourceDescription(
 					HooverResource.class, HooverResource.PARAM_HOST, this.hooverHost, HooverResource.PARAM_CLUSTERNAME,
 					this.hooverClustername, HooverResource.PARAM_INDEX, this.hooverIndex, HooverResource.PARAM_PORT,
-					this.hooverPort, HooverResource.PARAM_SEARCHURL, this.hooverSearchUrl);
+					this.hooverPort, HooverResource.PARAM_SEARCHURL, this.hooverSearchUrl,
+					HooverResource.PARAM_MAX_CONNECTIONS, this.hooverConnections, HooverResource.PARAM_MGET_BATCH_SIZE,
+					this.hooverMgetBatchSize, HooverResource.PARAM_PREFETCH_BATCHES, this.hooverPrefetchBatches,
+					HooverResource.PARAM_SCROLL_KEEP_ALIVE, this.hooverScrollKeepAlive);
 			reader = CollectionReaderFactory.createReaderDescription(HooverTransparenzReader.class, this.typeSystem,
 					HooverElasticsearchReader.RESOURCE_HOOVER, hooverResource,
 					HooverElasticsearchReader.RESOURCE_METADATA, this.getMetadataResourceDescription(), HooverTransparenzReader.TRANSPARENZ_CORE_ADDRESS, this.transparenzCoreAddress,
+					HooverTransparenzReader.PARAM_SOLR_PAGE_SIZE, this.transparenzPageSize,
 					NewsleakReader.PARAM_DEBUG_MAX_DOCS, this.debugMaxDocuments, NewsleakReader.PARAM_MAX_DOC_LENGTH,
-					this.maxDocumentLength);
+					this.maxDocumentLength, NewsleakReader.PARAM_DOCUMENT_CACHE, this.documentCacheDirectory);
 		}else {
 			this.logger.log(Level.SEVERE, "Unknown reader type: " + type);
 			System.exit(1);
@@ -236,6 +414,36 @@ public class InformationExtraction2Postgres extends NewsleakPreprocessor {
 		return reader;
 	}
 
+	/**
+	 * Checks if all languages to process are supported by the language detector.
+	 */
+	private void checkLanguageSupport() {
+		HashSet<String> supportedLanguages = LanguageDetector.getSupportedLanguages();
+		for (String lang : this.processLanguages) {
+			if (!supportedLanguages.contains(lang)) {
+				logger.log(Level.SEVERE, "Language " + lang + " not supported (use ISO 639-3 codes)");
+				System.exit(1);
+			}
+		}
+	}
+
+	/**
+	 * Gets the language detection annotator.
+	 *
+	 * @return the language detector description
+	 * @throws ResourceInitializationException
+	 *             the resource initialization exception
+	 */
+	private AnalysisEngineDescription getLanguageDetector() throws ResourceInitializationException {
+		ExternalResourceDescription resourceLangDect = ExternalResourceFactory.createExternalResourceDescription(
+				LanguageDetectorResource.class, LanguageDetectorResource.PARAM_MODEL_FILE,
+				"resources/langdetect-183.bin");
+		return AnalysisEngineFactory.createEngineDescription(LanguageDetector.class, LanguageDetector.MODEL_FILE,
+				resourceLangDect, LanguageDetector.METADATA_FILE, this.getMetadataResourceDescription(),
+				LanguageDetector.PARAM_DEFAULT_LANG, this.defaultLanguage, LanguageDetector.DOCLANG_FILE,
+				"data/documentLanguages.ser");
+	}
+
 	/**
 	 * The language detection pipeline detects the language of each document and
 	 * writes this information and the metadata acquired by the the reader
@@ -249,25 +457,13 @@ public class InformationExtraction2Postgres extends NewsleakPreprocessor {
 		statusListener = new NewsleakStatusCallbackListener(this.logger);
 
 		// check for language support
-		HashSet<String> supportedLanguages = LanguageDetector.getSupportedLanguages();
-		for (String lang : this.processLanguages) {
-			if (!supportedLanguages.contains(lang)) {
-				logger.log(Level.SEVERE, "Language " + lang + " not supported (use ISO 639-3 codes)");
-				System.exit(1);
-			}
-		}
+		checkLanguageSupport();
 
 		// reader
 		CollectionReaderDescription reader = getReader(this.readerType);
 
 		// language detection annotator
-		ExternalResourceDescription resourceLangDect = ExternalResourceFactory.createExternalResourceDescription(
-				LanguageDetectorResource.class, LanguageDetectorResource.PARAM_MODEL_FILE,
-				"resources/langdetect-183.bin");
-		AnalysisEngineDescription langDetect = AnalysisEngineFactory.createEngineDescription(LanguageDetector.class,
-				LanguageDetector.MODEL_FILE, resourceLangDect, LanguageDetector.METADATA_FILE,
-				this.getMetadataResourceDescription(), LanguageDetector.PARAM_DEFAULT_LANG, this.defaultLanguage,
-				LanguageDetector.DOCLANG_FILE, "data/documentLanguages.ser");
+		AnalysisEngineDescription langDetect = getLanguageDetector();
 
 		// elasticsearch writer to store fulltexts
 		AnalysisEngineDescription esWriter = AnalysisEngineFactory.createEngineDescription(
@@ -296,6 +492,102 @@ public class InformationExtraction2Postgres extends NewsleakPreprocessor {
 
 	}
 
+	/**
+	 * Gets the annotators of a language (sentence detection, sentence cleaning,
+	 * dictionary annotation, named entity recognition and keyterm extraction).
+	 *
+	 * @param language
+	 *            the ISO 639-3 language code
+	 * @return the aggregate description of the annotators
+	 * @throws ResourceInitializationException
+	 *             the resource initialization exception
+	 */
+	private AnalysisEngineDescription getLanguageAnnotators(String language) throws ResourceInitializationException {
+		Locale locale = LanguageDetector.localeToISO().get(language);
+
+		// sentences
+		AnalysisEngineDescription sentenceICU = AnalysisEngineFactory.createEngineDescription(SegmenterICU.class,
+				SegmenterICU.PARAM_LOCALE, language);
+
+		// sentence cleaner
+		AnalysisEngineDescription sentenceCleaner = AnalysisEngineFactory
+				.createEngineDescription(SentenceCleaner.class);
+
+		// heideltime
+		AnalysisEngineDescription heideltime = AnalysisEngineFactory.createEngineDescription(
+				HeidelTimeOpenNLP.class, HeidelTimeOpenNLP.PARAM_LANGUAGE,
+				"auto-" + locale.getDisplayName().toLowerCase(), HeidelTimeOpenNLP.PARAM_LOCALE, "en_US");
+
+		// named entity recognition
+		AnalysisEngineDescription nerMicroservice = AnalysisEngineFactory.createEngineDescription(
+				NerMicroservice.class, NerMicroservice.NER_SERVICE_URL, this.nerServiceUrl);
+
+		// keyterms
+		AnalysisEngineDescription keyterms = AnalysisEngineFactory.createEngineDescription(KeytermExtractor.class,
+				KeytermExtractor.PARAM_N_KEYTERMS, 15, KeytermExtractor.PARAM_LANGUAGE_CODE, language);
+
+		// dictionaries
+		ExternalResourceDescription dictResource = ExternalResourceFactory.createExternalResourceDescription(
+				DictionaryResource.class, DictionaryResource.PARAM_DATADIR,
+				this.configDir + File.separator + "dictionaries", DictionaryResource.PARAM_DICTIONARY_FILES,
+				this.dictionaryFiles, DictionaryResource.PARAM_LANGUAGE_CODE, language,
+				DictionaryResource.PARAM_COMPILED_DIR, this.compiledDictionaryDir);
+		AnalysisEngineDescription dictionaries = AnalysisEngineFactory.createEngineDescription(
+				DictionaryExtractor.class, 
+				DictionaryExtractor.RESOURCE_DICTIONARIES, dictResource,
+				DictionaryExtractor.PARAM_EXTRACT_EMAIL, this.patternEmail,
+				DictionaryExtractor.PARAM_EXTRACT_URL, this.patternUrl,
+				DictionaryExtractor.PARAM_EXTRACT_PHONE, this.patternPhone,
+				DictionaryExtractor.PARAM_EXTRACT_IP, this.patternIP);
+
+		return AnalysisEngineFactory.createEngineDescription(sentenceICU, sentenceCleaner, dictionaries,
+				nerMicroservice, keyterms); // heideltime, TODO wieder einkommentieren
+	}
+
+	/**
+	 * Gets the writer of the doc2vec training data.
+	 *
+	 * @return the doc2vec writer description
+	 * @throws ResourceInitializationException
+	 *             the resource initialization exception
+	 */
+	private AnalysisEngineDescription getDoc2VecWriter() throws ResourceInitializationException {
+		//writes the documents to a textfile (this will be the training data for the document embedding generation)
+		String pathToTrainingFile = this.doc2vecTrainingDir+File.separator+this.trainingFileName+".txt";
+		ExternalResourceDescription resourceDoc2VecWriter =
+				ExternalResourceFactory.createExternalResourceDescription(Doc2VecWriterResource.class,Doc2VecWriterResource.PARAM_TRAINING_FILE, pathToTrainingFile);
+		return AnalysisEngineFactory.createEngineDescription(Doc2VecWriter.class,
+				Doc2VecWriter.RESOURCE_DOC2VECWRITER, resourceDoc2VecWriter);
+	}
+
+	/**
+	 * Gets the postgres writer.
+	 *
+	 * @param createDb
+	 *            if true, a new db is created
+	 * @return the postgres writer description
+	 * @throws ResourceInitializationException
+	 *             the resource initialization exception
+	 */
+	private AnalysisEngineDescription getPostgresWriter(boolean createDb) throws ResourceInitializationException {
+		ExternalResourceDescription resourcePostgres = ExternalResourceFactory.createExternalResourceDescription(
+				PostgresResource.class, PostgresResource.PARAM_DBURL, this.dbUrl, PostgresResource.PARAM_DBNAME,
+				this.dbName, PostgresResource.PARAM_DBUSER, this.dbUser, PostgresResource.PARAM_DBPASS, this.dbPass,
+				PostgresResource.PARAM_TABLE_SCHEMA, this.dbSchema, PostgresResource.PARAM_INDEX_SCHEMA,
+				this.dbIndices, PostgresResource.PARAM_CREATE_DB,
+				createDb ? "true" : "false",
+				PostgresResource.PARAM_COPY_MODE, this.dbCopyMode, PostgresResource.PARAM_COPY_BUFFER_SIZE,
+				this.dbCopyBufferSize, PostgresResource.PARAM_COPY_FLUSH_INTERVAL, this.dbCopyFlushInterval,
+				PostgresResource.PARAM_UNLOGGED_TABLES, this.dbBulkLoad, PostgresResource.PARAM_WRITER_THREADS,
+				this.dbWriterThreads, PostgresResource.PARAM_WRITE_QUEUE_SIZE, this.dbWriteQueueSize,
+				PostgresResource.PARAM_COUNT_COOCCURRENCES, this.dbCooccurrences,
+				PostgresResource.PARAM_COMMIT_DOCUMENTS, this.dbCommitDocuments, PostgresResource.PARAM_COMMIT_ROWS,
+				this.dbCommitRows, PostgresResource.PARAM_COMMIT_BYTES, this.dbCommitBytes,
+				PostgresResource.PARAM_COMMIT_INTERVAL, this.dbCommitInterval);
+		return AnalysisEngineFactory.createEngineDescription(PostgresDbWriter.class,
+				PostgresDbWriter.RESOURCE_POSTGRES, resourcePostgres);
+	}
+
 	/**
 	 * The annotation pipeline performs several annotation tasks, for each language
 	 * separately (sentence detection, sentence cleaning, temporal expression
@@ -323,61 +615,30 @@ public class InformationExtraction2Postgres extends NewsleakPreprocessor {
 
 			NewsleakStatusCallbackListener annotationListener = new NewsleakStatusCallbackListener(this.logger);
 
-			Map<String, Locale> localeMap = LanguageDetector.localeToISO();
-			Locale currentLocale = localeMap.get(currentLanguage);
+			Locale currentLocale = LanguageDetector.localeToISO().get(currentLanguage);
 
 			logger.log(Level.INFO, "Processing " + currentLocale.getDisplayName() + " (" + currentLanguage + ")");
 			Thread.sleep(2000);
 
-			// reader
+			// reader (skipping documents processed by an interrupted run)
+			ArrayList<Object> readerParams = new ArrayList<Object>(Arrays.asList(
+					NewsleakElasticsearchReader.RESOURCE_ESCLIENT, this.getElasticsearchResourceDescription("false"),
+					NewsleakElasticsearchReader.PARAM_LANGUAGE, currentLanguage));
+			if (this.processedIdsFile != null) {
+				readerParams.add(NewsleakElasticsearchReader.PARAM_SKIP_IDS_FILE);
+				readerParams.add(this.processedIdsFile);
+			}
 			CollectionReaderDescription esReader = CollectionReaderFactory.createReaderDescription(
-					NewsleakElasticsearchReader.class, this.typeSystem, NewsleakElasticsearchReader.RESOURCE_ESCLIENT,
-					this.getElasticsearchResourceDescription("false"), NewsleakElasticsearchReader.PARAM_LANGUAGE,
-					currentLanguage);
-
-			// sentences
-			AnalysisEngineDescription sentenceICU = AnalysisEngineFactory.createEngineDescription(SegmenterICU.class,
-					SegmenterICU.PARAM_LOCALE, currentLanguage);
-
-			// sentence cleaner
-			AnalysisEngineDescription sentenceCleaner = AnalysisEngineFactory
-					.createEngineDescription(SentenceCleaner.class);
-
-			// heideltime
-			AnalysisEngineDescription heideltime = AnalysisEngineFactory.createEngineDescription(
-					HeidelTimeOpenNLP.class, HeidelTimeOpenNLP.PARAM_LANGUAGE,
-					"auto-" + currentLocale.getDisplayName().toLowerCase(), HeidelTimeOpenNLP.PARAM_LOCALE, "en_US");
-
-			// named entity recognition
-			AnalysisEngineDescription nerMicroservice = AnalysisEngineFactory.createEngineDescription(
-					NerMicroservice.class, NerMicroservice.NER_SERVICE_URL, this.nerServiceUrl);
-
-			// keyterms
-			AnalysisEngineDescription keyterms = AnalysisEngineFactory.createEngineDescription(KeytermExtractor.class,
-					KeytermExtractor.PARAM_N_KEYTERMS, 15, KeytermExtractor.PARAM_LANGUAGE_CODE, currentLanguage);
-
-			// dictionaries
-			ExternalResourceDescription dictResource = ExternalResourceFactory.createExternalResourceDescription(
-					DictionaryResource.class, DictionaryResource.PARAM_DATADIR,
-					this.configDir + File.separator + "dictionaries", DictionaryResource.PARAM_DICTIONARY_FILES,
-					this.dictionaryFiles, DictionaryResource.PARAM_LANGUAGE_CODE, currentLanguage);
-			AnalysisEngineDescription dictionaries = AnalysisEngineFactory.createEngineDescription(
-					DictionaryExtractor.class, 
-					DictionaryExtractor.RESOURCE_DICTIONARIES, dictResource,
-					DictionaryExtractor.PARAM_EXTRACT_EMAIL, this.patternEmail,
-					DictionaryExtractor.PARAM_EXTRACT_URL, this.patternUrl,
-					DictionaryExtractor.PARAM_EXTRACT_PHONE, this.patternPhone,
-					DictionaryExtractor.PARAM_EXTRACT_IP, this.patternIP);
-
-
-			//writes the documents to a textfile (this will be the training data for the document embedding generation)
-			String pathToTrainingFile = this.doc2vecTrainingDir+File.separator+this.trainingFileName+".txt";
-			ExternalResourceDescription resourceDoc2VecWriter =
-					ExternalResourceFactory.createExternalResourceDescription(Doc2VecWriterResource.class,Doc2VecWriterResource.PARAM_TRAINING_FILE, pathToTrainingFile);
-			 AnalysisEngineDescription doc2vecWriter =
-					AnalysisEngineFactory.createEngineDescription(Doc2VecWriter.class, Doc2VecWriter.RESOURCE_DOC2VECWRITER, resourceDoc2VecWriter);
-
-			 //
+					NewsleakElasticsearchReader.class, this.typeSystem, readerParams.toArray());
+
+			// annotators of the current language
+			AnalysisEngineDescription annotators = getLanguageAnnotators(currentLanguage);
+
+			// writers
+			AnalysisEngineDescription doc2vecWriter = getDoc2VecWriter();
+			AnalysisEngineDescription postgresWriter = getPostgresWriter(
+					firstLanguage && this.processedIdsFile == null);
+
 			// ... xmi writer
 			// AnalysisEngineDescription xmi =
 			// AnalysisEngineFactory.createEngineDescription(
@@ -385,18 +646,8 @@ public class InformationExtraction2Postgres extends NewsleakPreprocessor {
 			// XmiWriter.PARAM_OUTPUT_DIRECTORY, this.dataDirectory + File.separator + "xmi"
 			// );
 
-			// postgres writer
-			ExternalResourceDescription resourcePostgres = ExternalResourceFactory.createExternalResourceDescription(
-					PostgresResource.class, PostgresResource.PARAM_DBURL, this.dbUrl, PostgresResource.PARAM_DBNAME,
-					this.dbName, PostgresResource.PARAM_DBUSER, this.dbUser, PostgresResource.PARAM_DBPASS, this.dbPass,
-					PostgresResource.PARAM_TABLE_SCHEMA, this.dbSchema, PostgresResource.PARAM_INDEX_SCHEMA,
-					this.dbIndices, PostgresResource.PARAM_CREATE_DB, firstLanguage ? "true" : "false");
-			AnalysisEngineDescription postgresWriter = AnalysisEngineFactory.createEngineDescription(
-					PostgresDbWriter.class, PostgresDbWriter.RESOURCE_POSTGRES, resourcePostgres);
-
 			// define pipeline
-			AnalysisEngineDescription pipeline = AnalysisEngineFactory.createEngineDescription(sentenceICU,
-					sentenceCleaner, dictionaries, nerMicroservice, keyterms, //heideltime, TODO wieder einkommentieren
+			AnalysisEngineDescription pipeline = AnalysisEngineFactory.createEngineDescription(annotators,
 					doc2vecWriter,
 					// linewriter,
 					// xmi,
@@ -423,4 +674,72 @@ public class InformationExtraction2Postgres extends NewsleakPreprocessor {
 
 	}
 
+	/**
+	 * The single-pass pipeline combines language detection and annotation. The
+	 * reader feeds the language detector, and the @see
+	 * uhh_lt.newsleak.annotator.DocumentPreparer creates a new CAS (normalized
+	 * fulltext and new document id) for each document of a language to process.
+	 * The @see uhh_lt.newsleak.annotator.LanguageFlowController routes this CAS
+	 * to the annotators of its language and then to the writers. Thus, fulltexts
+	 * are neither written to nor read from the temporary elasticsearch index,
+	 * and the collection is read only once for all languages.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	public void pipelineFused() throws Exception {
+		statusListener = new NewsleakStatusCallbackListener(this.logger);
+
+		// check for language support
+		checkLanguageSupport();
+
+		// reader
+		CollectionReaderDescription reader = getReader(this.readerType);
+
+		// language detection and preparation of documents to process
+		List<AnalysisEngineDescription> components = new ArrayList<AnalysisEngineDescription>();
+		List<String> componentNames = new ArrayList<String>();
+		components.add(getLanguageDetector());
+		componentNames.add("languageDetector");
+		components.add(AnalysisEngineFactory.createEngineDescription(DocumentPreparer.class,
+				DocumentPreparer.RESOURCE_ESCLIENT, this.getElasticsearchResourceDescription("false"),
+				DocumentPreparer.PARAM_PROCESS_LANGUAGES, this.processLanguages,
+				DocumentPreparer.PARAM_MAX_DOC_LENGTH, this.maxDocumentLength));
+		componentNames.add("documentPreparer");
+
+		// annotators per language (the language code is the key of the branch)
+		for (String language : this.processLanguages) {
+			components.add(getLanguageAnnotators(language));
+			componentNames.add(language);
+		}
+
+		// writers
+		components.add(getDoc2VecWriter());
+		componentNames.add("doc2vecWriter");
+		components.add(getPostgresWriter(true));
+		componentNames.add("postgresWriter");
+
+		FlowControllerDescription languageFlow = FlowControllerFactory.createFlowControllerDescription(
+				LanguageFlowController.class, LanguageFlowController.PARAM_PRE_STEPS,
+				new String[] { "languageDetector", "documentPreparer" }, LanguageFlowController.PARAM_POST_STEPS,
+				new String[] { "doc2vecWriter", "postgresWriter" });
+		AnalysisEngineDescription pipeline = AnalysisEngineFactory.createEngineDescription(components,
+				componentNames, null, null, languageFlow);
+		// new CASes are dropped within the aggregate, the CPE only sees the reader CASes
+		pipeline.getAnalysisEngineMetaData().getOperationalProperties().setOutputsNewCASes(false);
+
+		// run as UIMA CPE
+		CpeBuilder cpeBuilder = new CpeBuilder();
+		cpeBuilder.setReader(reader);
+		cpeBuilder.setMaxProcessingUnitThreadCount(this.threads);
+		cpeBuilder.setAnalysisEngine(pipeline);
+		CollectionProcessingEngine engine = cpeBuilder.createCpe(statusListener);
+		engine.process();
+
+		while (statusListener.isProcessing()) {
+			Thread.sleep(500);
+		}
+
+	}
+
 }
@@ -42,6 +42,7 @@ public abstract class NewsleakPreprocessor {
 	private Options cliOptions;
 	private String configfile;
 	protected String configDir;
+	protected boolean resume;
 
 	/** config file options */
 	protected String readerType;
@@ -54,6 +55,7 @@ public abstract class NewsleakPreprocessor {
 	protected Integer paragraphMinimumLength;
 	protected Integer maxDocumentLength;
 	protected Integer threads;
+	protected boolean fusedPipeline;
 	protected Integer debugMaxDocuments;
 	
 	// csv externally preprocessed data
@@ -65,6 +67,10 @@ public abstract class NewsleakPreprocessor {
 	protected String esClustername;
 	protected String esIndex;
 	protected String esPort;
+	protected Integer esIndexerThreads;
+	protected Integer esBulkActions;
+	protected Integer esBulkSizeMb;
+	protected Integer esBulkConcurrentRequests;
 	
 	// hoover elasticsearch configuration
 	protected String hooverHost;
@@ -73,6 +79,11 @@ public abstract class NewsleakPreprocessor {
 	protected String hooverPort;
 	protected String hooverTmpMetadata;
 	protected String hooverSearchUrl;
+	protected String documentCacheDirectory;
+	protected Integer hooverConnections;
+	protected Integer hooverMgetBatchSize;
+	protected Integer hooverPrefetchBatches;
+	protected Integer hooverScrollKeepAlive;
 
 	//doc2vec training configuration
 	protected String doc2vecTrainingDir;
@@ -87,6 +98,7 @@ public abstract class NewsleakPreprocessor {
 
 	//transparenz reader configuration
 	protected String transparenzCoreAddress;
+	protected Integer transparenzPageSize;
 
 	//transparenz reader configuration
 	protected String statsDirectory;
@@ -98,12 +110,25 @@ public abstract class NewsleakPreprocessor {
 	protected String dbPass;
 	protected String dbSchema;
 	protected String dbIndices;
+	protected boolean dbCopyMode;
+	protected Integer dbCopyBufferSize;
+	protected Integer dbCopyFlushInterval;
+	protected boolean dbBulkLoad;
+	protected Integer dbIndexThreads;
+	protected Integer dbWriterThreads;
+	protected Integer dbWriteQueueSize;
+	protected Integer dbCommitDocuments;
+	protected Integer dbCommitRows;
+	protected Integer dbCommitBytes;
+	protected Integer dbCommitInterval;
+	protected boolean dbCooccurrences;
 
 	// newsleak-ner microservice configuration
 	protected String nerServiceUrl;
 	
 	// dictionary and pattern extraction
 	protected String dictionaryFiles;
+	protected String compiledDictionaryDir;
 	protected boolean patternEmail;
 	protected boolean patternUrl;
 	protected boolean patternPhone;
@@ -156,6 +181,11 @@ public abstract class NewsleakPreprocessor {
 			hooverPort = prop.getProperty("hooverport");
 			hooverTmpMetadata = prop.getProperty("hoovertmpmetadata");
 			hooverSearchUrl = prop.getProperty("hooversearchurl");
+			documentCacheDirectory = prop.getProperty("documentcache", "");
+			hooverConnections = Integer.valueOf(prop.getProperty("hooverconnections", "4"));
+			hooverMgetBatchSize = Integer.valueOf(prop.getProperty("hoovermgetbatchsize", "100"));
+			hooverPrefetchBatches = Integer.valueOf(prop.getProperty("hooverprefetchbatches", "4"));
+			hooverScrollKeepAlive = Integer.valueOf(prop.getProperty("hooverscrollkeepalive", "30"));
 
 			doc2vecTrainingDir = prop.getProperty("doc2vectrainingdir");
 			doc2vecResultDir = doc2vecTrainingDir + File.separator + "result";
@@ -167,6 +197,7 @@ public abstract class NewsleakPreprocessor {
 			doc2vecIndexPort = prop.getProperty("doc2vecindexport");
 
 			transparenzCoreAddress = prop.getProperty("transparenzcoreaddress");
+			transparenzPageSize = Integer.valueOf(prop.getProperty("transparenzpagesize", "100"));
 
 			statsDirectory = prop.getProperty("statsdir");
 
@@ -174,6 +205,9 @@ public abstract class NewsleakPreprocessor {
 			esClustername = prop.getProperty("esclustername");
 			esIndex = prop.getProperty("esindex");
 			esPort = prop.getProperty("esport");
+			esBulkActions = Integer.valueOf(prop.getProperty("esbulkactions", "1000"));
+			esBulkSizeMb = Integer.valueOf(prop.getProperty("esbulksizemb", "5"));
+			esBulkConcurrentRequests = Integer.valueOf(prop.getProperty("esbulkconcurrentrequests", "2"));
 			paragraphsAsDocuments = Boolean.parseBoolean(prop.getProperty("paragraphsasdocuments"));
 			paragraphMinimumLength = Integer.valueOf(prop.getProperty("paragraphminimumlength"));
 			maxDocumentLength = Integer.valueOf(prop.getProperty("maxdocumentlength"));
@@ -186,16 +220,34 @@ public abstract class NewsleakPreprocessor {
 			dbPass = prop.getProperty("dbpass");
 			dbSchema = prop.getProperty("dbschema");
 			dbIndices = prop.getProperty("dbindices");
+			dbCopyMode = Boolean.parseBoolean(prop.getProperty("dbcopymode", "false"));
+			dbCopyBufferSize = Integer.valueOf(prop.getProperty("dbcopybuffersize", "8388608"));
+			dbCopyFlushInterval = Integer.valueOf(prop.getProperty("dbcopyflushinterval", "10000"));
+			dbBulkLoad = Boolean.parseBoolean(prop.getProperty("dbbulkload", "false"));
+			dbIndexThreads = Integer.valueOf(prop.getProperty("dbindexthreads", "4"));
+			dbWriterThreads = Integer.valueOf(prop.getProperty("dbwriterthreads", "0"));
+			dbWriteQueueSize = Integer.valueOf(prop.getProperty("dbwritequeuesize", "1000"));
+			dbCommitDocuments = Integer.valueOf(prop.getProperty("dbcommitdocuments", "100"));
+			dbCommitRows = Integer.valueOf(prop.getProperty("dbcommitrows", "100000"));
+			dbCommitBytes = Integer.valueOf(prop.getProperty("dbcommitbytes", "33554432"));
+			dbCommitInterval = Integer.valueOf(prop.getProperty("dbcommitinterval", "30000"));
+			dbCooccurrences = Boolean.parseBoolean(prop.getProperty("dbcooccurrences", "true"));
 
 			nerServiceUrl = prop.getProperty("nerserviceurl");
 			
 			dictionaryFiles = prop.getProperty("dictionaryfiles");
+			compiledDictionaryDir = prop.getProperty("compileddictionaries", "");
+			if (compiledDictionaryDir.isEmpty()) {
+				compiledDictionaryDir = this.configDir + File.separator + "dictionaries" + File.separator + "compiled";
+			}
 			patternEmail = Boolean.parseBoolean(prop.getProperty("patternemail", "true"));
 			patternUrl = Boolean.parseBoolean(prop.getProperty("patternurl", "false"));
 			patternPhone = Boolean.parseBoolean(prop.getProperty("patternphone", "false"));
 			patternIP = Boolean.parseBoolean(prop.getProperty("patternip", "false"));
 
 			threads = Integer.valueOf(prop.getProperty("threads"));
+			fusedPipeline = Boolean.parseBoolean(prop.getProperty("fusedpipeline", "false"));
+			esIndexerThreads = Integer.valueOf(prop.getProperty("esindexerthreads", threads.toString()));
 			debugMaxDocuments = Integer.valueOf(prop.getProperty("debugMaxDocuments"));
 			if (debugMaxDocuments <= 0)
 				debugMaxDocuments = null;
@@ -222,6 +274,9 @@ public abstract class NewsleakPreprocessor {
 		Option configfileOpt = new Option("c", "configfile", true, "config file path");
 		configfileOpt.setRequired(true);
 		cliOptions.addOption(configfileOpt);
+		Option resumeOpt = new Option("r", "resume", false,
+				"resume an interrupted run (documents already in the db are skipped)");
+		cliOptions.addOption(resumeOpt);
 		CommandLineParser parser = new DefaultParser();
 		HelpFormatter formatter = new HelpFormatter();
 		CommandLine cmd;
@@ -234,6 +289,7 @@ public abstract class NewsleakPreprocessor {
 			return;
 		}
 		this.configfile = cmd.getOptionValue("configfile");
+		this.resume = cmd.hasOption("resume");
 	}
 
 	/**
@@ -285,7 +341,9 @@ public abstract class NewsleakPreprocessor {
 				this.esIndex, ElasticsearchResource.PARAM_HOST, this.esHost, ElasticsearchResource.PARAM_PORT,
 				this.esPort, ElasticsearchResource.PARAM_DOCUMENT_MAPPING_FILE,
 				"desc/elasticsearch_mapping_document_2.4.json",
-				ElasticsearchResource.PARAM_METADATA_FILE, this.dataDirectory + File.separator + this.metadataFile);
+				ElasticsearchResource.PARAM_METADATA_FILE, this.dataDirectory + File.separator + this.metadataFile,
+				ElasticsearchResource.PARAM_BULK_ACTIONS, this.esBulkActions, ElasticsearchResource.PARAM_BULK_SIZE_MB,
+				this.esBulkSizeMb, ElasticsearchResource.PARAM_BULK_CONCURRENT_REQUESTS, this.esBulkConcurrentRequests);
 		return esResource;
 	}
 
@@ -2,7 +2,9 @@ package uhh_lt.newsleak.preprocessing;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.sql.Connection;
 import java.sql.Date;
+import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
@@ -12,22 +14,21 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import uhh_lt.newsleak.util.AtomicCounter;
-import uhh_lt.newsleak.util.ResultSetIterable;
+import uhh_lt.newsleak.util.DocidCursor;
+import uhh_lt.newsleak.util.ElasticsearchBulkSink;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.uima.util.Level;
-import org.elasticsearch.action.ActionRequestValidationException;
 import org.elasticsearch.action.admin.indices.create.CreateIndexRequestBuilder;
 import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
 import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequestBuilder;
 import org.elasticsearch.action.admin.indices.exists.indices.IndicesExistsResponse;
-import org.elasticsearch.action.bulk.BulkRequestBuilder;
-import org.elasticsearch.action.bulk.BulkResponse;
-import org.elasticsearch.action.index.IndexRequestBuilder;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.client.transport.TransportClient;
 import org.elasticsearch.common.settings.Settings;
@@ -41,6 +42,14 @@ import org.elasticsearch.common.xcontent.XContentFactory;
  * elasticsearch index. For this, several mappings of elasticsearch data objects
  * are created. Indexing itself is carried out in parallel bulk requests.
  * 
+ * Documents and their entities, key terms, time expressions and metadata are
+ * read via server-side cursors ordered by document id, which are merge-joined
+ * in memory. Thus, no SQL queries are executed per document. The document id
+ * space is split into ranges which are indexed by parallel workers
+ * (esindexerthreads), each with its own db connection. All workers feed one
+ * @see uhh_lt.newsleak.util.ElasticsearchBulkSink which sends asynchronous bulk
+ * requests and retries rejected documents.
+ * 
  * As analyzer for fulltext search, one elasticsearch language analyzer is
  * used. The analyzer used is to be configured as defaultlanguage configuration
  * variable in the preprocessing configuration (ISO 639-3 code). If in
@@ -52,6 +61,21 @@ public class Postgres2ElasticsearchIndexer extends NewsleakPreprocessor {
 	/** The Constant BATCH_SIZE. */
 	private static final int BATCH_SIZE = 100;
 
+	/** The number of rows fetched per round trip by the cursors of the merge join. */
+	private static final int CURSOR_FETCH_SIZE = 10000;
+
+	/** The number of documents between two progress messages. */
+	private static final int LOG_INTERVAL = 1000;
+
+	/** Maximum time in seconds to wait for pending bulk requests. */
+	private static final long BULK_CLOSE_TIMEOUT = 600;
+
+	/** The number of document id ranges per indexer worker. */
+	private static final int RANGES_PER_WORKER = 8;
+
+	/** The maximum number of key terms per document. */
+	private static final int MAX_KEYTERMS = 10;
+
 	private String elasticsearchDefaultAnalyzer;
 
 	/**
@@ -136,7 +160,9 @@ public class Postgres2ElasticsearchIndexer extends NewsleakPreprocessor {
 	}
 
 	/**
-	 * Document indexer.
+	 * Document indexer. The document id space is split into ranges which are
+	 * processed by several workers in parallel. Each worker has its own db
+	 * connection, so workers only share the elasticsearch bulk sink.
 	 *
 	 * @param client
 	 *            the client
@@ -163,189 +189,308 @@ public class Postgres2ElasticsearchIndexer extends NewsleakPreprocessor {
 		}
 
 		System.out.println("Start indexing");
-		ResultSet docSt = st.executeQuery("select * from document;");
 
-		BulkRequestConcurrent bulkRequestConcurrent = new BulkRequestConcurrent(client);
-		AtomicCounter bblen = new AtomicCounter();
-
-		ResultSet entTypes = conn.createStatement().executeQuery("select distinct type from entity;");
+		ResultSet entTypes = st.executeQuery("select distinct type from entity;");
 		Set<String> types = new HashSet<>();
 		while (entTypes.next()) {
 			types.add(entTypes.getString("type").toLowerCase());
 		}
+		entTypes.close();
+
+		// split the document id space into ranges (more ranges than workers to balance the load)
+		ResultSet idRange = st.executeQuery("select min(id), max(id) from document;");
+		idRange.next();
+		long minId = idRange.getLong(1);
+		long maxId = idRange.getLong(2);
+		idRange.close();
+		int nWorkers = Math.max(this.esIndexerThreads, 1);
+		long rangeSize = (maxId - minId) / (nWorkers * RANGES_PER_WORKER) + 1;
+		ConcurrentLinkedQueue<long[]> ranges = new ConcurrentLinkedQueue<long[]>();
+		for (long from = minId; from <= maxId; from += rangeSize) {
+			ranges.add(new long[] { from, Math.min(from + rangeSize - 1, maxId) });
+		}
+		logger.log(Level.INFO, "Indexing documents " + minId + " to " + maxId + " in " + ranges.size()
+				+ " ranges with " + nWorkers + " workers");
 
-		Function<ResultSet, String> indexDoc = new Function<ResultSet, String>() {
-
-			@Override
-			public String apply(ResultSet docSt) {
-				List<NamedEntity> namedEntity = new ArrayList<>();
-				String content;
-				Integer docId = 0;
-				try {
-					// fulltext
-					content = docSt.getString("content");
-					// creation date
-					Date dbCreated = docSt.getDate("created");
-					SimpleDateFormat simpleCreated = new SimpleDateFormat("yyyy-MM-dd");
-					String created = simpleCreated.format(dbCreated);
-					// document id
-					docId = docSt.getInt("id");
-					// entities
-					ResultSet docEntSt = conn.createStatement()
-							.executeQuery("select entid from entityoffset where  docid = " + docId + ";");
-					Set<Long> ids = new HashSet<>();
-					while (docEntSt.next()) {
-						long entId = docEntSt.getLong("entid");
-						if (ids.contains(entId)) {
-							continue;
-						}
-						ids.add(entId);
-						ResultSet entSt = conn.createStatement()
-								.executeQuery("select * from entity where  id = " + entId + ";");
-						if (entSt.next()) {
-							NamedEntity ne = new NamedEntity(entSt.getLong("id"), entSt.getString("name"),
-									entSt.getString("type"), 1 /* docEntSt.getInt("frequency") */);
-							namedEntity.add(ne);
-						}
-
-					}
-					// key terms (top 10 only)
-					ResultSet docTermSt = conn.createStatement()
-							.executeQuery("select * from terms where  docid = " + docId + " limit 10;");
-					Map<String, Integer> termMap = new HashMap<>();
-					while (docTermSt.next()) {
-						String term = docTermSt.getString("term");
-						int freq = docTermSt.getInt("frequency");
-						termMap.put(term, freq);
-					}
-					// temporal expressions
-					ResultSet docTimexSt = conn.createStatement()
-							.executeQuery("select * from eventtime where  docid = " + docId + ";");
-					List<TimeX> timexs = new ArrayList<>();
-					Set<String> simpeTimex = new HashSet<>();
-					while (docTimexSt.next()) {
-						String timeXValue = docTimexSt.getString("timexvalue");
-						TimeX t = new TimeX(docTimexSt.getInt("beginoffset"), docTimexSt.getInt("endoffset"),
-								docTimexSt.getString("timex"), docTimexSt.getString("type"), timeXValue);
-						timexs.add(t);
-						simpeTimex.add(timeXValue);
-					}
-					// metadata
-					ResultSet metadataSt = conn.createStatement()
-							.executeQuery("select * from metadata where docid =" + docId + ";");
-
-					// Create a JSON request object for adding the data to the index
-					// -------------------------------------------------------------
-					XContentBuilder xb = XContentFactory.jsonBuilder().startObject();
-					xb.field("Content", content).field("Created", created);
-					Map<String, List<String>> metas = new HashMap<>();
-					while (metadataSt.next()) {
-						// we capitalize the first character on purpose
-						String key = StringUtils.capitalize(metadataSt.getString("key").replace(".", "_"));
-						String value = metadataSt.getString("value");
-						metas.putIfAbsent(key, new ArrayList<>());
-						metas.get(key).add(value);
-					}
-					for (String key : metas.keySet()) {
-						if (metas.get(key).size() > 1) { // array field
-							xb.field(key, metas.get(key));
-						} else {
-							xb.field(key, metas.get(key).get(0));
-						}
-					}
-					// Adding entities
-					if (namedEntity.size() > 0) {
-						xb.startArray("Entities");
-						for (NamedEntity ne : namedEntity) {
-							xb.startObject();
-							xb.field("EntId", ne.id);
-							xb.field("Entname", ne.name);
-							xb.field("EntType", ne.type);
-							xb.field("EntFrequency", ne.frequency);
-							xb.endObject();
-						}
-						xb.endArray();
-
-						for (String type : types) {
-							xb.startArray("Entities" + type);
-							for (NamedEntity ne : namedEntity) {
-								if (ne.type.toLowerCase().equals(type)) {
-									xb.startObject();
-									xb.field("EntId", ne.id);
-									xb.field("Entname", ne.name);
-									xb.field("EntFrequency", ne.frequency);
-									xb.endObject();
-								}
-							}
-							xb.endArray();
-						}
+		// parallel execution (workers share one bulk sink)
+		ElasticsearchBulkSink bulkSink = new ElasticsearchBulkSink(client, this.esBulkActions, this.esBulkSizeMb,
+				this.esBulkConcurrentRequests, logger);
+		AtomicCounter bblen = new AtomicCounter();
+		ExecutorService executor = Executors.newFixedThreadPool(nWorkers);
+		List<Future<Integer>> workers = new ArrayList<Future<Integer>>();
+		for (int i = 0; i < nWorkers; i++) {
+			workers.add(executor.submit(() -> indexRanges(client, indexName, documentType, types, ranges, bulkSink, bblen)));
+		}
+		executor.shutdown();
+		int nDocuments = 0;
+		for (Future<Integer> worker : workers) {
+			nDocuments += worker.get();
+		}
+		// index last requests
+		bulkSink.close(BULK_CLOSE_TIMEOUT);
+		logger.log(Level.INFO, "All data has been indexed (" + nDocuments + " documents, " + bulkSink.getFailed()
+				+ " failures).");
 
-					}
+	}
 
-					// Adding terms
-					if (termMap.size() > 0) {
-						xb.startArray("Keywords");
-						for (String term : termMap.keySet()) {
-							xb.startObject();
-							xb.field("Keyword", term);
-							xb.field("TermFrequency", termMap.get(term));
-							xb.endObject();
-						}
-						xb.endArray();
-					}
+	/**
+	 * Loop of an indexer worker: takes document id ranges from the queue until
+	 * it is empty and indexes them.
+	 *
+	 * @param client
+	 *            the client
+	 * @param indexName
+	 *            the index name
+	 * @param documentType
+	 *            the document type
+	 * @param types
+	 *            the entity types (lower case)
+	 * @param ranges
+	 *            the document id ranges
+	 * @param bulkSink
+	 *            the bulk sink
+	 * @param bblen
+	 *            the number of documents indexed by all workers
+	 * @return the number of documents indexed by this worker
+	 * @throws SQLException
+	 *             the SQL exception
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private int indexRanges(Client client, String indexName, String documentType, Set<String> types,
+			ConcurrentLinkedQueue<long[]> ranges, ElasticsearchBulkSink bulkSink, AtomicCounter bblen)
+			throws SQLException, IOException {
+		Connection workerConn = DriverManager.getConnection("jdbc:postgresql://" + this.dbUrl + "/" + this.dbName,
+				this.dbUser, this.dbPass);
+		// cursors stream their rows only outside of auto commit mode
+		workerConn.setAutoCommit(false);
+		int n = 0;
+		try {
+			long[] range;
+			while ((range = ranges.poll()) != null) {
+				n += indexRange(workerConn, client, indexName, documentType, types, range[0], range[1], bulkSink,
+						bblen);
+				workerConn.commit();
+			}
+		} finally {
+			workerConn.close();
+		}
+		return n;
+	}
 
-					// Adding TimeX
-					if (timexs.size() > 0) {
-						xb.startArray("EventTimes");
-						for (TimeX t : timexs) {
-							xb.startObject();
-							xb.field("Beginoffset", t.beginOffset);
-							xb.field("Endoffset", t.endOffset);
-							xb.field("Timex", t.timeX);
-							xb.field("TimeXType", t.timeXType);
-							xb.field("Timexvalue", t.timexValue);
-							xb.endObject();
-						}
-						xb.endArray();
-						xb.field("SimpleTimeExpresion", new ArrayList<>(simpeTimex));
+	/**
+	 * Indexes all documents of a document id range. Documents and their
+	 * entities, key terms, time expressions and metadata are read via
+	 * server-side cursors ordered by document id and merge-joined in memory.
+	 *
+	 * @param workerConn
+	 *            the db connection of the worker
+	 * @param client
+	 *            the client
+	 * @param indexName
+	 *            the index name
+	 * @param documentType
+	 *            the document type
+	 * @param types
+	 *            the entity types (lower case)
+	 * @param fromId
+	 *            the first document id of the range
+	 * @param toId
+	 *            the last document id of the range
+	 * @param bulkSink
+	 *            the bulk sink
+	 * @param bblen
+	 *            the number of documents indexed by all workers
+	 * @return the number of indexed documents
+	 * @throws SQLException
+	 *             the SQL exception
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private int indexRange(Connection workerConn, Client client, String indexName, String documentType,
+			Set<String> types, long fromId, long toId, ElasticsearchBulkSink bulkSink, AtomicCounter bblen) throws SQLException, IOException {
+		String range = " between " + fromId + " and " + toId;
+		DocidCursor documentCursor = new DocidCursor(workerConn,
+				"select id, content, created from document where id" + range + " order by id;", BATCH_SIZE);
+		DocidCursor entityCursor = new DocidCursor(workerConn,
+				"select de.docid, e.id, e.name, e.type, de.frequency from documententity de join entity e on e.id = de.entityid where de.docid"
+						+ range + " order by de.docid;",
+				CURSOR_FETCH_SIZE);
+		DocidCursor termCursor = new DocidCursor(workerConn, "select docid, term, frequency from terms where docid"
+				+ range + " order by docid, frequency desc;", CURSOR_FETCH_SIZE);
+		DocidCursor timexCursor = new DocidCursor(workerConn,
+				"select docid, beginoffset, endoffset, timex, type, timexvalue from eventtime where docid" + range
+						+ " order by docid;",
+				CURSOR_FETCH_SIZE);
+		DocidCursor metadataCursor = new DocidCursor(workerConn,
+				"select docid, key, value from metadata where docid" + range + " order by docid;", CURSOR_FETCH_SIZE);
+
+		int n = 0;
+		SimpleDateFormat simpleCreated = new SimpleDateFormat("yyyy-MM-dd");
+		try {
+			for (long docId = fromId; docId <= toId; docId++) {
+				List<XContentBuilder> source = new ArrayList<XContentBuilder>(1);
+				documentCursor.forEachRow(docId, docSt -> {
+					try {
+						source.add(buildDocument(docSt, simpleCreated, types, entityCursor, termCursor, timexCursor,
+								metadataCursor));
+					} catch (IOException e) {
+						throw new SQLException(e);
 					}
+				});
+				if (source.isEmpty()) {
+					continue;
+				}
 
-					xb.endObject();
-					metadataSt.close();
-
-					// perform concurrent bulk requests
-					synchronized (bulkRequestConcurrent) {
-						bulkRequestConcurrent
-								.add(client.prepareIndex(indexName, documentType, docId.toString()).setSource(xb));
-						bblen.increment();
+				bulkSink.add(client.prepareIndex(indexName, documentType, String.valueOf(docId))
+						.setSource(source.get(0)).request());
+				bblen.increment();
+				n++;
+				if (bblen.value() % LOG_INTERVAL == 0) {
+					logger.log(Level.INFO, "##### " + bblen.value() + " documents are indexed.");
+				}
+			}
+		} finally {
+			documentCursor.close();
+			entityCursor.close();
+			termCursor.close();
+			timexCursor.close();
+			metadataCursor.close();
+		}
+		return n;
+	}
 
-						if (bblen.value() % BATCH_SIZE == 0) {
-							logger.log(Level.INFO, "##### " + bblen.value() + " documents are indexed.");
-							bulkRequestConcurrent.execute();
-						}
+	/**
+	 * Builds the JSON source of a document.
+	 *
+	 * @param docSt
+	 *            the document row
+	 * @param simpleCreated
+	 *            the date format
+	 * @param types
+	 *            the entity types (lower case)
+	 * @param entityCursor
+	 *            the entity cursor
+	 * @param termCursor
+	 *            the term cursor
+	 * @param timexCursor
+	 *            the timex cursor
+	 * @param metadataCursor
+	 *            the metadata cursor
+	 * @return the document source
+	 * @throws SQLException
+	 *             the SQL exception
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private XContentBuilder buildDocument(ResultSet docSt, SimpleDateFormat simpleCreated, Set<String> types,
+			DocidCursor entityCursor, DocidCursor termCursor, DocidCursor timexCursor, DocidCursor metadataCursor)
+			throws SQLException, IOException {
+		List<NamedEntity> namedEntity = new ArrayList<>();
+		// fulltext
+		String content = docSt.getString("content");
+		// creation date
+		Date dbCreated = docSt.getDate("created");
+		String created = simpleCreated.format(dbCreated);
+		// document id
+		long docId = docSt.getLong("id");
+		// entities (aggregated per document)
+		entityCursor.forEachRow(docId, rs -> namedEntity.add(new NamedEntity(rs.getLong("id"), rs.getString("name"),
+				rs.getString("type"), rs.getInt("frequency"))));
+		// key terms (top 10 only)
+		Map<String, Integer> termMap = new HashMap<>();
+		termCursor.forEachRow(docId, rs -> {
+			if (termMap.size() < MAX_KEYTERMS) {
+				termMap.put(rs.getString("term"), rs.getInt("frequency"));
+			}
+		});
+		// temporal expressions
+		List<TimeX> timexs = new ArrayList<>();
+		Set<String> simpeTimex = new HashSet<>();
+		timexCursor.forEachRow(docId, rs -> {
+			String timeXValue = rs.getString("timexvalue");
+			timexs.add(new TimeX(rs.getInt("beginoffset"), rs.getInt("endoffset"), rs.getString("timex"),
+					rs.getString("type"), timeXValue));
+			simpeTimex.add(timeXValue);
+		});
+		// metadata
+		Map<String, List<String>> metas = new HashMap<>();
+		metadataCursor.forEachRow(docId, rs -> {
+			// we capitalize the first character on purpose
+			String key = StringUtils.capitalize(rs.getString("key").replace(".", "_"));
+			metas.computeIfAbsent(key, k -> new ArrayList<>()).add(rs.getString("value"));
+		});
+
+		// Create a JSON request object for adding the data to the index
+		// -------------------------------------------------------------
+		XContentBuilder xb = XContentFactory.jsonBuilder().startObject();
+		xb.field("Content", content).field("Created", created);
+		for (String key : metas.keySet()) {
+			if (metas.get(key).size() > 1) { // array field
+				xb.field(key, metas.get(key));
+			} else {
+				xb.field(key, metas.get(key).get(0));
+			}
+		}
+		// Adding entities
+		if (namedEntity.size() > 0) {
+			xb.startArray("Entities");
+			for (NamedEntity ne : namedEntity) {
+				xb.startObject();
+				xb.field("EntId", ne.id);
+				xb.field("Entname", ne.name);
+				xb.field("EntType", ne.type);
+				xb.field("EntFrequency", ne.frequency);
+				xb.endObject();
+			}
+			xb.endArray();
+
+			for (String type : types) {
+				xb.startArray("Entities" + type);
+				for (NamedEntity ne : namedEntity) {
+					if (ne.type.toLowerCase().equals(type)) {
+						xb.startObject();
+						xb.field("EntId", ne.id);
+						xb.field("Entname", ne.name);
+						xb.field("EntFrequency", ne.frequency);
+						xb.endObject();
 					}
-
-				} catch (SQLException e) {
-					e.printStackTrace();
-				} catch (IOException e) {
-					e.printStackTrace();
 				}
-				return docId.toString();
+				xb.endArray();
 			}
 
-		};
+		}
 
-		// parallel execution
-		List<String> userIdList = new ResultSetIterable<String>(docSt, indexDoc).stream().collect(Collectors.toList());
-		// index last requests
-		try {
-			bulkRequestConcurrent.execute();
-		} catch (ActionRequestValidationException e) {
-			logger.log(Level.INFO, "All data has been indexed.");
+		// Adding terms
+		if (termMap.size() > 0) {
+			xb.startArray("Keywords");
+			for (String term : termMap.keySet()) {
+				xb.startObject();
+				xb.field("Keyword", term);
+				xb.field("TermFrequency", termMap.get(term));
+				xb.endObject();
+			}
+			xb.endArray();
 		}
 
-		docSt.close();
+		// Adding TimeX
+		if (timexs.size() > 0) {
+			xb.startArray("EventTimes");
+			for (TimeX t : timexs) {
+				xb.startObject();
+				xb.field("Beginoffset", t.beginOffset);
+				xb.field("Endoffset", t.endOffset);
+				xb.field("Timex", t.timeX);
+				xb.field("TimeXType", t.timeXType);
+				xb.field("Timexvalue", t.timexValue);
+				xb.endObject();
+			}
+			xb.endArray();
+			xb.field("SimpleTimeExpresion", new ArrayList<>(simpeTimex));
+		}
 
+		xb.endObject();
+		return xb;
 	}
 
 	/**
@@ -613,50 +758,4 @@ public class Postgres2ElasticsearchIndexer extends NewsleakPreprocessor {
 		}
 	}
 
-	/**
-	 * The Class BulkRequestConcurrent.
-	 */
-	class BulkRequestConcurrent {
-
-		/** The bulk request. */
-		private BulkRequestBuilder bulkRequest;
-
-		/** The elasticsearch client. */
-		private Client client;
-
-		/**
-		 * Instantiates a new concurrent bulk request.
-		 *
-		 * @param client
-		 *            the client
-		 */
-		public BulkRequestConcurrent(Client client) {
-			super();
-			this.client = client;
-			this.bulkRequest = this.client.prepareBulk();
-		}
-
-		/**
-		 * Adds a bulk of data to the index.
-		 *
-		 * @param request
-		 *            the request
-		 */
-		public synchronized void add(IndexRequestBuilder request) {
-			this.bulkRequest.add(request);
-		}
-
-		/**
-		 * Executes a bulk request.
-		 */
-		public synchronized void execute() {
-			BulkResponse bulkResponse = bulkRequest.execute().actionGet();
-			if (bulkResponse.hasFailures()) {
-				logger.log(Level.SEVERE,
-						"##### Bulk Request failure with error: " + bulkResponse.buildFailureMessage());
-			}
-			this.bulkRequest = client.prepareBulk();
-		}
-	}
-
 }
\ No newline at end of file
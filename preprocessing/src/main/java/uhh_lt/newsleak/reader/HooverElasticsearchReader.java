@@ -26,13 +26,12 @@ import com.google.gson.JsonObject;
 import de.unihd.dbs.uima.types.heideltime.Dct;
 import io.searchbox.client.JestClient;
 import io.searchbox.client.JestResult;
-import io.searchbox.core.Get;
 import io.searchbox.core.Search;
-import io.searchbox.core.SearchScroll;
 import io.searchbox.params.Parameters;
 import uhh_lt.newsleak.resources.HooverResource;
 import uhh_lt.newsleak.resources.MetadataResource;
 import uhh_lt.newsleak.types.Metadata;
+import uhh_lt.newsleak.util.PrefetchIterator;
 
 /**
  * The HooverElasticsearchReader connects to a running instance of the Hoover
@@ -77,9 +76,6 @@ public class HooverElasticsearchReader extends NewsleakReader {
 	/** The Constant PARAM_SCROLL_SIZE. */
 	private static final String PARAM_SCROLL_SIZE = "10000";
 
-	/** The Constant PARAM_SCROLL_TIME. */
-	private static final String PARAM_SCROLL_TIME = "1m";
-
 	/** JEST client to run JSON API requests. */
 	private JestClient client;
 
@@ -92,8 +88,8 @@ public class HooverElasticsearchReader extends NewsleakReader {
 	/** The current record. */
 	private int currentRecord = 0;
 
-	/** The list of all Ids. */
-	private ArrayList<String> totalIdList;
+	/** The documents, retrieved in batches ahead of processing. */
+	private PrefetchIterator<JsonObject> documents;
 
 	/** The date format. */
 	SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
@@ -125,50 +121,28 @@ public class HooverElasticsearchReader extends NewsleakReader {
 
 		// query hoover's elasticsearch index
 		Search search = new Search.Builder(
-				"{\"query\": {\"match_all\" : {}}, \"_source\" : false, \"size\" : " + PARAM_SCROLL_SIZE + "}")
+				"{\"query\": {\"match_all\" : {}}, \"_source\" : false, \"version\" : true, \"size\" : "
+						+ PARAM_SCROLL_SIZE + "}")
 						.addIndex(hooverResource.getIndex()).addType(HooverResource.HOOVER_DOCUMENT_TYPE)
-						.setParameter(Parameters.SCROLL, PARAM_SCROLL_TIME).build();
+						.setParameter(Parameters.SCROLL, hooverResource.getScrollTime()).build();
 
 		try {
 
 			// run JEST request
 			JestResult result = client.execute(search);
 
-			totalIdList = new ArrayList<String>();
-
 			JsonArray hits = result.getJsonObject().getAsJsonObject("hits").getAsJsonArray("hits");
 			Integer total = result.getJsonObject().getAsJsonObject("hits").get("total").getAsInt();
 
-			int nHits = hits.size();
-
-			logger.log(Level.INFO, "Hits first result: " + nHits);
+			logger.log(Level.INFO, "Hits first result: " + hits.size());
 			logger.log(Level.INFO, "Hits total: " + total);
 
-			totalIdList.addAll(hooverResource.getIds(hits));
-
-			String scrollId = result.getJsonObject().get("_scroll_id").getAsString();
-
-			// run scroll request to collect all Ids
-			int i = 0;
-			while (nHits > 0) {
-				SearchScroll scroll = new SearchScroll.Builder(scrollId, PARAM_SCROLL_TIME).build();
-
-				result = client.execute(scroll);
-
-				hits = result.getJsonObject().getAsJsonObject("hits").getAsJsonArray("hits");
-				nHits = hits.size();
-				logger.log(Level.INFO, "Hits " + ++i + " result: " + nHits);
-				totalIdList.addAll(hooverResource.getIds(hits));
-				scrollId = result.getJsonObject().getAsJsonPrimitive("_scroll_id").getAsString();
-			}
-
-			if (maxRecords > 0 && maxRecords < totalIdList.size()) {
-				totalIdList = new ArrayList<String>(totalIdList.subList(0, maxRecords));
-			}
-
-			totalRecords = totalIdList.size();
+			totalRecords = maxRecords > 0 && maxRecords < total ? maxRecords : total;
 			logger.log(Level.INFO, "Found " + totalRecords + " ids in index " + esIndex);
 
+			// retrieve documents while scrolling over the remaining ids
+			documents = hooverResource.prefetchDocuments(result, totalRecords, documentCache);
+
 		} catch (IOException e) {
 			throw new ResourceInitializationException(e);
 		}
@@ -192,15 +166,12 @@ public class HooverElasticsearchReader extends NewsleakReader {
 		// temporary document Id (a new id will be generated by the
 		// ElasticsearchDocumentWriter)
 		String docIdNewsleak = Integer.toString(currentRecord);
-		String docIdHoover = totalIdList.get(currentRecord - 1);
+		JsonObject document = documents.next();
+		String docIdHoover = document.get("_id").getAsString();
 
 		logger.log(Level.INFO, "Proceessing document: " + docIdHoover);
 
-		Get get = new Get.Builder(hooverResource.getIndex(), docIdHoover).type(HooverResource.HOOVER_DOCUMENT_TYPE)
-				.build();
-		JestResult getResult = client.execute(get);
-		JsonObject o = getResult.getJsonObject();
-		JsonObject source = o.get("_source").getAsJsonObject();
+		JsonObject source = hooverResource.getSource(document);
 
 		String docText = "";
 		String field;
@@ -428,7 +399,8 @@ public class HooverElasticsearchReader extends NewsleakReader {
 	 * @see org.apache.uima.collection.base_cpm.BaseCollectionReader#hasNext()
 	 */
 	public boolean hasNext() throws IOException, CollectionException {
-		if (currentRecord < totalRecords) {
+		// the scroll may return fewer ids than its first page announced
+		if (currentRecord < totalRecords && documents.hasNext()) {
 			currentRecord++; //TODO 2019-06-24, ps: Stimmt das? (das currentrecords erhöht wird?) wenn ja, warum?
 			return true;
 		} else {
@@ -6,9 +6,7 @@ import com.google.gson.JsonObject;
 import de.unihd.dbs.uima.types.heideltime.Dct;
 import io.searchbox.client.JestClient;
 import io.searchbox.client.JestResult;
-import io.searchbox.core.Get;
 import io.searchbox.core.Search;
-import io.searchbox.core.SearchScroll;
 import io.searchbox.params.Parameters;
 import org.apache.solr.client.solrj.impl.HttpSolrClient;
 import org.apache.uima.UimaContext;
@@ -26,6 +24,7 @@ import uhh_lt.newsleak.resources.HooverResource;
 import uhh_lt.newsleak.resources.MetadataResource;
 import uhh_lt.newsleak.types.Metadata;
 import uhh_lt.newsleak.types.TpResource;
+import uhh_lt.newsleak.util.PrefetchIterator;
 import uhh_lt.newsleak.services.StatsService;
 import uhh_lt.newsleak.services.TransparenzSolrService;
 
@@ -71,9 +70,6 @@ public class HooverTransparenzReader extends NewsleakReader {
 	/** The Constant PARAM_SCROLL_SIZE. */
 	private static final String PARAM_SCROLL_SIZE = "10000";
 
-	/** The Constant PARAM_SCROLL_TIME. */
-	private static final String PARAM_SCROLL_TIME = "1m";
-
 	/** The Constant TRANSPARENZ_CORE_ADDRESS. */
 	public static final String TRANSPARENZ_CORE_ADDRESS = "transparenzcoreaddress";
 
@@ -81,6 +77,13 @@ public class HooverTransparenzReader extends NewsleakReader {
 	@ConfigurationParameter(name = TRANSPARENZ_CORE_ADDRESS, mandatory = true)
 	private String solrCoreAddress;
 
+	/** The Constant PARAM_SOLR_PAGE_SIZE. */
+	public static final String PARAM_SOLR_PAGE_SIZE = "solrPageSize";
+
+	/** Number of datasets per request to the Transparenzportal Solr Index */
+	@ConfigurationParameter(name = PARAM_SOLR_PAGE_SIZE, mandatory = false, defaultValue = "100")
+	private Integer solrPageSize;
+
 	/** JEST client to run JSON API requests. */
 	private JestClient client;
 
@@ -93,8 +96,8 @@ public class HooverTransparenzReader extends NewsleakReader {
 	/** The current record. */
 	private int currentRecord = 0;
 
-	/** The list of all Ids. */
-	private ArrayList<String> totalIdList;
+	/** The documents, retrieved in batches ahead of processing. */
+	private PrefetchIterator<JsonObject> documents;
 
 	/** The date format. */
 	SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
@@ -151,7 +154,7 @@ public class HooverTransparenzReader extends NewsleakReader {
 		tpResourcesMap = new HashMap<>();
 
 		//gets all resources from solr
-		TransparenzSolrService tpSolrService = new TransparenzSolrService(solrCoreAddress, logger);
+		TransparenzSolrService tpSolrService = new TransparenzSolrService(solrCoreAddress, solrPageSize, logger);
 		List<TpResource> tpResources = tpSolrService.getAllResourcesFromSolr();
 
 		//Stores the TpResources in a map so that they can be retrieved efficiently during processing.
@@ -165,7 +168,7 @@ public class HooverTransparenzReader extends NewsleakReader {
 	}
 
 	/**
-	 * Retrieves the IDs of all documents in the Hoover Elasticsearch index.
+	 * Starts scrolling over the IDs of all documents in the Hoover Elasticsearch index.
 	 * Copied from {@link HooverElasticsearchReader#initialize(UimaContext)}.
 	 *
 	 * @param context The UIMA context.
@@ -179,51 +182,27 @@ public class HooverTransparenzReader extends NewsleakReader {
 
 		// query hoover's elasticsearch index
 		Search search = new Search.Builder(
-				"{\"query\": {\"match_all\" : {}}, \"_source\" : false, \"size\" : " + PARAM_SCROLL_SIZE + "}")
+				"{\"query\": {\"match_all\" : {}}, \"_source\" : false, \"version\" : true, \"size\" : "
+						+ PARAM_SCROLL_SIZE + "}")
 				.addIndex(hooverResource.getIndex()).addType(HooverResource.HOOVER_DOCUMENT_TYPE)
-				.setParameter(Parameters.SCROLL, PARAM_SCROLL_TIME).build();
+				.setParameter(Parameters.SCROLL, hooverResource.getScrollTime()).build();
 
 		try {
 			// run JEST request
 			JestResult result = client.execute(search);
 
-			totalIdList = new ArrayList<String>();
-
 			JsonArray hits = result.getJsonObject().getAsJsonObject("hits").getAsJsonArray("hits");
 			Integer total = result.getJsonObject().getAsJsonObject("hits").get("total").getAsInt();
 
-			int nHits = hits.size();
-
-			logger.log(Level.INFO, "Hits first result: " + nHits);
+			logger.log(Level.INFO, "Hits first result: " + hits.size());
 			logger.log(Level.INFO, "Hits total: " + total);
 
-			totalIdList.addAll(hooverResource.getIds(hits));
-
-			String scrollId = result.getJsonObject().get("_scroll_id").getAsString();
-
-			// run scroll request to collect all Ids
-			int i = 0;
-			while (nHits > 0) {
-				SearchScroll scroll = new SearchScroll.Builder(scrollId, PARAM_SCROLL_TIME).build();
-
-				result = client.execute(scroll);
-
-				hits = result.getJsonObject().getAsJsonObject("hits").getAsJsonArray("hits");
-				nHits = hits.size();
-				logger.log(Level.INFO, "Hits " + ++i + " result: " + nHits);
-				totalIdList.addAll(hooverResource.getIds(hits));
-				scrollId = result.getJsonObject().getAsJsonPrimitive("_scroll_id").getAsString();
-			}
-
-			if (maxRecords > 0 && maxRecords < totalIdList.size()) {
-				totalIdList = new ArrayList<String>(totalIdList.subList(0, maxRecords));
-			}
-
-			totalRecords = totalIdList.size();
-
-
+			totalRecords = maxRecords > 0 && maxRecords < total ? maxRecords : total;
 			logger.log(Level.INFO, "Found " + totalRecords + " ids in index " + esIndex);
 
+			// retrieve documents while scrolling over the remaining ids
+			documents = hooverResource.prefetchDocuments(result, totalRecords, documentCache);
+
 		} catch (IOException e) {
 			throw new ResourceInitializationException(e);
 		}
@@ -257,26 +236,27 @@ public class HooverTransparenzReader extends NewsleakReader {
 		while(tpResource == null) {
 			// temporary document Id (a new id will be generated by the ElasticsearchDocumentWriter)
 			docIdNewsleak = Integer.toString(currentRecord);
-			String docIdHoover = totalIdList.get(currentRecord - 1);
+			JsonObject document = documents.next();
+			String docIdHoover = document.get("_id").getAsString();
 
 			logger.log(Level.INFO, "Proceessing document: " + docIdHoover);
 
-			Get get = new Get.Builder(hooverResource.getIndex(), docIdHoover).type(HooverResource.HOOVER_DOCUMENT_TYPE)
-					.build();
-			JestResult getResult = client.execute(get);
-			JsonObject o = getResult.getJsonObject();
-			source = o.get("_source").getAsJsonObject();
+			source = hooverResource.getSource(document);
 			String fileName = getField(source, "filename");
-			fileName = fileName.split("\\.")[0];
-			tpResource = tpResourcesMap.get(fileName);
-
-			if(tpResource == null){
-				logger.log(Level.INFO, "No Transparenzportal resource found in Transparenzportal Solr Index for file: "+fileName+". Discarding document: " + docIdHoover);
-
-				if(!hasNext()){
-					throw new CollectionException();
+			if (fileName == null) {
+				// missing document (empty source) or no file name to look up
+				logger.log(Level.INFO, "No file name found for document: " + docIdHoover + ". Discarding document.");
+			} else {
+				fileName = fileName.split("\\.")[0];
+				tpResource = tpResourcesMap.get(fileName);
+				if (tpResource == null) {
+					logger.log(Level.INFO, "No Transparenzportal resource found in Transparenzportal Solr Index for file: "+fileName+". Discarding document: " + docIdHoover);
 				}
 			}
+
+			if(tpResource == null && !hasNext()){
+				throw new CollectionException();
+			}
 		}
 
 		String origDocText = getField(source, "text");
@@ -511,7 +491,8 @@ public class HooverTransparenzReader extends NewsleakReader {
 	 * @see org.apache.uima.collection.base_cpm.BaseCollectionReader#hasNext()
 	 */
 	public boolean hasNext() throws IOException, CollectionException {
-		if (currentRecord < totalRecords) {
+		// the scroll may return fewer ids than its first page announced
+		if (currentRecord < totalRecords && documents.hasNext()) {
 			currentRecord++; //TODO 2019-06-24, ps: Is it correct that "currentrecords" is incremented here in this method? if yes, why??
 			return true;
 		} else {
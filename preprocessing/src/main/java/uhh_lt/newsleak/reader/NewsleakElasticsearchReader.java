@@ -1,7 +1,14 @@
 package uhh_lt.newsleak.reader;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.LineIterator;
 import org.apache.uima.UimaContext;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.CASException;
@@ -15,12 +22,11 @@ import org.apache.uima.util.Level;
 import org.apache.uima.util.Logger;
 import org.apache.uima.util.Progress;
 import org.apache.uima.util.ProgressImpl;
-import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.client.transport.TransportClient;
 import org.elasticsearch.common.unit.TimeValue;
-import org.elasticsearch.common.xcontent.XContentBuilder;
-import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.sort.SortOrder;
 import org.elasticsearch.search.sort.SortParseElement;
@@ -28,7 +34,7 @@ import org.elasticsearch.search.sort.SortParseElement;
 import de.unihd.dbs.uima.types.heideltime.Dct;
 import uhh_lt.newsleak.resources.ElasticsearchResource;
 import uhh_lt.newsleak.types.Metadata;
-import uhh_lt.newsleak.writer.ElasticsearchDocumentWriter;
+import uhh_lt.newsleak.util.PrefetchIterator;
 
 /**
  * This reader reads from a temporary elasticsearch index which has been
@@ -37,7 +43,12 @@ import uhh_lt.newsleak.writer.ElasticsearchDocumentWriter;
  * document language information.
  * 
  * The reader reads all documents for exactly one language into CASes for
- * further information extraction processing steps.
+ * further information extraction processing steps. Fulltexts and dates are
+ * retrieved with the pages of a single scroll request. A background thread
+ * fetches the next pages while the current page is processed (up to a
+ * bounded number of pages ahead). The next page is only requested when a
+ * prefetched page has been consumed, so the scroll keep alive time must cover
+ * the processing of the prefetched pages.
  */
 public class NewsleakElasticsearchReader extends CasCollectionReader_ImplBase {
 
@@ -58,9 +69,40 @@ public class NewsleakElasticsearchReader extends CasCollectionReader_ImplBase {
 	@ConfigurationParameter(name = PARAM_LANGUAGE, mandatory = true)
 	private String language;
 
+	/** The Constant PARAM_SKIP_IDS_FILE. */
+	public static final String PARAM_SKIP_IDS_FILE = "skipIdsFile";
+
+	/** The skip ids file. */
+	@ConfigurationParameter(name = PARAM_SKIP_IDS_FILE, mandatory = false, description = "File with ids of documents (one per line) which are not read, e.g. because they have been processed already.")
+	private String skipIdsFile;
+
+	/** The Constant PARAM_SCROLL_SIZE. */
+	public static final String PARAM_SCROLL_SIZE = "scrollSize";
+
+	/** The scroll size. */
+	@ConfigurationParameter(name = PARAM_SCROLL_SIZE, mandatory = false, defaultValue = "500", description = "Number of documents per scroll page.")
+	private Integer scrollSize;
+
+	/** The Constant PARAM_SCROLL_KEEP_ALIVE. */
+	public static final String PARAM_SCROLL_KEEP_ALIVE = "scrollKeepAliveMinutes";
+
+	/** The scroll keep alive minutes. */
+	@ConfigurationParameter(name = PARAM_SCROLL_KEEP_ALIVE, mandatory = false, defaultValue = "30", description = "Minutes the scroll is kept alive between two pages (must cover the processing of all prefetched pages).")
+	private Integer scrollKeepAliveMinutes;
+
+	/** The Constant PARAM_PREFETCH_PAGES. */
+	public static final String PARAM_PREFETCH_PAGES = "prefetchPages";
+
+	/** The prefetch pages. */
+	@ConfigurationParameter(name = PARAM_PREFETCH_PAGES, mandatory = false, defaultValue = "4", description = "Maximum number of scroll pages fetched ahead.")
+	private Integer prefetchPages;
+
 	/** The client. */
 	private TransportClient client;
 
+	/** The scroll keep alive time. */
+	private TimeValue scrollTime;
+
 	/** The es index. */
 	private String esIndex;
 
@@ -70,8 +112,8 @@ public class NewsleakElasticsearchReader extends CasCollectionReader_ImplBase {
 	/** The current record. */
 	private int currentRecord = 0;
 
-	/** The total id list. */
-	private ArrayList<String> totalIdList;
+	/** The prefetched documents. */
+	private PrefetchIterator<SearchHit> documents;
 
 	/*
 	 * (non-Javadoc)
@@ -86,38 +128,48 @@ public class NewsleakElasticsearchReader extends CasCollectionReader_ImplBase {
 		logger = context.getLogger();
 		client = esResource.getClient();
 		esIndex = esResource.getIndex();
+		scrollTime = TimeValue.timeValueMinutes(scrollKeepAliveMinutes);
 
 		try {
-			XContentBuilder builder = XContentFactory.jsonBuilder().startObject().field("match").startObject()
-					.field("DocumentLanguage", language).endObject().endObject();
-
-			// retrieve all ids
-			totalIdList = new ArrayList<String>();
-			SearchResponse scrollResp = client.prepareSearch(esIndex)
-					.addSort(SortParseElement.DOC_FIELD_NAME, SortOrder.ASC).setScroll(new TimeValue(60000))
-					.setQuery(builder).setSize(10000).execute().actionGet();
-			while (true) {
-				for (SearchHit hit : scrollResp.getHits().getHits()) {
-					totalIdList.add(hit.getId());
-				}
-				scrollResp = client.prepareSearchScroll(scrollResp.getScrollId()).setScroll(new TimeValue(60000))
-						.execute().actionGet();
-				// Break condition: No hits are returned
-				if (scrollResp.getHits().getHits().length == 0) {
-					break;
+			BoolQueryBuilder query = QueryBuilders.boolQuery()
+					.filter(QueryBuilders.termQuery("DocumentLanguage", language));
+
+			// skip documents processed by an earlier run
+			BitSet skipIds = new BitSet();
+			if (skipIdsFile != null) {
+				LineIterator lines = FileUtils.lineIterator(new File(skipIdsFile), "UTF-8");
+				try {
+					while (lines.hasNext()) {
+						String id = lines.nextLine().trim();
+						if (!id.isEmpty()) {
+							skipIds.set(Integer.parseInt(id));
+						}
+					}
+				} finally {
+					LineIterator.closeQuietly(lines);
 				}
 			}
 
-			totalRecords = totalIdList.size();
+			SearchResponse firstPage = client.prepareSearch(esIndex)
+					.addSort(SortParseElement.DOC_FIELD_NAME, SortOrder.ASC).setScroll(scrollTime).setQuery(query)
+					.setFetchSource(new String[] { "Content", "Created" }, null).setSize(scrollSize).execute()
+					.actionGet();
+			totalRecords = firstPage.getHits().getTotalHits();
 			logger.log(Level.INFO, "Found " + totalRecords + " for language " + language + " in index");
+			if (!skipIds.isEmpty()) {
+				// processed documents of other languages are not counted, so this is an estimate
+				totalRecords = Math.max(0, totalRecords - skipIds.cardinality());
+				logger.log(Level.INFO, "Skipping up to " + skipIds.cardinality() + " processed documents");
+			}
+
+			documents = new PrefetchIterator<SearchHit>(new ScrollSource(firstPage, skipIds), prefetchPages,
+					"scroll-" + language);
 
 		} catch (IOException e) {
 			e.printStackTrace();
 			System.exit(1);
 		}
 
-		// System.exit(1);
-
 	}
 
 	/*
@@ -134,17 +186,17 @@ public class NewsleakElasticsearchReader extends CasCollectionReader_ImplBase {
 			throw new CollectionException(e);
 		}
 
-		String docId = totalIdList.get(currentRecord);
-		GetResponse response = client.prepareGet(esIndex, ElasticsearchDocumentWriter.ES_TYPE_DOCUMENT, docId)
-				.setFields("Content", "Created").get();
+		SearchHit hit = documents.next();
+		String docId = hit.getId();
+		Map<String, Object> source = hit.getSource();
 
-		jcas.setDocumentText((String) response.getField("Content").getValue());
+		jcas.setDocumentText((String) source.get("Content"));
 		jcas.setDocumentLanguage(language);
 
 		// Set metadata
 		Metadata metaCas = new Metadata(jcas);
 		metaCas.setDocId(docId);
-		String docDate = (String) response.getField("Created").getValue();
+		String docDate = (String) source.get("Created");
 		metaCas.setTimestamp(docDate);
 		metaCas.addToIndexes();
 
@@ -175,7 +227,75 @@ public class NewsleakElasticsearchReader extends CasCollectionReader_ImplBase {
 	 * @see org.apache.uima.collection.base_cpm.BaseCollectionReader#hasNext()
 	 */
 	public boolean hasNext() throws IOException, CollectionException {
-		return currentRecord < totalRecords ? true : false;
+		return documents.hasNext();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.apache.uima.fit.component.CasCollectionReader_ImplBase#close()
+	 */
+	public void close() throws IOException {
+		documents.close();
+	}
+
+	/**
+	 * Fetches the pages of a scroll request, without documents which are to be
+	 * skipped.
+	 */
+	private class ScrollSource implements PrefetchIterator.BatchSource<SearchHit> {
+
+		/** The current scroll page. */
+		private SearchResponse page;
+
+		/** The ids of documents to skip. */
+		private BitSet skipIds;
+
+		/**
+		 * Instantiates a new scroll source.
+		 *
+		 * @param firstPage
+		 *            the first page of the scroll request
+		 * @param skipIds
+		 *            the ids of documents to skip
+		 */
+		ScrollSource(SearchResponse firstPage, BitSet skipIds) {
+			this.page = firstPage;
+			this.skipIds = skipIds;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see uhh_lt.newsleak.util.PrefetchIterator.BatchSource#nextBatch()
+		 */
+		@Override
+		public List<SearchHit> nextBatch() throws Exception {
+			List<SearchHit> batch = new ArrayList<SearchHit>();
+			while (batch.isEmpty() && page.getHits().getHits().length > 0) {
+				for (SearchHit hit : page.getHits().getHits()) {
+					if (!skipIds.get(Integer.parseInt(hit.getId()))) {
+						batch.add(hit);
+					}
+				}
+				page = client.prepareSearchScroll(page.getScrollId()).setScroll(scrollTime).execute().actionGet();
+			}
+			return batch;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see uhh_lt.newsleak.util.PrefetchIterator.BatchSource#close()
+		 */
+		@Override
+		public void close() {
+			try {
+				client.prepareClearScroll().addScrollId(page.getScrollId()).execute().actionGet();
+			} catch (Exception e) {
+				logger.log(Level.WARNING, "Could not clear scroll: " + e.getMessage());
+			}
+		}
 	}
 
 }
@@ -1,12 +1,18 @@
 package uhh_lt.newsleak.reader;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Scanner;
 
+import org.apache.uima.UimaContext;
 import org.apache.uima.fit.component.CasCollectionReader_ImplBase;
 import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.util.Level;
 import org.apache.uima.util.Logger;
 
+import uhh_lt.newsleak.util.DocumentCache;
+
 /**
  * This abstract reader provides basic functionality for all primary
  * elasticsearch data readers. This is basically a maximum threshold for reading
@@ -17,6 +23,10 @@ import org.apache.uima.util.Logger;
  * fulltext extraction problems from spreadsheet documents such as xlsx files
  * which may result in hundreds of thousands of blank lines), and pruning of
  * documents to a maximum length (given in characters).
+ * 
+ * Readers of remote sources can keep the retrieved documents in an optional
+ * local @see uhh_lt.newsleak.util.DocumentCache, so repeated runs only
+ * retrieve documents which are new or have been modified since.
  */
 public abstract class NewsleakReader extends CasCollectionReader_ImplBase {
 
@@ -37,9 +47,52 @@ public abstract class NewsleakReader extends CasCollectionReader_ImplBase {
 	@ConfigurationParameter(name = PARAM_MAX_DOC_LENGTH, mandatory = false)
 	protected Integer maxDocumentLength = Integer.MAX_VALUE; // 1500 * 10000 = 15000000 = 10000 norm pages
 
+	/** The Constant PARAM_DOCUMENT_CACHE. */
+	public static final String PARAM_DOCUMENT_CACHE = "documentCacheDirectory";
+
+	/** The document cache directory. */
+	@ConfigurationParameter(name = PARAM_DOCUMENT_CACHE, mandatory = false, description = "Directory of the local cache of source documents (no cache, if empty).")
+	private String documentCacheDirectory;
+
+	/** The document cache (null, if disabled). */
+	protected DocumentCache documentCache;
+
 	/** The Constant MAXIMUM_EMPTY_LINE_SEQUENCE_LENGTH. */
 	public static final int MAXIMUM_EMPTY_LINE_SEQUENCE_LENGTH = 50;
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.apache.uima.fit.component.CasCollectionReader_ImplBase#initialize(org.
+	 * apache.uima.UimaContext)
+	 */
+	@Override
+	public void initialize(UimaContext context) throws ResourceInitializationException {
+		super.initialize(context);
+		if (documentCacheDirectory != null && !documentCacheDirectory.trim().isEmpty()) {
+			try {
+				documentCache = new DocumentCache(new File(documentCacheDirectory), context.getLogger());
+			} catch (IOException e) {
+				throw new ResourceInitializationException(e);
+			}
+			context.getLogger().log(Level.INFO, "Using document cache " + documentCacheDirectory);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.apache.uima.fit.component.CasCollectionReader_ImplBase#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		if (documentCache != null) {
+			logger.log(Level.INFO, documentCache.getStatistics());
+		}
+		super.close();
+	}
+
 	/**
 	 * Clean body text (prune to maximum length, delete long sequences of blank
 	 * lines).
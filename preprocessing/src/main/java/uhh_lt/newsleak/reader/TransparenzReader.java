@@ -2,11 +2,7 @@ package uhh_lt.newsleak.reader;
 
 
 import org.apache.solr.client.solrj.SolrQuery;
-import org.apache.solr.client.solrj.SolrServerException;
-import org.apache.solr.client.solrj.impl.HttpSolrClient;
-import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
-import org.apache.solr.common.SolrDocumentList;
 import org.apache.uima.UimaContext;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.CASException;
@@ -21,6 +17,8 @@ import org.apache.uima.util.ProgressImpl;
 import uhh_lt.newsleak.resources.MetadataResource;
 import uhh_lt.newsleak.types.Metadata;
 import uhh_lt.newsleak.types.TpResource;
+import uhh_lt.newsleak.services.TransparenzSolrService;
+import uhh_lt.newsleak.util.PrefetchIterator;
 
 import java.io.IOException;
 import java.util.*;
@@ -34,6 +32,9 @@ public class TransparenzReader extends NewsleakReader {
     @ExternalResource(key = RESOURCE_METADATA)
     private MetadataResource metadataResource;
 
+    /** Number of pages with fulltexts that are fetched ahead. */
+    private static final int PREFETCH_PAGES = 1;
+
     /** The Constant PARAM_DEFAULT_LANG. */
     public static final String PARAM_DEFAULT_LANG = "defaultLanguage";
 
@@ -48,14 +49,27 @@ public class TransparenzReader extends NewsleakReader {
     @ConfigurationParameter(name = TRANSPARENZ_CORE_ADDRESS, mandatory = true)
     private String solrCoreAddress;
 
-    /** Number of total documents in the Solr Index. */
-    private int totalNumOfTpResources = 0;
+    /** The Constant PARAM_SOLR_PAGE_SIZE. */
+    public static final String PARAM_SOLR_PAGE_SIZE = "solrPageSize";
+
+    /** Number of datasets (including fulltexts) per request to the Solr Index */
+    @ConfigurationParameter(name = PARAM_SOLR_PAGE_SIZE, mandatory = false, defaultValue = "100")
+    private Integer solrPageSize;
+
+    /** Number of total documents in the Solr Index (unknown while datasets are streamed). */
+    private int totalNumOfTpResources = -1;
 
     /** Current document number. */
     private int currentTpResource = 0;
 
-    /** Iterator holding all the outer ids from the Solr Index. */
-    Iterator<String> absoluteResourceIdsIterator = null;
+    /** The outer documents from the Solr Index, retrieved page by page. */
+    PrefetchIterator<SolrDocument> datasets = null;
+
+    /** The current outer document. */
+    SolrDocument currentDataset = null;
+
+    /** The relative ids of the inner documents of the current outer document which have not been read yet. */
+    Deque<Integer> relativeResourceIds = new ArrayDeque<>();
 
     /** Number of documents in the Solr Index where at least one of the necessary fields is missing or malformed. */
     int malformedDatasetCounter = 0;
@@ -63,13 +77,14 @@ public class TransparenzReader extends NewsleakReader {
     /** Number of inner documents. */
     int numOfPdfTpResources = 0;
 
-    /** The solr client */
-    HttpSolrClient solrClient;
 
 
 
     /**
-     * Gets all inner document ids from the solr index (that match the query) and stores them in an iterator for later processing.
+     * Starts streaming all outer documents (including the fulltexts of the inner documents) from the solr index
+     * that match the query. Processing starts as soon as the first page has been retrieved.
+     * Each outer document is retrieved once and kept until all of its inner documents have been read.
+     * Only one page of outer documents is fetched ahead, which bounds the number of fulltexts in memory.
      * @param context
      * @throws ResourceInitializationException
      */
@@ -77,21 +92,19 @@ public class TransparenzReader extends NewsleakReader {
     public void initialize(UimaContext context) throws ResourceInitializationException {
         super.initialize(context);
         logger = context.getLogger();
-        solrClient = new HttpSolrClient.Builder(solrCoreAddress).build();
-
-        List<String> allAbsoluteResourceIds = new ArrayList<>();
-        SolrDocumentList datasets = getDatasetIdsFromSolrIndex();
 
-        logger.log(Level.INFO, "Total number of datasets: " + datasets.size());
-        logger.log(Level.INFO, "Getting Transparenzportal resources from dataset.");
-        for (SolrDocument dataset : datasets) {
-            List<String> absoluteResourceIds = getAbsoluteResourceIds(dataset);
-            allAbsoluteResourceIds.addAll(absoluteResourceIds);
-        }
+        SolrQuery documentQuery = new SolrQuery("res_format:\"PDF\"");
+        documentQuery.addField("id");
+        documentQuery.addField("res_format");
+        documentQuery.addField("res_url");
+        documentQuery.addField("res_fulltext");
+        documentQuery.addField("res_name");
+        documentQuery.addField("title");
+        documentQuery.addField("publishing_date");
 
-        totalNumOfTpResources = allAbsoluteResourceIds.size();
+        logger.log(Level.INFO, "Getting datasets from index " + solrCoreAddress+" with filter '"+documentQuery.getQuery()+"'");
+        datasets = new TransparenzSolrService(solrCoreAddress, solrPageSize, logger).streamDatasets(documentQuery, PREFETCH_PAGES, documentCache);
         currentTpResource = 0;
-        absoluteResourceIdsIterator = allAbsoluteResourceIds.iterator();
     }
 
 
@@ -110,11 +123,10 @@ public class TransparenzReader extends NewsleakReader {
             throw new CollectionException(e);
         }
 
-        String absoluteResourceId = absoluteResourceIdsIterator.next();
-        Integer relativeResourceId = Integer.valueOf(absoluteResourceId.split("_")[0]); //TODO hier (und warsch. im ganzen reader) war die absoluteResourceId noch genau anders herum; dadurch ist der code hier flasch und muss geändert werden (evtl. ist es auch kein problem weil es im ganzen doc so gemacht wird und es nicht mit den filenames zu tun hat). für konsistenz muss man es aber trotzdem ndern.
-        String datasetId = absoluteResourceId.split("_")[1];
-        SolrDocument dataset = getDatasetFromSolrIndex(datasetId);
-        TpResource tpResource = getTpResourceFromDataset(dataset, relativeResourceId);
+        if (relativeResourceIds.isEmpty()) {
+            throw new CollectionException();
+        }
+        TpResource tpResource = getTpResourceFromDataset(currentDataset, relativeResourceIds.poll());
         if(tpResource == null){
             throw new CollectionException(); //TODO ps 2019-08-21: was für eine sinnvolle exception kann man hier schmeißen
         }
@@ -190,82 +202,20 @@ public class TransparenzReader extends NewsleakReader {
     public boolean hasNext() throws IOException, CollectionException {
         if (currentTpResource > maxRecords)
             return false;
-        return absoluteResourceIdsIterator.hasNext();
-    }
-
-
-    /**
-     * Gets all outer document ids from the solr index that match the query.
-     * The additional lists are retrieved to verify that the documents are well formed.
-     * @return SolrDocumentList
-     * @throws ResourceInitializationException
-     */
-    private SolrDocumentList getDatasetIdsFromSolrIndex() throws ResourceInitializationException {
-        QueryResponse response = null;
-
-        SolrQuery documentQuery = new SolrQuery("res_format:\"PDF\"");
-        documentQuery.addField("id");
-        documentQuery.addField("res_format");
-        documentQuery.addField("res_url");
-        documentQuery.setRows(Integer.MAX_VALUE);
-
-        try {
-            logger.log(Level.INFO, "Getting dataset ids from index " + solrCoreAddress+" with filter '"+documentQuery.getQuery()+"'");
-            response = solrClient.query(documentQuery);
-
-            if (response == null) {
-                throw new IOException(); //TODO 2019-07-11 ps: ist diese Exception hier korrekt?
+        while (relativeResourceIds.isEmpty() && datasets.hasNext()) {
+            currentDataset = datasets.next();
+            for (String absoluteResourceId : getAbsoluteResourceIds(currentDataset)) {
+                relativeResourceIds.add(Integer.valueOf(absoluteResourceId.split("_")[0]));
             }
-        } catch (SolrServerException | IOException e) {
-            logger.log(Level.SEVERE, "Failed retrieving dataset ids from index "+solrCoreAddress);
-            e.printStackTrace();
-            throw new ResourceInitializationException();
         }
-
-        return response.getResults();
-    }
-
-
-
-    /**
-     * Gets one outer document from the solr index.
-     * @return List of SolrDocument
-     * @throws IOException
-     */
-    private SolrDocument getDatasetFromSolrIndex(String datasetId) throws IOException {
-        QueryResponse response = null;
-
-
-        SolrQuery documentQuery = new SolrQuery("id:"+datasetId);
-        documentQuery.addField("id");
-        documentQuery.addField("res_format");
-        documentQuery.addField("res_url");
-        documentQuery.addField("res_fulltext");
-        documentQuery.addField("res_name");
-        documentQuery.addField("title");
-        documentQuery.addField("publishing_date");
-        documentQuery.setRows(Integer.MAX_VALUE); //TODO evtl. weg, da immer nur ein ergebnis kommen sollte
-
-
-        try {
-            logger.log(Level.INFO, "Getting dataset '"+datasetId+"' from index " + solrCoreAddress);
-            response = solrClient.query(documentQuery);
-
-            if (response == null) {
-                throw new IOException(); //TODO 2019-07-11 ps: ist diese Exception hier korrekt?
-            }
-        } catch (SolrServerException | IOException e) {
-            logger.log(Level.SEVERE, "Failed retrieving dataset '"+datasetId+"' from index "+solrCoreAddress);
-            logger.log(Level.SEVERE, "Error message: " + e.getMessage());
-            logger.log(Level.SEVERE, "Localized error message: " + e.getLocalizedMessage());
-
-            e.printStackTrace();
-            throw new IOException(); //TODO 2019-08-20 ps: sinnvolle exception schmeißen
+        if (relativeResourceIds.isEmpty() && totalNumOfTpResources < 0) {
+            totalNumOfTpResources = numOfPdfTpResources;
+            logger.log(Level.INFO, "Total number of Transparenzportal resources: " + totalNumOfTpResources);
         }
-
-        return response.getResults().get(0);
+        return !relativeResourceIds.isEmpty();
     }
 
+
     /**
      * Creates ids for the inner documents found within the given outer document (SolrDocument).
      * An inner id has the form "relativeInnerId_outerId".
@@ -346,6 +296,8 @@ public class TransparenzReader extends NewsleakReader {
             String resourceFormat = resourceFormats.get(relativeResourceId);
             String resourceUrl = resourceUrls.get(relativeResourceId);
             String resourceFulltext = resourceFulltexts.get(relativeResourceId);
+            // each resource is read once, so the fulltext can be released from the cached dataset
+            resourceFulltexts.set(relativeResourceId, "");
             String resourceName = resourceNames.get(relativeResourceId);
             tpResource.setFormat(resourceFormat);
             tpResource.setRelativeResourceId(String.valueOf(relativeResourceId));
@@ -416,6 +368,7 @@ public class TransparenzReader extends NewsleakReader {
 
     @Override
     public void close() throws IOException{
+        datasets.close();
         super.close();
     }
 
@@ -1,14 +1,26 @@
 package uhh_lt.newsleak.resources;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.BreakIterator;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.uima.fit.component.Resource_ImplBase;
@@ -35,6 +47,9 @@ import org.tartarus.snowball.ext.swedishStemmer;
 import org.tartarus.snowball.ext.turkishStemmer;
 
 import uhh_lt.newsleak.annotator.LanguageDetector;
+import uhh_lt.newsleak.util.AhoCorasickAutomaton;
+import uhh_lt.newsleak.util.BinaryFormat;
+import uhh_lt.newsleak.util.StringArrayMap;
 
 /**
  * Provides shared functionality and data for the @see
@@ -48,9 +63,22 @@ import uhh_lt.newsleak.annotator.LanguageDetector;
  * 
  * Dictionary files should contain one entry per line. Entries can be single
  * terms, which then are stemmed before comparison with the target data (if a
- * stemmer for the selected language is available). Entries can also be multi
- * word unit (MWU). For MWU, no stemming is performed. MWU are matched via regex
- * instead.
+ * stemmer for the selected language is available). Stems of all unigram
+ * dictionaries are merged into one index, so a token is looked up once
+ * regardless of the number of dictionaries. Entries can also be multi
+ * word unit (MWU). For MWU, no stemming is performed. MWU of all dictionary
+ * types are compiled once into a case-insensitive @see
+ * uhh_lt.newsleak.util.AhoCorasickAutomaton instead, which finds all MWU
+ * occurrences in a document in a single pass.
+ * 
+ * Stem index and MWU automaton of a language are compiled into flat tables
+ * (@see uhh_lt.newsleak.util.StringArrayMap and @see
+ * uhh_lt.newsleak.util.AhoCorasickAutomaton), which are looked up in place.
+ * The compiled tables are written to a binary file in the compiled dictionary
+ * directory (if configured). Later runs memory-map this file instead of reading
+ * the dictionary files, so startup neither parses nor allocates per dictionary
+ * entry. The compiled file records a fingerprint of its dictionary files, so it
+ * is rebuilt automatically after a dictionary file has changed.
  */
 public class DictionaryResource extends Resource_ImplBase {
 
@@ -81,17 +109,46 @@ public class DictionaryResource extends Resource_ImplBase {
 	@ConfigurationParameter(name = PARAM_LANGUAGE_CODE)
 	private String languageCode;
 
-	/** The stemmer. */
-	private SnowballStemmer stemmer;
+	/** The Constant PARAM_STEM_CACHE_SIZE. */
+	public static final String PARAM_STEM_CACHE_SIZE = "stemCacheSize";
+
+	/** The stem cache size. */
+	@ConfigurationParameter(name = PARAM_STEM_CACHE_SIZE, mandatory = false, defaultValue = "100000", description = "Maximum number of cached token stems.")
+	private Integer stemCacheSize;
+
+	/** The Constant PARAM_COMPILED_DIR. */
+	public static final String PARAM_COMPILED_DIR = "compiledDictionaryDir";
+
+	/** The compiled dictionary dir. */
+	@ConfigurationParameter(name = PARAM_COMPILED_DIR, mandatory = false, description = "Directory of compiled dictionaries (none, if not set).")
+	private String compiledDictionaryDir;
+
+	/** The magic number of compiled dictionary files. */
+	private static final int COMPILED_MAGIC = 0x4e4c4443;
+
+	/** The version of the compiled dictionary format. */
+	private static final int COMPILED_VERSION = 2;
+
+	/** The stemmer factory. */
+	private Supplier<SnowballStemmer> stemmerFactory;
+
+	/** The stemmers (one per thread, since stemmers are not thread-safe). */
+	private ThreadLocal<SnowballStemmer> stemmer;
+
+	/** The stem cache (token to stem). */
+	private ConcurrentHashMap<String, String> stemCache;
 
 	/** The locale. */
 	private Locale locale;
 
-	/** The unigram dictionaries. */
-	private HashMap<String, Dictionary> unigramDictionaries;
+	/**
+	 * The merged unigram index (stem to dictionary type and base form pairs of all
+	 * dictionaries).
+	 */
+	private StringArrayMap stemIndex;
 
-	/** The mwu dictionaries. */
-	private HashMap<String, Dictionary> mwuDictionaries;
+	/** The mwu automaton (values are dictionary types). */
+	private AhoCorasickAutomaton<String> mwuAutomaton;
 
 	/*
 	 * (non-Javadoc)
@@ -115,105 +172,258 @@ public class DictionaryResource extends Resource_ImplBase {
 		// select stemmer
 		switch (languageCode) {
 		case "eng":
-			stemmer = new englishStemmer();
+			stemmerFactory = englishStemmer::new;
 			break;
 		case "dan":
-			stemmer = new danishStemmer();
+			stemmerFactory = danishStemmer::new;
 			break;
 		case "deu":
-			stemmer = new germanStemmer();
+			stemmerFactory = germanStemmer::new;
 			break;
 		case "nld":
-			stemmer = new dutchStemmer();
+			stemmerFactory = dutchStemmer::new;
 			break;
 		case "fin":
-			stemmer = new finnishStemmer();
+			stemmerFactory = finnishStemmer::new;
 			break;
 		case "fra":
-			stemmer = new frenchStemmer();
+			stemmerFactory = frenchStemmer::new;
 			break;
 		case "hun":
-			stemmer = new hungarianStemmer();
+			stemmerFactory = hungarianStemmer::new;
 			break;
 		case "ita":
-			stemmer = new italianStemmer();
+			stemmerFactory = italianStemmer::new;
 			break;
 		case "nor":
-			stemmer = new norwegianStemmer();
+			stemmerFactory = norwegianStemmer::new;
 			break;
 		case "por":
-			stemmer = new portugueseStemmer();
+			stemmerFactory = portugueseStemmer::new;
 			break;
 		case "ron":
-			stemmer = new romanianStemmer();
+			stemmerFactory = romanianStemmer::new;
 			break;
 		case "rus":
-			stemmer = new russianStemmer();
+			stemmerFactory = russianStemmer::new;
 			break;
 		case "spa":
-			stemmer = new spanishStemmer();
+			stemmerFactory = spanishStemmer::new;
 			break;
 		case "swe":
-			stemmer = new swedishStemmer();
+			stemmerFactory = swedishStemmer::new;
 			break;
 		case "tur":
-			stemmer = new turkishStemmer();
+			stemmerFactory = turkishStemmer::new;
 			break;
 		default:
-			stemmer = new noStemmer();
+			stemmerFactory = noStemmer::new;
 		}
+		stemmer = ThreadLocal.withInitial(stemmerFactory);
+		stemCache = new ConcurrentHashMap<String, String>();
+
+		// map compiled dictionaries, or compile them from the dictionary files
+		File compiledFile = null;
+		String fingerprint = "";
+		byte[] compiled;
+		try {
+			if (compiledDictionaryDir != null && !compiledDictionaryDir.isEmpty()) {
+				compiledFile = new File(compiledDictionaryDir, languageCode + ".dict");
+				fingerprint = getFingerprint();
+				if (readCompiled(compiledFile, fingerprint)) {
+					logger.log(Level.INFO, "Mapped " + stemIndex.size() + " unigram stems and " + mwuAutomaton.size()
+							+ " multi word units for language " + languageCode + " from " + compiledFile);
+					return true;
+				}
+			}
+			compiled = compile(fingerprint);
+		} catch (IOException e) {
+			throw new ResourceInitializationException(e.getMessage(), null);
+		}
+		if (compiledFile != null) {
+			writeCompiled(compiledFile, compiled);
+		}
+		load(ByteBuffer.wrap(compiled), fingerprint);
+
+		return true;
+	}
 
+	/**
+	 * Compiles the stem index and the mwu automaton from the dictionary files.
+	 *
+	 * @param fingerprint
+	 *            the fingerprint of the dictionaries
+	 * @return the compiled dictionaries (in the format of compiled dictionary
+	 *         files)
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private byte[] compile(String fingerprint) throws IOException {
 		// populate dictionary objects from files
-		unigramDictionaries = new HashMap<String, Dictionary>();
-		mwuDictionaries = new HashMap<String, Dictionary>();
+		HashMap<String, HashMap<String, String>> unigramDictionaries = new HashMap<String, HashMap<String, String>>();
+		AhoCorasickAutomaton<String> mwuAutomaton = new AhoCorasickAutomaton<String>();
 
 		for (File f : dictionaryFiles) {
 
-			try {
-				String dictType = f.getName().replaceAll("\\..*", "").toUpperCase();
-				List<String> dictTermList = FileUtils.readLines(f);
-				Dictionary dictUnigrams = new Dictionary();
-				Dictionary dictMwu = new Dictionary();
-				for (String term : dictTermList) {
-					String t = term.trim();
-					if (!t.isEmpty()) {
-
-						if (isMultiWord(t)) {
-							// handle dictionary entry as multiword unit
-							dictMwu.put("(?i)" + Pattern.quote(t), t);
+			String dictType = f.getName().replaceAll("\\..*", "").toUpperCase();
+			List<String> dictTermList = FileUtils.readLines(f);
+			HashMap<String, String> dictUnigrams = new HashMap<String, String>();
+			for (String term : dictTermList) {
+				String t = term.trim();
+				if (!t.isEmpty()) {
+
+					if (isMultiWord(t)) {
+						// handle dictionary entry as multiword unit
+						mwuAutomaton.add(t, dictType);
+					} else {
+						// handle dictionary entry as unigram
+						String stem = stem(t).toLowerCase();
+
+						// map stems to shortest original type
+						String shortestType;
+						if (dictUnigrams.containsKey(stem) && dictUnigrams.get(stem).length() < t.length()) {
+							shortestType = dictUnigrams.get(stem);
 						} else {
-							// handle dictionary entry as unigram
-							String stem;
-							synchronized (stemmer) {
-								stemmer.setCurrent(t);
-								stemmer.stem();
-								stem = stemmer.getCurrent().toLowerCase();
-							}
-
-							// map stems to shortest original type
-							String shortestType;
-							if (dictUnigrams.containsKey(stem) && dictUnigrams.get(stem).length() < t.length()) {
-								shortestType = dictUnigrams.get(stem);
-							} else {
-								shortestType = t;
-							}
-							dictUnigrams.put(stem, shortestType);
+							shortestType = t;
 						}
-
+						dictUnigrams.put(stem, shortestType);
 					}
+
 				}
-				unigramDictionaries.put(dictType, dictUnigrams);
-				mwuDictionaries.put(dictType, dictMwu);
+			}
+			unigramDictionaries.put(dictType, dictUnigrams);
+
+		}
 
-			} catch (IOException e) {
-				throw new ResourceInitializationException(e.getMessage(), null);
+		// merge unigram dictionaries into a single index
+		HashMap<String, String[]> stemIndex = new HashMap<String, String[]>();
+		for (String dictType : unigramDictionaries.keySet()) {
+			for (Map.Entry<String, String> entry : unigramDictionaries.get(dictType).entrySet()) {
+				String[] entries = stemIndex.get(entry.getKey());
+				String[] newEntries = entries == null ? new String[2] : Arrays.copyOf(entries, entries.length + 2);
+				newEntries[newEntries.length - 2] = dictType;
+				newEntries[newEntries.length - 1] = entry.getValue();
+				stemIndex.put(entry.getKey(), newEntries);
 			}
+		}
 
+		mwuAutomaton.build();
+		logger.log(Level.INFO, "Compiled " + stemIndex.size() + " unigram stems and " + mwuAutomaton.size()
+				+ " multi word units for language " + languageCode);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(COMPILED_MAGIC);
+			out.writeInt(COMPILED_VERSION);
+			BinaryFormat.writeString(out, fingerprint);
+			StringArrayMap.write(out, stemIndex);
+			mwuAutomaton.write(out, dictType -> dictType);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Computes the fingerprint of the dictionaries: a hash of the dictionary files
+	 * (names and contents), the language, the stemmer, and the Java version (for
+	 * the multi word detection).
+	 *
+	 * @return the fingerprint
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private String getFingerprint() throws IOException {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			digest.update((languageCode + "\u0000" + stemmer.get().getClass().getName() + "\u0000"
+					+ System.getProperty("java.version")).getBytes(StandardCharsets.UTF_8));
+			for (File f : dictionaryFiles) {
+				digest.update(("\u0000" + f.getName() + "\u0000").getBytes(StandardCharsets.UTF_8));
+				digest.update(Files.readAllBytes(f.toPath()));
+			}
+			StringBuilder hex = new StringBuilder();
+			for (byte b : digest.digest()) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
 		}
+	}
 
+	/**
+	 * Maps a compiled dictionary file and uses its stem index and mwu automaton.
+	 *
+	 * @param compiledFile
+	 *            the compiled file
+	 * @param fingerprint
+	 *            the fingerprint of the current dictionaries
+	 * @return true, if the file exists and is up to date
+	 */
+	private boolean readCompiled(File compiledFile, String fingerprint) {
+		if (!compiledFile.isFile()) {
+			return false;
+		}
+		// the mapping remains valid after the channel is closed
+		try (FileChannel channel = FileChannel.open(compiledFile.toPath(), StandardOpenOption.READ)) {
+			if (!load(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), fingerprint)) {
+				logger.log(Level.INFO, "Compiled dictionary " + compiledFile + " is outdated");
+				return false;
+			}
+			return true;
+		} catch (IOException | RuntimeException e) {
+			logger.log(Level.WARNING, "Could not read compiled dictionary " + compiledFile + ": " + e);
+			return false;
+		}
+	}
+
+	/**
+	 * Uses the stem index and the mwu automaton of compiled dictionaries. Their
+	 * tables are views of the buffer, only the dictionary types are decoded.
+	 *
+	 * @param in
+	 *            the compiled dictionaries
+	 * @param fingerprint
+	 *            the fingerprint of the current dictionaries
+	 * @return true, if the compiled dictionaries are up to date
+	 */
+	private boolean load(ByteBuffer in, String fingerprint) {
+		if (in.getInt() != COMPILED_MAGIC || in.getInt() != COMPILED_VERSION
+				|| !BinaryFormat.readString(in).equals(fingerprint)) {
+			return false;
+		}
+		stemIndex = StringArrayMap.read(in);
+		mwuAutomaton = AhoCorasickAutomaton.read(in, String::intern);
 		return true;
 	}
 
+	/**
+	 * Writes compiled dictionaries to a compiled dictionary file. The file is
+	 * written to a temporary file first and then moved into place, so concurrent
+	 * runs never read a partial file. A failure is logged only, since the
+	 * dictionaries are compiled again by the next run.
+	 *
+	 * @param compiledFile
+	 *            the compiled file
+	 * @param compiled
+	 *            the compiled dictionaries
+	 */
+	private void writeCompiled(File compiledFile, byte[] compiled) {
+		File tmpFile = null;
+		try {
+			Files.createDirectories(compiledFile.getAbsoluteFile().getParentFile().toPath());
+			tmpFile = File.createTempFile(compiledFile.getName(), ".tmp", compiledFile.getAbsoluteFile().getParentFile());
+			Files.write(tmpFile.toPath(), compiled);
+			Files.move(tmpFile.toPath(), compiledFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			logger.log(Level.INFO, "Wrote compiled dictionary " + compiledFile);
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Could not write compiled dictionary " + compiledFile + ": " + e);
+			if (tmpFile != null) {
+				tmpFile.delete();
+			}
+		}
+	}
+
 	/**
 	 * Checks if a String is a multi word unit.
 	 *
@@ -264,12 +474,65 @@ public class DictionaryResource extends Resource_ImplBase {
 	}
 
 	/**
-	 * Gets the unigram dictionaries.
+	 * Gets the dictionary entries of all unigram dictionaries for a stem.
 	 *
-	 * @return the unigram dictionaries
+	 * @param stem
+	 *            the (lowercased) stem
+	 * @return the entries (null, if the stem is in no dictionary)
 	 */
-	public HashMap<String, Dictionary> getUnigramDictionaries() {
-		return unigramDictionaries;
+	public StemEntry[] getStemEntries(String stem) {
+		String[] entries = stemIndex.get(stem);
+		if (entries == null) {
+			return null;
+		}
+		StemEntry[] stemEntries = new StemEntry[entries.length / 2];
+		for (int i = 0; i < stemEntries.length; i++) {
+			stemEntries[i] = new StemEntry(entries[2 * i], entries[2 * i + 1]);
+		}
+		return stemEntries;
+	}
+
+	/**
+	 * An entry of a unigram dictionary in the merged stem index.
+	 */
+	public static class StemEntry {
+
+		/** The dictionary type. */
+		private final String dictType;
+
+		/** The base form. */
+		private final String baseForm;
+
+		/**
+		 * Instantiates a new stem entry.
+		 *
+		 * @param dictType
+		 *            the dictionary type
+		 * @param baseForm
+		 *            the base form
+		 */
+		public StemEntry(String dictType, String baseForm) {
+			this.dictType = dictType;
+			this.baseForm = baseForm;
+		}
+
+		/**
+		 * Gets the dictionary type.
+		 *
+		 * @return the dictionary type
+		 */
+		public String getDictType() {
+			return dictType;
+		}
+
+		/**
+		 * Gets the base form.
+		 *
+		 * @return the base form
+		 */
+		public String getBaseForm() {
+			return baseForm;
+		}
 	}
 
 	/**
@@ -290,42 +553,36 @@ public class DictionaryResource extends Resource_ImplBase {
 	}
 
 	/**
-	 * Stems an input token.
+	 * Stems an input token. Thread-safe without locking: each thread uses its own
+	 * stemmer, and stems of frequent tokens are taken from a shared cache.
 	 *
 	 * @param token
 	 *            the token
 	 * @return the string
 	 */
-	public synchronized String stem(String token) {
-		stemmer.setCurrent(token);
-		stemmer.stem();
-		return stemmer.getCurrent();
-	}
-
-	/**
-	 * The Class Dictionary.
-	 */
-	public class Dictionary extends HashMap<String, String> {
-
-		/** Serial ID. */
-		private static final long serialVersionUID = -4395683941205467020L;
-
-		/**
-		 * Instantiates a new dictionary.
-		 */
-		public Dictionary() {
-			super();
+	public String stem(String token) {
+		String stem = stemCache.get(token);
+		if (stem == null) {
+			SnowballStemmer threadStemmer = stemmer.get();
+			threadStemmer.setCurrent(token);
+			threadStemmer.stem();
+			stem = threadStemmer.getCurrent();
+			if (stemCache.size() >= stemCacheSize) {
+				// start over instead of tracking usage (frequent tokens are cached again soon)
+				stemCache.clear();
+			}
+			stemCache.put(token, stem);
 		}
-
+		return stem;
 	}
 
 	/**
-	 * Gets the mwu dictionaries.
+	 * Gets the automaton of multi word units of all dictionaries.
 	 *
-	 * @return the mwu dictionaries
+	 * @return the mwu automaton (values are dictionary types)
 	 */
-	public HashMap<String, Dictionary> getMwuDictionaries() {
-		return mwuDictionaries;
+	public AhoCorasickAutomaton<String> getMwuAutomaton() {
+		return mwuAutomaton;
 	}
 
 }
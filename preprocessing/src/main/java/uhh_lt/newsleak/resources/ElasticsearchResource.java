@@ -29,6 +29,7 @@ import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.common.xcontent.XContentType;
 
 import uhh_lt.newsleak.util.AtomicCounter;
+import uhh_lt.newsleak.util.ElasticsearchBulkSink;
 
 /**
  * Provides shared functionality and data for the @see
@@ -45,12 +46,24 @@ import uhh_lt.newsleak.util.AtomicCounter;
  * original document ids to document split ids. @See
  * uhh_lt.newsleak.preprocessing.InformationExtraction2Postgres duplicates the
  * metadata according to this record later on.
+ * 
+ * Documents are indexed asynchronously via a shared @see
+ * uhh_lt.newsleak.util.ElasticsearchBulkSink, which is closed (i.e. all
+ * pending requests are sent) by @see #closeBulkSink(). Indexes created by
+ * this resource are not refreshed while documents are written. The index is
+ * flushed and refreshed once, when the bulk sink is closed.
  */
 public class ElasticsearchResource extends Resource_ImplBase {
 
 	/** The logger. */
 	private Logger logger;
 
+	/** Maximum time in seconds to wait for pending bulk requests. */
+	private static final long BULK_CLOSE_TIMEOUT = 600;
+
+	/** The refresh interval of the index after bulk indexing. */
+	private static final String DEFAULT_REFRESH_INTERVAL = "1s";
+
 	/** The Constant DOCUMENT_TYPE. */
 	private static final String DOCUMENT_TYPE = "document";
 
@@ -103,9 +116,39 @@ public class ElasticsearchResource extends Resource_ImplBase {
 	@ConfigurationParameter(name = PARAM_METADATA_FILE)
 	private String mMetadata;
 
+	/** The Constant PARAM_BULK_ACTIONS. */
+	public static final String PARAM_BULK_ACTIONS = "bulkActions";
+
+	/** The bulk actions. */
+	@ConfigurationParameter(name = PARAM_BULK_ACTIONS, mandatory = false, defaultValue = "1000", description = "Maximum number of documents per bulk request.")
+	private int bulkActions;
+
+	/** The Constant PARAM_BULK_SIZE_MB. */
+	public static final String PARAM_BULK_SIZE_MB = "bulkSizeMb";
+
+	/** The bulk size mb. */
+	@ConfigurationParameter(name = PARAM_BULK_SIZE_MB, mandatory = false, defaultValue = "5", description = "Maximum payload size of a bulk request in MB.")
+	private int bulkSizeMb;
+
+	/** The Constant PARAM_BULK_CONCURRENT_REQUESTS. */
+	public static final String PARAM_BULK_CONCURRENT_REQUESTS = "bulkConcurrentRequests";
+
+	/** The bulk concurrent requests. */
+	@ConfigurationParameter(name = PARAM_BULK_CONCURRENT_REQUESTS, mandatory = false, defaultValue = "2", description = "Number of bulk requests in flight while new documents are collected.")
+	private int bulkConcurrentRequests;
+
 	/** The metadata file. */
 	private File metadataFile;
 
+	/** The bulk sink. */
+	private ElasticsearchBulkSink bulkSink;
+
+	/** True, if the bulk sink has been closed. */
+	private boolean bulkSinkClosed = false;
+
+	/** True, if the refresh of the index is disabled during bulk indexing. */
+	private boolean refreshDisabled = false;
+
 	/** The elasticsearch client. */
 	private TransportClient client;
 
@@ -166,6 +209,44 @@ public class ElasticsearchResource extends Resource_ImplBase {
 		return client;
 	}
 
+	/**
+	 * Gets the bulk sink for indexing documents. The sink is created on first
+	 * use, so resources which only assign document ids do not touch the index.
+	 *
+	 * @return the bulk sink (null, if it has been closed already)
+	 */
+	public synchronized ElasticsearchBulkSink getBulkSink() {
+		if (bulkSink == null && !bulkSinkClosed) {
+			bulkSink = new ElasticsearchBulkSink(client, bulkActions, bulkSizeMb, bulkConcurrentRequests, logger);
+		}
+		return bulkSink;
+	}
+
+	/**
+	 * Sends all pending documents of the bulk sink and makes them visible for
+	 * search. May be called repeatedly, e.g. by each writer instance at the end
+	 * of the collection.
+	 *
+	 * @throws InterruptedException
+	 *             the interrupted exception
+	 */
+	public synchronized void closeBulkSink() throws InterruptedException {
+		if (bulkSink == null) {
+			return;
+		}
+		bulkSink.close(BULK_CLOSE_TIMEOUT);
+		bulkSink = null;
+		bulkSinkClosed = true;
+		if (refreshDisabled) {
+			client.admin().indices().prepareUpdateSettings(mIndex)
+					.setSettings(Settings.builder().put("index.refresh_interval", DEFAULT_REFRESH_INTERVAL)).get();
+			refreshDisabled = false;
+		}
+		client.admin().indices().prepareFlush(mIndex).get();
+		client.admin().indices().prepareRefresh(mIndex).get();
+		logger.log(Level.INFO, "Index " + mIndex + " flushed and refreshed");
+	}
+
 	/**
 	 * Gets the elasticsearch index.
 	 *
@@ -193,6 +274,11 @@ public class ElasticsearchResource extends Resource_ImplBase {
 	@Override
 	public void destroy() {
 		super.destroy();
+		try {
+			closeBulkSink();
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
 		client.close();
 	}
 
@@ -229,7 +315,11 @@ public class ElasticsearchResource extends Resource_ImplBase {
 
 		CreateIndexRequestBuilder createIndexRequestBuilder = client.admin().indices().prepareCreate(mIndex);
 		createIndexRequestBuilder.addMapping(DOCUMENT_TYPE, builder);
+		// no refresh during bulk indexing (documents are not searched before the sink is closed)
+		createIndexRequestBuilder.setSettings(Settings.builder().put("index.refresh_interval", "-1"));
 		createIndexRequestBuilder.execute().actionGet();
+		refreshDisabled = true;
+		logger.log(Level.FINE, "Refresh of index " + mIndex + " disabled during bulk indexing");
 
 	}
 
@@ -2,7 +2,11 @@ package uhh_lt.newsleak.resources;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.uima.fit.component.Resource_ImplBase;
 import org.apache.uima.fit.descriptor.ConfigurationParameter;
@@ -13,15 +17,31 @@ import org.apache.uima.util.Logger;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 
 import io.searchbox.client.JestClient;
 import io.searchbox.client.JestClientFactory;
+import io.searchbox.client.JestResult;
 import io.searchbox.client.config.HttpClientConfig;
+import io.searchbox.core.ClearScroll;
+import io.searchbox.core.MultiGet;
+import io.searchbox.core.SearchScroll;
+import uhh_lt.newsleak.util.DocumentCache;
+import uhh_lt.newsleak.util.PrefetchIterator;
 
 /**
  * Provides shared functionality and data for the @see
  * uhh_lt.newsleak.reader.HooverElasticsearchReader. This resource connects
  * directly to Hoover's elasticsearch index via a Jest client.
+ * 
+ * The client keeps a pool of persistent HTTP connections. Document sources
+ * are retrieved in multi-get batches, which are fetched ahead by a background
+ * thread while the reader processes the current batch. The ids of the
+ * documents are scrolled by another thread, which keeps one scroll page ahead
+ * of the multi-get batches. The next scroll page is requested once a page of
+ * ids has been retrieved, so the scroll keep alive time must cover the
+ * processing of one page of documents.
  */
 public class HooverResource extends Resource_ImplBase {
 
@@ -66,12 +86,52 @@ public class HooverResource extends Resource_ImplBase {
 	@ConfigurationParameter(name = PARAM_SEARCHURL)
 	private String mSearchUrl;
 
+	/** The Constant PARAM_MAX_CONNECTIONS. */
+	public static final String PARAM_MAX_CONNECTIONS = "maxConnections";
+
+	/** The max connections. */
+	@ConfigurationParameter(name = PARAM_MAX_CONNECTIONS, mandatory = false, defaultValue = "4", description = "Size of the HTTP connection pool.")
+	private Integer maxConnections;
+
+	/** The Constant PARAM_MGET_BATCH_SIZE. */
+	public static final String PARAM_MGET_BATCH_SIZE = "mgetBatchSize";
+
+	/** The mget batch size. */
+	@ConfigurationParameter(name = PARAM_MGET_BATCH_SIZE, mandatory = false, defaultValue = "100", description = "Number of documents per multi-get request.")
+	private Integer mgetBatchSize;
+
+	/** The Constant PARAM_PREFETCH_BATCHES. */
+	public static final String PARAM_PREFETCH_BATCHES = "prefetchBatches";
+
+	/** The prefetch batches. */
+	@ConfigurationParameter(name = PARAM_PREFETCH_BATCHES, mandatory = false, defaultValue = "4", description = "Maximum number of multi-get batches fetched ahead.")
+	private Integer prefetchBatches;
+
+	/** The Constant PARAM_SCROLL_KEEP_ALIVE. */
+	public static final String PARAM_SCROLL_KEEP_ALIVE = "scrollKeepAliveMinutes";
+
+	/** The scroll keep alive minutes. */
+	@ConfigurationParameter(name = PARAM_SCROLL_KEEP_ALIVE, mandatory = false, defaultValue = "30", description = "Minutes the scroll is kept alive between two pages (must cover the processing of one page of documents).")
+	private Integer scrollKeepAliveMinutes;
+
+	/** The Constant SCROLL_PREFETCH_PAGES. */
+	private static final int SCROLL_PREFETCH_PAGES = 1;
+
+	/** The Constant CONNECTION_IDLE_TIME. */
+	private static final long CONNECTION_IDLE_TIME = 60;
+
+	/** The Constant READ_TIMEOUT (ms). */
+	private static final int READ_TIMEOUT = 60000;
+
 	/** The hoover search relative base path. */
 	private String indexPath;
 
 	/** The client. */
 	private JestClient client;
 
+	/** The JSON parser (for cached documents). */
+	private JsonParser jsonParser = new JsonParser();
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -89,7 +149,9 @@ public class HooverResource extends Resource_ImplBase {
 
 		// Construct a new Jest client according to configuration via factory
 		JestClientFactory factory = new JestClientFactory();
-		factory.setHttpClientConfig(new HttpClientConfig.Builder(mHost + ":" + mPort).multiThreaded(false).build());
+		factory.setHttpClientConfig(new HttpClientConfig.Builder(mHost + ":" + mPort).multiThreaded(true)
+				.defaultMaxTotalConnectionPerRoute(maxConnections).maxTotalConnection(maxConnections)
+				.maxConnectionIdleTime(CONNECTION_IDLE_TIME, TimeUnit.SECONDS).readTimeout(READ_TIMEOUT).build());
 		client = factory.getObject();
 
 		indexPath = mIndex + "/";
@@ -97,6 +159,15 @@ public class HooverResource extends Resource_ImplBase {
 		return true;
 	}
 
+	/**
+	 * Gets the scroll keep alive time (for the scroll parameter of a search).
+	 *
+	 * @return the scroll keep alive time
+	 */
+	public String getScrollTime() {
+		return scrollKeepAliveMinutes + "m";
+	}
+
 	/**
 	 * Gets the elasticsearch client.
 	 *
@@ -167,4 +238,202 @@ public class HooverResource extends Resource_ImplBase {
 		}
 		return idList;
 	}
+
+	/**
+	 * Retrieves documents by id in a single multi-get request.
+	 *
+	 * @param ids
+	 *            the document ids
+	 * @return the documents in the order of the ids (with fields _id, found and
+	 *         _source)
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public List<JsonObject> getDocuments(List<String> ids) throws IOException {
+		MultiGet multiGet = new MultiGet.Builder.ById(mIndex, HOOVER_DOCUMENT_TYPE).addId(ids).build();
+		JestResult result = client.execute(multiGet);
+		if (!result.isSucceeded()) {
+			throw new IOException("Multi-get request failed: " + result.getErrorMessage());
+		}
+		List<JsonObject> documents = new ArrayList<JsonObject>();
+		for (JsonElement doc : result.getJsonObject().getAsJsonArray("docs")) {
+			documents.add(doc.getAsJsonObject());
+		}
+		return documents;
+	}
+
+	/**
+	 * Starts retrieving documents in multi-get batches ahead of processing. The
+	 * remaining pages of the scroll request are fetched by a background thread
+	 * (only ids and versions are kept), one page ahead of the ids the documents
+	 * are retrieved for. So processing starts after the first page, and memory
+	 * does not grow with the size of the collection.
+	 * 
+	 * If a document cache is given, documents are looked up in the cache by id
+	 * and version first (the scroll request has to return versions), and only
+	 * missing documents are retrieved (and added to the cache).
+	 *
+	 * @param firstPage
+	 *            the first page of a scroll request (ids only)
+	 * @param maxDocuments
+	 *            the maximum number of documents to retrieve
+	 * @param documentCache
+	 *            the document cache (or null)
+	 * @return the documents in the order of the scroll (with fields _id, found
+	 *         and _source)
+	 */
+	public PrefetchIterator<JsonObject> prefetchDocuments(JestResult firstPage, int maxDocuments,
+			DocumentCache documentCache) {
+		PrefetchIterator<JsonObject> scrolledHits = scrollIds(firstPage, maxDocuments);
+		return new PrefetchIterator<JsonObject>(new PrefetchIterator.BatchSource<JsonObject>() {
+
+			@Override
+			public List<JsonObject> nextBatch() throws Exception {
+				List<JsonObject> batchHits = new ArrayList<JsonObject>();
+				while (batchHits.size() < mgetBatchSize && scrolledHits.hasNext()) {
+					batchHits.add(scrolledHits.next());
+				}
+				if (batchHits.isEmpty()) {
+					return null;
+				}
+
+				// look up cached documents, retrieve the others
+				JsonObject[] batch = new JsonObject[batchHits.size()];
+				List<String> missingIds = new ArrayList<String>();
+				for (int i = 0; i < batch.length; i++) {
+					String stamp = getVersion(batchHits.get(i));
+					if (documentCache != null && stamp != null) {
+						String cached = documentCache.getString(getId(batchHits.get(i)), stamp);
+						if (cached != null) {
+							try {
+								batch[i] = jsonParser.parse(cached).getAsJsonObject();
+								continue;
+							} catch (RuntimeException e) {
+								documentCache.invalidate(getId(batchHits.get(i)), stamp, e.getMessage());
+							}
+						}
+					}
+					missingIds.add(getId(batchHits.get(i)));
+				}
+				if (!missingIds.isEmpty()) {
+					logger.log(Level.FINE, "Retrieving " + missingIds.size() + " documents from hoover");
+					Iterator<JsonObject> retrievedDocuments = getDocuments(missingIds).iterator();
+					for (int i = 0; i < batch.length; i++) {
+						if (batch[i] == null) {
+							batch[i] = retrievedDocuments.next();
+							String stamp = getVersion(batchHits.get(i));
+							if (documentCache != null && stamp != null && batch[i].has("_source")) {
+								documentCache.putString(getId(batchHits.get(i)), stamp, batch[i].toString());
+							}
+						}
+					}
+				}
+				return Arrays.asList(batch);
+			}
+
+			@Override
+			public void close() {
+				scrolledHits.close();
+			}
+		}, prefetchBatches, "hoover-mget");
+	}
+
+	/**
+	 * Scrolls over the remaining pages of a scroll request by a background
+	 * thread, which keeps a bounded number of pages ahead of the consumer.
+	 *
+	 * @param firstPage
+	 *            the first page of the scroll request
+	 * @param maxDocuments
+	 *            the maximum number of hits
+	 * @return the hits (with fields _id and _version only)
+	 */
+	private PrefetchIterator<JsonObject> scrollIds(JestResult firstPage, int maxDocuments) {
+		return new PrefetchIterator<JsonObject>(new PrefetchIterator.BatchSource<JsonObject>() {
+
+			/** The current scroll page (null, after the first page has been returned). */
+			private JestResult page = firstPage;
+
+			/** The scroll id. */
+			private String scrollId = firstPage.getJsonObject().get("_scroll_id").getAsString();
+
+			/** The number of hits scrolled so far. */
+			private int scrolled = 0;
+
+			@Override
+			public List<JsonObject> nextBatch() throws Exception {
+				if (scrolled >= maxDocuments) {
+					return null;
+				}
+				if (page == null) {
+					page = client.execute(new SearchScroll.Builder(scrollId, getScrollTime()).build());
+					if (!page.isSucceeded()) {
+						throw new IOException("Scroll request failed: " + page.getErrorMessage());
+					}
+					scrollId = page.getJsonObject().getAsJsonPrimitive("_scroll_id").getAsString();
+				}
+				List<JsonObject> hits = new ArrayList<JsonObject>();
+				for (JsonElement hit : page.getJsonObject().getAsJsonObject("hits").getAsJsonArray("hits")) {
+					if (scrolled < maxDocuments) {
+						// keep only what is needed to retrieve (or look up) the document
+						JsonObject idHit = new JsonObject();
+						idHit.add("_id", hit.getAsJsonObject().get("_id"));
+						idHit.add("_version", hit.getAsJsonObject().get("_version"));
+						hits.add(idHit);
+						scrolled++;
+					}
+				}
+				page = null;
+				return hits;
+			}
+
+			@Override
+			public void close() {
+				try {
+					client.execute(new ClearScroll.Builder().addScrollId(scrollId).build());
+				} catch (IOException e) {
+					logger.log(Level.WARNING, "Could not clear scroll: " + e.getMessage());
+				}
+			}
+		}, SCROLL_PREFETCH_PAGES, "hoover-scroll");
+	}
+
+	/**
+	 * Gets the id of a hit.
+	 *
+	 * @param hit
+	 *            the hit
+	 * @return the id
+	 */
+	private String getId(JsonObject hit) {
+		return hit.get("_id").getAsString();
+	}
+
+	/**
+	 * Gets the version of a hit.
+	 *
+	 * @param hit
+	 *            the hit
+	 * @return the version (null, if the search did not request versions)
+	 */
+	private String getVersion(JsonObject hit) {
+		JsonElement version = hit.get("_version");
+		return version == null || version.isJsonNull() ? null : version.getAsString();
+	}
+
+	/**
+	 * Gets the source of a retrieved document.
+	 *
+	 * @param document
+	 *            the document (as returned by a multi-get request)
+	 * @return the source (empty, if the document has not been found)
+	 */
+	public JsonObject getSource(JsonObject document) {
+		JsonElement source = document.get("_source");
+		if (source == null || source.isJsonNull()) {
+			logger.log(Level.SEVERE, "Document " + document.get("_id") + " not found in hoover index");
+			return new JsonObject();
+		}
+		return source.getAsJsonObject();
+	}
 }
@@ -0,0 +1,284 @@
+package uhh_lt.newsleak.resources;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable record of everything the @see
+ * uhh_lt.newsleak.writer.PostgresDbWriter extracted from a single document
+ * (fulltext, entities with their offsets, time expressions and key terms).
+ * Records are handed from the UIMA analysis threads to a @see
+ * uhh_lt.newsleak.resources.PostgresSession, either directly or via the write
+ * queue of the @see uhh_lt.newsleak.resources.PostgresResource. Records do not
+ * reference the CAS, so the CAS can be reused as soon as the record is built.
+ */
+public final class PostgresDocumentRecord {
+
+	/** The document id. */
+	private final Integer docId;
+
+	/** The document fulltext. */
+	private final String content;
+
+	/** The document date. */
+	private final String created;
+
+	/** The number of sentences. */
+	private final int sentenceCount;
+
+	/** The entities. */
+	private final List<EntityRecord> entities;
+
+	/** The time expressions. */
+	private final List<EventtimeRecord> eventtimes;
+
+	/** The key terms. */
+	private final List<KeytermRecord> keyterms;
+
+	/**
+	 * Instantiates a new document record.
+	 *
+	 * @param docId
+	 *            the doc id
+	 * @param content
+	 *            the content
+	 * @param created
+	 *            the created
+	 * @param sentenceCount
+	 *            the number of sentences
+	 * @param entities
+	 *            the entities
+	 * @param eventtimes
+	 *            the eventtimes
+	 * @param keyterms
+	 *            the keyterms
+	 */
+	public PostgresDocumentRecord(Integer docId, String content, String created, int sentenceCount,
+			List<EntityRecord> entities, List<EventtimeRecord> eventtimes, List<KeytermRecord> keyterms) {
+		this.docId = docId;
+		this.content = content;
+		this.created = created;
+		this.sentenceCount = sentenceCount;
+		this.entities = Collections.unmodifiableList(new ArrayList<EntityRecord>(entities));
+		this.eventtimes = Collections.unmodifiableList(new ArrayList<EventtimeRecord>(eventtimes));
+		this.keyterms = Collections.unmodifiableList(new ArrayList<KeytermRecord>(keyterms));
+	}
+
+	/**
+	 * Gets the doc id.
+	 *
+	 * @return the doc id
+	 */
+	public Integer getDocId() {
+		return docId;
+	}
+
+	/**
+	 * Gets the content.
+	 *
+	 * @return the content
+	 */
+	public String getContent() {
+		return content;
+	}
+
+	/**
+	 * Gets the created.
+	 *
+	 * @return the created
+	 */
+	public String getCreated() {
+		return created;
+	}
+
+	/**
+	 * Gets the number of sentences.
+	 *
+	 * @return the sentence count
+	 */
+	public int getSentenceCount() {
+		return sentenceCount;
+	}
+
+	/**
+	 * Gets the entities.
+	 *
+	 * @return the entities
+	 */
+	public List<EntityRecord> getEntities() {
+		return entities;
+	}
+
+	/**
+	 * Gets the eventtimes.
+	 *
+	 * @return the eventtimes
+	 */
+	public List<EventtimeRecord> getEventtimes() {
+		return eventtimes;
+	}
+
+	/**
+	 * Gets the keyterms.
+	 *
+	 * @return the keyterms
+	 */
+	public List<KeytermRecord> getKeyterms() {
+		return keyterms;
+	}
+
+	/**
+	 * An entity of a document with the offsets of all its mentions.
+	 */
+	public static final class EntityRecord {
+
+		/** The name. */
+		public final String name;
+
+		/** The type. */
+		public final String type;
+
+		/** The begin offsets of the mentions. */
+		private final int[] begins;
+
+		/** The end offsets of the mentions. */
+		private final int[] ends;
+
+		/** The indexes of the sentences of the mentions (-1, if unknown). */
+		private final int[] sentences;
+
+		/**
+		 * Instantiates a new entity record.
+		 *
+		 * @param name
+		 *            the name
+		 * @param type
+		 *            the type
+		 * @param begins
+		 *            the begin offsets of the mentions
+		 * @param ends
+		 *            the end offsets of the mentions
+		 * @param sentences
+		 *            the indexes of the sentences of the mentions
+		 */
+		public EntityRecord(String name, String type, int[] begins, int[] ends, int[] sentences) {
+			this.name = name;
+			this.type = type;
+			this.begins = begins.clone();
+			this.ends = ends.clone();
+			this.sentences = sentences.clone();
+		}
+
+		/**
+		 * Gets the number of mentions in the document.
+		 *
+		 * @return the frequency
+		 */
+		public int getFrequency() {
+			return begins.length;
+		}
+
+		/**
+		 * Gets the begin offset of a mention.
+		 *
+		 * @param i
+		 *            the mention index
+		 * @return the begin offset
+		 */
+		public int getBegin(int i) {
+			return begins[i];
+		}
+
+		/**
+		 * Gets the end offset of a mention.
+		 *
+		 * @param i
+		 *            the mention index
+		 * @return the end offset
+		 */
+		public int getEnd(int i) {
+			return ends[i];
+		}
+
+		/**
+		 * Gets the index of the sentence of a mention.
+		 *
+		 * @param i
+		 *            the mention index
+		 * @return the sentence index (-1, if unknown)
+		 */
+		public int getSentence(int i) {
+			return sentences[i];
+		}
+	}
+
+	/**
+	 * A time expression of a document.
+	 */
+	public static final class EventtimeRecord {
+
+		/** The begin offset. */
+		public final int beginoffset;
+
+		/** The end offset. */
+		public final int endoffset;
+
+		/** The timex. */
+		public final String timex;
+
+		/** The type. */
+		public final String type;
+
+		/** The timex value. */
+		public final String timexvalue;
+
+		/**
+		 * Instantiates a new eventtime record.
+		 *
+		 * @param beginoffset
+		 *            the beginoffset
+		 * @param endoffset
+		 *            the endoffset
+		 * @param timex
+		 *            the timex
+		 * @param type
+		 *            the type
+		 * @param timexvalue
+		 *            the timexvalue
+		 */
+		public EventtimeRecord(int beginoffset, int endoffset, String timex, String type, String timexvalue) {
+			this.beginoffset = beginoffset;
+			this.endoffset = endoffset;
+			this.timex = timex;
+			this.type = type;
+			this.timexvalue = timexvalue;
+		}
+	}
+
+	/**
+	 * A key term of a document.
+	 */
+	public static final class KeytermRecord {
+
+		/** The term. */
+		public final String term;
+
+		/** The frequency. */
+		public final int frequency;
+
+		/**
+		 * Instantiates a new keyterm record.
+		 *
+		 * @param term
+		 *            the term
+		 * @param frequency
+		 *            the frequency
+		 */
+		public KeytermRecord(String term, int frequency) {
+			this.term = term;
+			this.frequency = frequency;
+		}
+	}
+
+}
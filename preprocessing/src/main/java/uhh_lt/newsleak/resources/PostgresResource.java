@@ -3,13 +3,17 @@ package uhh_lt.newsleak.resources;
 import java.io.File;
 import java.io.IOException;
 import java.sql.Connection;
-import java.sql.Date;
 import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.uima.fit.component.Resource_ImplBase;
@@ -19,11 +23,41 @@ import org.apache.uima.resource.ResourceSpecifier;
 import org.apache.uima.util.Level;
 import org.apache.uima.util.Logger;
 
+import uhh_lt.newsleak.util.CommitPolicy;
+import uhh_lt.newsleak.util.EntityIdDictionary;
+
 /**
  * Provides shared functionality and data for the @see
- * uhh_lt.newsleak.writer.PostgresDbWriter. A shared client is used to
- * insert/update entries for each document as queried by the writer. For this,
- * the class uses prepared insert and upsert statements.
+ * uhh_lt.newsleak.writer.PostgresDbWriter. The resource creates (or connects
+ * to) the newsleak database and hands out a @see
+ * uhh_lt.newsleak.resources.PostgresSession to each writer instance. Each
+ * session owns its own db connection and prepared statements, so writers in
+ * different CPE processing threads insert and commit independently.
+ * 
+ * Entity ids are assigned by an in-memory @see
+ * uhh_lt.newsleak.util.EntityIdDictionary which aggregates entity frequencies.
+ * New entities and frequency updates are written in bulk by the resource
+ * before any session commits. This is the only point where sessions
+ * coordinate.
+ * 
+ * Optionally, rows of the document, entityoffset, eventtime and terms tables
+ * can be written in a bulk load mode (PARAM_COPY_MODE). In this mode, rows are
+ * collected in bounded in-memory buffers which are streamed to the database
+ * via the postgres COPY protocol once they exceed a certain size or have not
+ * been flushed for a certain time (and always before a commit). New databases
+ * can also be created with UNLOGGED tables (PARAM_UNLOGGED_TABLES) which are
+ * switched to logged once all indexes have been built.
+ * 
+ * With PARAM_WRITER_THREADS &gt; 0, writers only build a @see
+ * uhh_lt.newsleak.resources.PostgresDocumentRecord per document and submit it
+ * to a bounded queue. Dedicated writer threads (each with its own session)
+ * drain the queue, so the UIMA processing threads do not wait for the db
+ * unless the queue is full.
+ * 
+ * Sessions commit whenever their pending transaction exceeds one of the
+ * budgets of a shared @see uhh_lt.newsleak.util.CommitPolicy (documents, rows,
+ * bytes or time since the last commit). Observed commit latencies are logged
+ * once all documents are written and can be used to tune the budgets.
  */
 public class PostgresResource extends Resource_ImplBase {
 
@@ -39,6 +73,9 @@ public class PostgresResource extends Resource_ImplBase {
 	/** The Constant TABLE_ENTITY. */
 	public static final String TABLE_ENTITY = "entity";
 
+	/** The Constant TABLE_DOCUMENTENTITY. */
+	public static final String TABLE_DOCUMENTENTITY = "documententity";
+
 	/** The Constant TABLE_ENTITYOFFSET. */
 	public static final String TABLE_ENTITYOFFSET = "entityoffset";
 
@@ -97,32 +134,115 @@ public class PostgresResource extends Resource_ImplBase {
 	@ConfigurationParameter(name = PARAM_CREATE_DB, mandatory = false, defaultValue = "false", description = "If true, an new db will be created (existing db will be removed).")
 	private boolean createDb;
 
-	/** The db connection. */
+	/** The Constant PARAM_COPY_MODE. */
+	public final static String PARAM_COPY_MODE = "copyMode";
+
+	/** The copy mode. */
+	@ConfigurationParameter(name = PARAM_COPY_MODE, mandatory = false, defaultValue = "false", description = "If true, rows are bulk loaded via the postgres COPY protocol instead of JDBC batches.")
+	private boolean copyMode;
+
+	/** The Constant PARAM_COPY_BUFFER_SIZE. */
+	public final static String PARAM_COPY_BUFFER_SIZE = "copyBufferSize";
+
+	/** The copy buffer size. */
+	@ConfigurationParameter(name = PARAM_COPY_BUFFER_SIZE, mandatory = false, defaultValue = "8388608", description = "Maximum number of buffered characters per table before rows are flushed in copy mode.")
+	private int copyBufferSize;
+
+	/** The Constant PARAM_COPY_FLUSH_INTERVAL. */
+	public final static String PARAM_COPY_FLUSH_INTERVAL = "copyFlushInterval";
+
+	/** The copy flush interval. */
+	@ConfigurationParameter(name = PARAM_COPY_FLUSH_INTERVAL, mandatory = false, defaultValue = "10000", description = "Maximum time in milliseconds rows are buffered before they are flushed in copy mode.")
+	private int copyFlushInterval;
+
+	/** The Constant PARAM_UNLOGGED_TABLES. */
+	public final static String PARAM_UNLOGGED_TABLES = "unloggedTables";
+
+	/** The unlogged tables. */
+	@ConfigurationParameter(name = PARAM_UNLOGGED_TABLES, mandatory = false, defaultValue = "false", description = "If true, tables of a new db are created UNLOGGED (bulk load mode). They need to be switched to logged after loading.")
+	private boolean unloggedTables;
+
+	/** The Constant PARAM_WRITER_THREADS. */
+	public final static String PARAM_WRITER_THREADS = "writerThreads";
+
+	/** The writer threads. */
+	@ConfigurationParameter(name = PARAM_WRITER_THREADS, mandatory = false, defaultValue = "0", description = "Number of dedicated threads writing document records to the db. If 0, records are written in the UIMA processing threads.")
+	private int writerThreadCount;
+
+	/** The Constant PARAM_WRITE_QUEUE_SIZE. */
+	public final static String PARAM_WRITE_QUEUE_SIZE = "writeQueueSize";
+
+	/** The write queue size. */
+	@ConfigurationParameter(name = PARAM_WRITE_QUEUE_SIZE, mandatory = false, defaultValue = "1000", description = "Maximum number of document records waiting for the writer threads. Processing threads block while the queue is full.")
+	private int writeQueueSize;
+
+	/** The Constant PARAM_COUNT_COOCCURRENCES. */
+	public final static String PARAM_COUNT_COOCCURRENCES = "countCooccurrences";
+
+	/** The count cooccurrences. */
+	@ConfigurationParameter(name = PARAM_COUNT_COOCCURRENCES, mandatory = false, defaultValue = "false", description = "If true, document and sentence level entity co-occurrences are counted in the co-occurrence service.")
+	private boolean countCooccurrences;
+
+	/** The Constant PARAM_COMMIT_DOCUMENTS. */
+	public final static String PARAM_COMMIT_DOCUMENTS = "commitDocuments";
+
+	/** The commit documents. */
+	@ConfigurationParameter(name = PARAM_COMMIT_DOCUMENTS, mandatory = false, defaultValue = "100", description = "Maximum number of documents per transaction (0 = unlimited).")
+	private int commitDocuments;
+
+	/** The Constant PARAM_COMMIT_ROWS. */
+	public final static String PARAM_COMMIT_ROWS = "commitRows";
+
+	/** The commit rows. */
+	@ConfigurationParameter(name = PARAM_COMMIT_ROWS, mandatory = false, defaultValue = "100000", description = "Maximum number of rows per transaction (0 = unlimited).")
+	private int commitRows;
+
+	/** The Constant PARAM_COMMIT_BYTES. */
+	public final static String PARAM_COMMIT_BYTES = "commitBytes";
+
+	/** The commit bytes. */
+	@ConfigurationParameter(name = PARAM_COMMIT_BYTES, mandatory = false, defaultValue = "33554432", description = "Maximum (estimated) number of bytes per transaction (0 = unlimited).")
+	private int commitBytes;
+
+	/** The Constant PARAM_COMMIT_INTERVAL. */
+	public final static String PARAM_COMMIT_INTERVAL = "commitInterval";
+
+	/** The commit interval. */
+	@ConfigurationParameter(name = PARAM_COMMIT_INTERVAL, mandatory = false, defaultValue = "30000", description = "Maximum time in milliseconds between two commits of a writer (0 = unlimited).")
+	private int commitInterval;
+
+	/** The db connection used for schema creation and entity updates. */
 	private Connection dbConnection;
 
 	/** The db statement. */
 	private Statement dbStatement;
 
-	/** The prepared statement document. */
-	private PreparedStatement preparedStatementDocument;
+	/** The entity id dictionary. */
+	private EntityIdDictionary entityIdDictionary;
 
-	/** The prepared statement entity upsert. */
-	private PreparedStatement preparedStatementEntityUpsert;
+	/** The number of documents inserted by all sessions. */
+	private AtomicInteger documentCounter = new AtomicInteger(0);
 
-	/** The prepared statement entityoffset. */
-	private PreparedStatement preparedStatementEntityoffset;
+	/** The commit policy shared by all sessions. */
+	private CommitPolicy commitPolicy;
 
-	/** The prepared statement eventtime. */
-	private PreparedStatement preparedStatementEventtime;
+	/** Marks a flush request in the write queue. */
+	private static final PostgresDocumentRecord FLUSH_MARKER = new PostgresDocumentRecord(null, null, null, 0,
+			new ArrayList<PostgresDocumentRecord.EntityRecord>(),
+			new ArrayList<PostgresDocumentRecord.EventtimeRecord>(),
+			new ArrayList<PostgresDocumentRecord.KeytermRecord>());
 
-	/** The prepared statement keyterms. */
-	private PreparedStatement preparedStatementKeyterms;
+	/** The write queue (write-behind mode only). */
+	private BlockingQueue<PostgresDocumentRecord> writeQueue;
 
-	/** The document counter. */
-	private int documentCounter = 0;
+	/** The writer threads (write-behind mode only). */
+	private List<Thread> writerThreads;
 
-	/** The internal batch size. */
-	private int INTERNAL_BATCH_SIZE = 100;
+	/** The sessions of the writer threads (write-behind mode only). */
+	private List<PostgresSession> writerSessions;
+
+	/** The barrier of the current flush request. */
+	private volatile CyclicBarrier flushBarrier;
 
 	/*
 	 * (non-Javadoc)
@@ -138,6 +258,8 @@ public class PostgresResource extends Resource_ImplBase {
 			return false;
 		}
 		this.logger = this.getLogger();
+		commitPolicy = new CommitPolicy(commitDocuments, commitRows, commitBytes, commitInterval);
+		logger.log(Level.INFO, "Commit policy: " + commitPolicy);
 
 		// init db
 		try {
@@ -147,16 +269,154 @@ public class PostgresResource extends Resource_ImplBase {
 			} else {
 				initDb(dbUrl, dbName, dbUser, dbPass);
 			}
+			// entities from earlier runs (e.g. other languages) keep their ids
+			entityIdDictionary = new EntityIdDictionary(TABLE_ENTITY);
+			int nEntities = entityIdDictionary.load(dbConnection);
+			logger.log(Level.INFO, nEntities + " entities loaded into entity dictionary");
 		} catch (Exception e) {
 			e.printStackTrace();
 			System.exit(1);
 		}
 
-		prepareStatements();
+		if (writerThreadCount > 0) {
+			startWriterThreads();
+		}
+
+		if (copyMode) {
+			logger.log(Level.INFO, "Using COPY bulk load mode (buffer size " + copyBufferSize + ", flush interval "
+					+ copyFlushInterval + " ms)");
+		}
 
 		return true;
 	}
 
+	/**
+	 * Opens a new session with its own db connection. Each writer instance
+	 * should use its own session.
+	 *
+	 * @return the postgres session
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	public PostgresSession createSession() throws SQLException {
+		Connection connection = DriverManager.getConnection("jdbc:postgresql://" + dbUrl + "/" + dbName, dbUser,
+				dbPass);
+		connection.setAutoCommit(false);
+		return new PostgresSession(this, connection, copyMode, copyBufferSize, copyFlushInterval, commitPolicy);
+	}
+
+	/**
+	 * Starts the writer threads of the write-behind mode. Each thread drains the
+	 * write queue into its own session.
+	 *
+	 * @throws ResourceInitializationException
+	 *             if a session could not be opened
+	 */
+	private void startWriterThreads() throws ResourceInitializationException {
+		writeQueue = new ArrayBlockingQueue<PostgresDocumentRecord>(writeQueueSize);
+		writerThreads = new ArrayList<Thread>();
+		writerSessions = new ArrayList<PostgresSession>();
+		for (int i = 0; i < writerThreadCount; i++) {
+			PostgresSession session;
+			try {
+				session = createSession();
+			} catch (SQLException e) {
+				throw new ResourceInitializationException(e);
+			}
+			writerSessions.add(session);
+			Thread thread = new Thread(() -> drainWriteQueue(session), "postgres-writer-" + i);
+			thread.setDaemon(true);
+			writerThreads.add(thread);
+			thread.start();
+		}
+		logger.log(Level.INFO, "Started " + writerThreadCount + " postgres writer threads (queue size "
+				+ writeQueueSize + ")");
+	}
+
+	/**
+	 * Loop of a writer thread: takes document records from the write queue and
+	 * writes them to the session. On a flush request, the session is committed.
+	 *
+	 * @param session
+	 *            the session of the writer thread
+	 */
+	private void drainWriteQueue(PostgresSession session) {
+		try {
+			while (true) {
+				PostgresDocumentRecord record = writeQueue.take();
+				if (record == FLUSH_MARKER) {
+					session.commit();
+					// wait for the other writer threads, so each one takes exactly one marker
+					flushBarrier.await();
+				} else if (session.write(record)) {
+					logger.log(Level.INFO, session.getDocumentCounter() + " documents committed by "
+							+ Thread.currentThread().getName() + " (total: " + getDocumentCounter() + ", queued: "
+							+ writeQueue.size() + ")");
+				}
+			}
+		} catch (InterruptedException e) {
+			// resource destroyed
+		} catch (Exception e) {
+			logger.log(Level.SEVERE, "Postgres writer thread failed");
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Checks if document records are written by dedicated writer threads.
+	 *
+	 * @return true, if in write-behind mode
+	 */
+	public boolean isWriteBehind() {
+		return writerThreads != null;
+	}
+
+	/**
+	 * Hands a document record to the writer threads. Blocks while the write
+	 * queue is full, which throttles the UIMA processing threads to the speed of
+	 * the db.
+	 *
+	 * @param record
+	 *            the document record
+	 * @throws InterruptedException
+	 *             the interrupted exception
+	 */
+	public void submit(PostgresDocumentRecord record) throws InterruptedException {
+		writeQueue.put(record);
+	}
+
+	/**
+	 * Waits until all document records submitted so far are written and
+	 * committed by the writer threads. May be called repeatedly, e.g. by each
+	 * writer instance at the end of the collection.
+	 *
+	 * @throws InterruptedException
+	 *             the interrupted exception
+	 * @throws BrokenBarrierException
+	 *             if a writer thread failed during the flush
+	 */
+	public synchronized void finish() throws InterruptedException, BrokenBarrierException {
+		if (!isWriteBehind()) {
+			return;
+		}
+		flushBarrier = new CyclicBarrier(writerThreads.size() + 1);
+		for (int i = 0; i < writerThreads.size(); i++) {
+			writeQueue.put(FLUSH_MARKER);
+		}
+		flushBarrier.await();
+		logger.log(Level.INFO, "Write queue flushed (total: " + getDocumentCounter() + " documents)");
+	}
+
+	/**
+	 * Gets the commit policy shared by all sessions.
+	 *
+	 * @return the commit policy
+	 */
+	public CommitPolicy getCommitPolicy() {
+		return commitPolicy;
+	}
+
 	/**
 	 * Gets the db statement.
 	 *
@@ -187,6 +447,14 @@ public class PostgresResource extends Resource_ImplBase {
 	@Override
 	public void destroy() {
 		super.destroy();
+		if (isWriteBehind()) {
+			for (Thread thread : writerThreads) {
+				thread.interrupt();
+			}
+			for (PostgresSession session : writerSessions) {
+				session.close();
+			}
+		}
 		try {
 			dbConnection.close();
 		} catch (SQLException e) {
@@ -258,15 +526,18 @@ public class PostgresResource extends Resource_ImplBase {
 	}
 
 	/**
-	 * Commit.
+	 * Writes new entities and aggregated entity frequencies and commits them.
+	 * Sessions call this before committing their own rows, so committed
+	 * entityoffsets never reference uncommitted entities.
+	 *
+	 * @throws SQLException
+	 *             the SQL exception
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
 	 */
-	public void commit() {
-		try {
+	public synchronized void flushEntities() throws SQLException, IOException {
+		if (entityIdDictionary.flush(dbConnection) > 0) {
 			dbConnection.commit();
-			logger.log(Level.INFO,
-					"Another " + INTERNAL_BATCH_SIZE + " documents committed (total: " + documentCounter + ")");
-		} catch (SQLException e) {
-			e.printStackTrace();
 		}
 	}
 
@@ -279,8 +550,13 @@ public class PostgresResource extends Resource_ImplBase {
 	private void createSchema(String tableSchemaFile) {
 		try {
 			String schemaSql = FileUtils.readFileToString(new File(tableSchemaFile)).replace("\n", " ");
+			if (unloggedTables) {
+				// bulk load mode: skip the WAL until the load is complete
+				schemaSql = schemaSql.replace("CREATE TABLE ", "CREATE UNLOGGED TABLE ");
+			}
 			dbStatement.executeUpdate(schemaSql);
-			logger.log(Level.INFO, "Schema created");
+			dbConnection.commit();
+			logger.log(Level.INFO, "Schema created" + (unloggedTables ? " (unlogged tables)" : ""));
 		} catch (IOException e1) {
 			logger.log(Level.SEVERE, "Could not read DB schema file " + tableSchemaFile);
 			System.exit(1);
@@ -292,53 +568,9 @@ public class PostgresResource extends Resource_ImplBase {
 	}
 
 	/**
-	 * Prepare statements.
-	 */
-	private void prepareStatements() {
-		try {
-			preparedStatementDocument = dbConnection
-					.prepareStatement("INSERT INTO " + TABLE_DOCUMENT + " (id, content, created) VALUES (?, ?, ?)");
-			preparedStatementEntityUpsert = dbConnection
-					.prepareStatement("INSERT INTO " + TABLE_ENTITY + " as e (name, type, frequency) VALUES (?, ?, ?) "
-							+ "ON CONFLICT ON CONSTRAINT unique_name_type DO "
-							+ "UPDATE SET frequency = e.frequency + ? " + "RETURNING id");
-			preparedStatementEntityoffset = dbConnection.prepareStatement("INSERT INTO " + TABLE_ENTITYOFFSET
-					+ " (docid, entid, entitystart, entityend) VALUES (?, ?, ?, ?)");
-			preparedStatementEventtime = dbConnection.prepareStatement("INSERT INTO " + TABLE_EVENTTIME
-					+ " (docid, beginoffset, endoffset, timex, type, timexvalue) VALUES (?, ?, ?, ?, ?, ?)");
-			preparedStatementKeyterms = dbConnection
-					.prepareStatement("INSERT INTO " + TABLE_KEYTERMS + " (docid, term, frequency) VALUES (?, ?, ?)");
-		} catch (SQLException e) {
-			e.printStackTrace();
-			System.exit(1);
-		}
-	}
-
-	/**
-	 * Insert document.
-	 *
-	 * @param id
-	 *            the id
-	 * @param content
-	 *            the content
-	 * @param created
-	 *            the created
-	 * @return true, if successful
-	 * @throws SQLException
-	 *             the SQL exception
-	 */
-	public synchronized boolean insertDocument(Integer id, String content, String created) throws SQLException {
-
-		documentCounter++;
-
-		preparedStatementDocument.setInt(1, id);
-		preparedStatementDocument.setString(2, content.replaceAll("\u0000", ""));
-		preparedStatementDocument.setDate(3, Date.valueOf(created));
-		return preparedStatementDocument.execute();
-	}
-
-	/**
-	 * Insert entity.
+	 * Gets the id of an entity. The id is looked up in (or assigned by) the
+	 * entity dictionary; the entity is written to the database with the next
+	 * commit of any session.
 	 *
 	 * @param name
 	 *            the name
@@ -346,120 +578,36 @@ public class PostgresResource extends Resource_ImplBase {
 	 *            the type
 	 * @param frequency
 	 *            the frequency
-	 * @return the integer
-	 * @throws SQLException
-	 *             the SQL exception
+	 * @return the entity id
 	 */
-	public synchronized Integer insertEntity(String name, String type, Integer frequency) throws SQLException {
-		Integer entityId;
-		preparedStatementEntityUpsert.setString(1, name.replaceAll("\u0000", ""));
-		preparedStatementEntityUpsert.setString(2, type);
-		preparedStatementEntityUpsert.setInt(3, frequency);
-		preparedStatementEntityUpsert.setInt(4, frequency);
-		ResultSet rs = preparedStatementEntityUpsert.executeQuery();
-		rs.next();
-		entityId = rs.getInt(1);
-		return entityId;
+	public Integer insertEntity(String name, String type, Integer frequency) {
+		return entityIdDictionary.getId(name, type, frequency);
 	}
 
 	/**
-	 * Insert entityoffset.
+	 * Checks if entity co-occurrences are counted.
 	 *
-	 * @param docid
-	 *            the docid
-	 * @param entid
-	 *            the entid
-	 * @param entitystart
-	 *            the entitystart
-	 * @param entityend
-	 *            the entityend
-	 * @throws SQLException
-	 *             the SQL exception
+	 * @return true, if co-occurrences are counted
 	 */
-	public synchronized void insertEntityoffset(Integer docid, Integer entid, Integer entitystart, Integer entityend)
-			throws SQLException {
-		preparedStatementEntityoffset.setInt(1, docid);
-		preparedStatementEntityoffset.setInt(2, entid);
-		preparedStatementEntityoffset.setInt(3, entitystart);
-		preparedStatementEntityoffset.setInt(4, entityend);
-		preparedStatementEntityoffset.addBatch();
+	public boolean isCountCooccurrences() {
+		return countCooccurrences;
 	}
 
 	/**
-	 * Insert eventtime.
+	 * Increments the number of inserted documents.
 	 *
-	 * @param docid
-	 *            the docid
-	 * @param beginoffset
-	 *            the beginoffset
-	 * @param endoffset
-	 *            the endoffset
-	 * @param timex
-	 *            the timex
-	 * @param type
-	 *            the type
-	 * @param timexvalue
-	 *            the timexvalue
-	 * @throws SQLException
-	 *             the SQL exception
+	 * @return the number of documents inserted by all sessions
 	 */
-	public synchronized void insertEventtime(Integer docid, Integer beginoffset, Integer endoffset, String timex,
-			String type, String timexvalue) throws SQLException {
-		preparedStatementEventtime.setInt(1, docid);
-		preparedStatementEventtime.setInt(2, beginoffset);
-		preparedStatementEventtime.setInt(3, endoffset);
-		preparedStatementEventtime.setString(4, timex.replaceAll("\u0000", ""));
-		preparedStatementEventtime.setString(5, type);
-		preparedStatementEventtime.setString(6, timexvalue.replaceAll("\u0000", ""));
-		preparedStatementEventtime.addBatch();
-	}
-
-	/**
-	 * Insert keyterms.
-	 *
-	 * @param docid
-	 *            the docid
-	 * @param term
-	 *            the term
-	 * @param frequency
-	 *            the frequency
-	 * @throws SQLException
-	 *             the SQL exception
-	 */
-	public synchronized void insertKeyterms(Integer docid, String term, Integer frequency) throws SQLException {
-		preparedStatementKeyterms.setInt(1, docid);
-		preparedStatementKeyterms.setString(2, term.replaceAll("\u0000", ""));
-		preparedStatementKeyterms.setInt(3, frequency);
-		preparedStatementKeyterms.addBatch();
-	}
-
-	/**
-	 * Execute batches.
-	 *
-	 * @throws SQLException
-	 *             the SQL exception
-	 */
-	public synchronized void executeBatches() throws SQLException {
-		preparedStatementEntityoffset.executeBatch();
-		preparedStatementEntityoffset.clearBatch();
-
-		preparedStatementEventtime.executeBatch();
-		preparedStatementEventtime.clearBatch();
-
-		preparedStatementKeyterms.executeBatch();
-		preparedStatementKeyterms.clearBatch();
-
-		if (documentCounter % INTERNAL_BATCH_SIZE == 0) {
-			this.commit();
-		}
+	int incrementDocumentCounter() {
+		return documentCounter.incrementAndGet();
 	}
 
 	/**
 	 * Returns the number of documents that have already been inserted into the PostgresDB
 	 * @return int - number of documents committed to POstgresDB
 	 */
-	public synchronized int getDocumentCounter() {
-		return documentCounter;
+	public int getDocumentCounter() {
+		return documentCounter.get();
 	}
 
 
@@ -0,0 +1,503 @@
+package uhh_lt.newsleak.resources;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.postgresql.copy.CopyManager;
+import org.postgresql.core.BaseConnection;
+
+import uhh_lt.newsleak.services.CooccurrenceService;
+import uhh_lt.newsleak.util.CommitPolicy;
+import uhh_lt.newsleak.util.CopyBuffer;
+
+/**
+ * A session of a single @see uhh_lt.newsleak.writer.PostgresDbWriter instance
+ * on the newsleak database. A session owns its db connection, its prepared
+ * statements and (in copy mode) its copy buffers, and commits on its own
+ * schedule as decided by a @see uhh_lt.newsleak.util.CommitPolicy. Sessions are created by @see
+ * uhh_lt.newsleak.resources.PostgresResource and are not thread-safe: each CPE
+ * processing thread uses its own session.
+ */
+public class PostgresSession {
+
+	/** The postgres resource which created this session. */
+	private PostgresResource postgresResource;
+
+	/** The db connection. */
+	private Connection dbConnection;
+
+	/** The copy mode. */
+	private boolean copyMode;
+
+	/** The copy buffer size. */
+	private int copyBufferSize;
+
+	/** The copy flush interval. */
+	private int copyFlushInterval;
+
+	/** The commit policy. */
+	private CommitPolicy commitPolicy;
+
+	/** The prepared statement document. */
+	private PreparedStatement preparedStatementDocument;
+
+	/** The prepared statement documententity. */
+	private PreparedStatement preparedStatementDocumententity;
+
+	/** The prepared statement entityoffset. */
+	private PreparedStatement preparedStatementEntityoffset;
+
+	/** The prepared statement eventtime. */
+	private PreparedStatement preparedStatementEventtime;
+
+	/** The prepared statement keyterms. */
+	private PreparedStatement preparedStatementKeyterms;
+
+	/** The copy manager (copy mode only). */
+	private CopyManager copyManager;
+
+	/** The copy buffer document. */
+	private CopyBuffer copyBufferDocument;
+
+	/** The copy buffer documententity. */
+	private CopyBuffer copyBufferDocumententity;
+
+	/** The copy buffer entityoffset. */
+	private CopyBuffer copyBufferEntityoffset;
+
+	/** The copy buffer eventtime. */
+	private CopyBuffer copyBufferEventtime;
+
+	/** The copy buffer keyterms. */
+	private CopyBuffer copyBufferKeyterms;
+
+	/** The number of documents inserted in this session. */
+	private int documentCounter = 0;
+
+	/** The number of documents of the pending transaction. */
+	private int pendingDocuments = 0;
+
+	/** The number of rows of the pending transaction. */
+	private long pendingRows = 0;
+
+	/** The estimated number of bytes of the pending transaction. */
+	private long pendingBytes = 0;
+
+	/** The time of the last commit. */
+	private long lastCommit = System.currentTimeMillis();
+
+	/**
+	 * Instantiates a new postgres session.
+	 *
+	 * @param postgresResource
+	 *            the postgres resource
+	 * @param dbConnection
+	 *            the db connection (with auto commit disabled)
+	 * @param copyMode
+	 *            the copy mode
+	 * @param copyBufferSize
+	 *            the copy buffer size
+	 * @param copyFlushInterval
+	 *            the copy flush interval
+	 * @param commitPolicy
+	 *            the commit policy
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	PostgresSession(PostgresResource postgresResource, Connection dbConnection, boolean copyMode,
+			int copyBufferSize, int copyFlushInterval, CommitPolicy commitPolicy) throws SQLException {
+		this.postgresResource = postgresResource;
+		this.dbConnection = dbConnection;
+		this.copyMode = copyMode;
+		this.copyBufferSize = copyBufferSize;
+		this.copyFlushInterval = copyFlushInterval;
+		this.commitPolicy = commitPolicy;
+		if (copyMode) {
+			prepareCopyBuffers();
+		} else {
+			prepareStatements();
+		}
+	}
+
+	/**
+	 * Prepare statements.
+	 *
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	private void prepareStatements() throws SQLException {
+		preparedStatementDocument = dbConnection.prepareStatement(
+				"INSERT INTO " + PostgresResource.TABLE_DOCUMENT + " (id, content, created) VALUES (?, ?, ?)");
+		preparedStatementDocumententity = dbConnection.prepareStatement("INSERT INTO "
+				+ PostgresResource.TABLE_DOCUMENTENTITY + " (docid, entityid, frequency) VALUES (?, ?, ?)");
+		preparedStatementEntityoffset = dbConnection.prepareStatement("INSERT INTO "
+				+ PostgresResource.TABLE_ENTITYOFFSET + " (docid, entid, entitystart, entityend) VALUES (?, ?, ?, ?)");
+		preparedStatementEventtime = dbConnection.prepareStatement("INSERT INTO " + PostgresResource.TABLE_EVENTTIME
+				+ " (docid, beginoffset, endoffset, timex, type, timexvalue) VALUES (?, ?, ?, ?, ?, ?)");
+		preparedStatementKeyterms = dbConnection.prepareStatement(
+				"INSERT INTO " + PostgresResource.TABLE_KEYTERMS + " (docid, term, frequency) VALUES (?, ?, ?)");
+	}
+
+	/**
+	 * Prepare copy buffers for the bulk load mode.
+	 *
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	private void prepareCopyBuffers() throws SQLException {
+		copyManager = new CopyManager((BaseConnection) dbConnection);
+		copyBufferDocument = new CopyBuffer(PostgresResource.TABLE_DOCUMENT, "id", "content", "created");
+		copyBufferDocumententity = new CopyBuffer(PostgresResource.TABLE_DOCUMENTENTITY, "docid", "entityid",
+				"frequency");
+		copyBufferEntityoffset = new CopyBuffer(PostgresResource.TABLE_ENTITYOFFSET, "docid", "entid",
+				"entitystart", "entityend");
+		copyBufferEventtime = new CopyBuffer(PostgresResource.TABLE_EVENTTIME, "docid", "beginoffset", "endoffset",
+				"timex", "type", "timexvalue");
+		copyBufferKeyterms = new CopyBuffer(PostgresResource.TABLE_KEYTERMS, "docid", "term", "frequency");
+	}
+
+	/**
+	 * Streams buffered rows to the database via COPY.
+	 *
+	 * @param force
+	 *            if true, all buffers are flushed. Otherwise only buffers
+	 *            exceeding the configured size or flush interval are flushed.
+	 * @throws SQLException
+	 *             the SQL exception
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private void flushCopyBuffers(boolean force) throws SQLException, IOException {
+		for (CopyBuffer copyBuffer : new CopyBuffer[] { copyBufferDocument, copyBufferDocumententity,
+				copyBufferEntityoffset, copyBufferEventtime, copyBufferKeyterms }) {
+			if (force || copyBuffer.isFlushDue(copyBufferSize, copyFlushInterval)) {
+				copyBuffer.flush(copyManager);
+			}
+		}
+	}
+
+	/**
+	 * Insert document.
+	 *
+	 * @param id
+	 *            the id
+	 * @param content
+	 *            the content
+	 * @param created
+	 *            the created
+	 * @return true, if successful
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	public boolean insertDocument(Integer id, String content, String created) throws SQLException {
+
+		documentCounter++;
+		postgresResource.incrementDocumentCounter();
+
+		if (copyMode) {
+			copyBufferDocument.addRow(id, content, Date.valueOf(created));
+			return false;
+		}
+
+		preparedStatementDocument.setInt(1, id);
+		preparedStatementDocument.setString(2, content.replaceAll("\u0000", ""));
+		preparedStatementDocument.setDate(3, Date.valueOf(created));
+		return preparedStatementDocument.execute();
+	}
+
+	/**
+	 * Insert entity. The id is looked up in (or assigned by) the shared entity
+	 * dictionary of the postgres resource.
+	 *
+	 * @param name
+	 *            the name
+	 * @param type
+	 *            the type
+	 * @param frequency
+	 *            the frequency
+	 * @return the entity id
+	 */
+	public Integer insertEntity(String name, String type, Integer frequency) {
+		return postgresResource.insertEntity(name, type, frequency);
+	}
+
+	/**
+	 * Insert documententity, i.e. the aggregated frequency of an entity in a
+	 * document.
+	 *
+	 * @param docid
+	 *            the docid
+	 * @param entityid
+	 *            the entityid
+	 * @param frequency
+	 *            the frequency
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	public void insertDocumententity(Integer docid, Integer entityid, Integer frequency) throws SQLException {
+		if (copyMode) {
+			copyBufferDocumententity.addRow(docid, entityid, frequency);
+			return;
+		}
+		preparedStatementDocumententity.setInt(1, docid);
+		preparedStatementDocumententity.setInt(2, entityid);
+		preparedStatementDocumententity.setInt(3, frequency);
+		preparedStatementDocumententity.addBatch();
+	}
+
+	/**
+	 * Insert entityoffset.
+	 *
+	 * @param docid
+	 *            the docid
+	 * @param entid
+	 *            the entid
+	 * @param entitystart
+	 *            the entitystart
+	 * @param entityend
+	 *            the entityend
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	public void insertEntityoffset(Integer docid, Integer entid, Integer entitystart, Integer entityend)
+			throws SQLException {
+		if (copyMode) {
+			copyBufferEntityoffset.addRow(docid, entid, entitystart, entityend);
+			return;
+		}
+		preparedStatementEntityoffset.setInt(1, docid);
+		preparedStatementEntityoffset.setInt(2, entid);
+		preparedStatementEntityoffset.setInt(3, entitystart);
+		preparedStatementEntityoffset.setInt(4, entityend);
+		preparedStatementEntityoffset.addBatch();
+	}
+
+	/**
+	 * Insert eventtime.
+	 *
+	 * @param docid
+	 *            the docid
+	 * @param beginoffset
+	 *            the beginoffset
+	 * @param endoffset
+	 *            the endoffset
+	 * @param timex
+	 *            the timex
+	 * @param type
+	 *            the type
+	 * @param timexvalue
+	 *            the timexvalue
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	public void insertEventtime(Integer docid, Integer beginoffset, Integer endoffset, String timex, String type,
+			String timexvalue) throws SQLException {
+		if (copyMode) {
+			copyBufferEventtime.addRow(docid, beginoffset, endoffset, timex, type, timexvalue);
+			return;
+		}
+		preparedStatementEventtime.setInt(1, docid);
+		preparedStatementEventtime.setInt(2, beginoffset);
+		preparedStatementEventtime.setInt(3, endoffset);
+		preparedStatementEventtime.setString(4, timex.replaceAll("\u0000", ""));
+		preparedStatementEventtime.setString(5, type);
+		preparedStatementEventtime.setString(6, timexvalue.replaceAll("\u0000", ""));
+		preparedStatementEventtime.addBatch();
+	}
+
+	/**
+	 * Insert keyterms.
+	 *
+	 * @param docid
+	 *            the docid
+	 * @param term
+	 *            the term
+	 * @param frequency
+	 *            the frequency
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	public void insertKeyterms(Integer docid, String term, Integer frequency) throws SQLException {
+		if (copyMode) {
+			copyBufferKeyterms.addRow(docid, term, frequency);
+			return;
+		}
+		preparedStatementKeyterms.setInt(1, docid);
+		preparedStatementKeyterms.setString(2, term.replaceAll("\u0000", ""));
+		preparedStatementKeyterms.setInt(3, frequency);
+		preparedStatementKeyterms.addBatch();
+	}
+
+	/**
+	 * Writes all rows of a document record and executes the batches.
+	 *
+	 * @param record
+	 *            the document record
+	 * @return true, if the session was committed
+	 * @throws SQLException
+	 *             the SQL exception
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public boolean write(PostgresDocumentRecord record) throws SQLException, IOException {
+		Integer docId = record.getDocId();
+		insertDocument(docId, record.getContent(), record.getCreated());
+		List<PostgresDocumentRecord.EntityRecord> entities = record.getEntities();
+		int[] entityIds = new int[entities.size()];
+		for (int e = 0; e < entities.size(); e++) {
+			PostgresDocumentRecord.EntityRecord entity = entities.get(e);
+			Integer entityId = insertEntity(entity.name, entity.type, entity.getFrequency());
+			entityIds[e] = entityId;
+			insertDocumententity(docId, entityId, entity.getFrequency());
+			for (int i = 0; i < entity.getFrequency(); i++) {
+				insertEntityoffset(docId, entityId, entity.getBegin(i), entity.getEnd(i));
+			}
+		}
+		if (postgresResource.isCountCooccurrences()) {
+			countCooccurrences(record, entityIds);
+		}
+		for (PostgresDocumentRecord.EventtimeRecord eventtime : record.getEventtimes()) {
+			insertEventtime(docId, eventtime.beginoffset, eventtime.endoffset, eventtime.timex, eventtime.type,
+					eventtime.timexvalue);
+		}
+		for (PostgresDocumentRecord.KeytermRecord keyterm : record.getKeyterms()) {
+			insertKeyterms(docId, keyterm.term, keyterm.frequency);
+		}
+		pendingDocuments++;
+		pendingRows += 1 + entities.size() + record.getEventtimes().size() + record.getKeyterms().size();
+		pendingBytes += record.getContent().length();
+		for (PostgresDocumentRecord.EntityRecord entity : entities) {
+			pendingRows += entity.getFrequency();
+			pendingBytes += 12 + 16 * entity.getFrequency();
+		}
+		for (PostgresDocumentRecord.EventtimeRecord eventtime : record.getEventtimes()) {
+			pendingBytes += 12 + eventtime.timex.length() + eventtime.type.length() + eventtime.timexvalue.length();
+		}
+		for (PostgresDocumentRecord.KeytermRecord keyterm : record.getKeyterms()) {
+			pendingBytes += 8 + keyterm.term.length();
+		}
+		return executeBatches();
+	}
+
+	/**
+	 * Counts the document-level and sentence-level co-occurrences of the
+	 * entities of a document.
+	 *
+	 * @param record
+	 *            the document record
+	 * @param entityIds
+	 *            the ids of the entities of the document
+	 */
+	private void countCooccurrences(PostgresDocumentRecord record, int[] entityIds) {
+		List<PostgresDocumentRecord.EntityRecord> entities = record.getEntities();
+		CooccurrenceService cooccurrenceService = CooccurrenceService.getInstance();
+		cooccurrenceService.getDocumentCooccurrences().addUnit(entityIds);
+
+		HashMap<Integer, ArrayList<Integer>> sentenceEntities = new HashMap<Integer, ArrayList<Integer>>();
+		for (int e = 0; e < entities.size(); e++) {
+			PostgresDocumentRecord.EntityRecord entity = entities.get(e);
+			for (int i = 0; i < entity.getFrequency(); i++) {
+				int sentence = entity.getSentence(i);
+				if (sentence >= 0) {
+					sentenceEntities.computeIfAbsent(sentence, k -> new ArrayList<Integer>()).add(entityIds[e]);
+				}
+			}
+		}
+		for (ArrayList<Integer> ids : sentenceEntities.values()) {
+			cooccurrenceService.getSentenceCooccurrences().addUnit(ids.stream().mapToInt(Integer::intValue).toArray());
+		}
+		// sentences without entities count as units as well
+		cooccurrenceService.getSentenceCooccurrences()
+				.addUnits(Math.max(record.getSentenceCount() - sentenceEntities.size(), 0));
+	}
+
+	/**
+	 * Execute batches. In copy mode, only buffers which exceed their size or
+	 * flush interval are streamed to the database. The session is committed as
+	 * soon as the pending transaction exhausts a budget of the commit policy.
+	 *
+	 * @return true, if the session was committed
+	 * @throws SQLException
+	 *             the SQL exception
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public boolean executeBatches() throws SQLException, IOException {
+		if (copyMode) {
+			flushCopyBuffers(false);
+		} else {
+			preparedStatementDocumententity.executeBatch();
+			preparedStatementDocumententity.clearBatch();
+
+			preparedStatementEntityoffset.executeBatch();
+			preparedStatementEntityoffset.clearBatch();
+
+			preparedStatementEventtime.executeBatch();
+			preparedStatementEventtime.clearBatch();
+
+			preparedStatementKeyterms.executeBatch();
+			preparedStatementKeyterms.clearBatch();
+		}
+
+		if (commitPolicy.isCommitDue(pendingDocuments, pendingRows, pendingBytes,
+				System.currentTimeMillis() - lastCommit)) {
+			commit();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Commit. New entities and aggregated entity frequencies are written by the
+	 * postgres resource before the rows of this session are committed. In copy
+	 * mode, all buffered rows are flushed as well. The latency of the commit
+	 * (including the flushes) is recorded by the commit policy.
+	 *
+	 * @throws SQLException
+	 *             the SQL exception
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public void commit() throws SQLException, IOException {
+		long start = System.nanoTime();
+		postgresResource.flushEntities();
+		if (copyMode) {
+			flushCopyBuffers(true);
+		}
+		dbConnection.commit();
+		if (pendingDocuments > 0) {
+			commitPolicy.recordCommit(pendingDocuments, pendingBytes, System.nanoTime() - start);
+		}
+		pendingDocuments = 0;
+		pendingRows = 0;
+		pendingBytes = 0;
+		lastCommit = System.currentTimeMillis();
+	}
+
+	/**
+	 * Gets the number of documents inserted in this session.
+	 *
+	 * @return the document counter
+	 */
+	public int getDocumentCounter() {
+		return documentCounter;
+	}
+
+	/**
+	 * Closes the db connection of this session. Uncommitted rows are discarded.
+	 */
+	public void close() {
+		try {
+			dbConnection.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+}
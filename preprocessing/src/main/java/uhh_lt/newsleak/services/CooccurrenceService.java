@@ -0,0 +1,206 @@
+package uhh_lt.newsleak.services;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+
+import org.apache.uima.util.Level;
+import org.apache.uima.util.Logger;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.core.BaseConnection;
+
+import uhh_lt.newsleak.util.CooccurrenceCounter;
+import uhh_lt.newsleak.util.CopyBuffer;
+
+/**
+ * Collects entity co-occurrences during the annotation of all languages and
+ * writes them to the co-occurrence tables of the newsleak postgres database at
+ * the end of the preprocessing.
+ *
+ * Document-level co-occurrences (entities mentioned in the same document) go
+ * to table co_n, sentence-level co-occurrences (entities mentioned in the same
+ * sentence) go to table co_s. For each pair of entity ids (w1 &lt; w2), the
+ * tables contain the number of documents/sentences with both entities (freq)
+ * and the log-likelihood significance of the pair (sig).
+ *
+ * The service is a JVM-wide singleton, so counts survive the separate
+ * processing passes of each language.
+ */
+public class CooccurrenceService {
+
+	/** The Constant TABLE_DOCUMENT_COOCCURRENCES. */
+	public static final String TABLE_DOCUMENT_COOCCURRENCES = "co_n";
+
+	/** The Constant TABLE_SENTENCE_COOCCURRENCES. */
+	public static final String TABLE_SENTENCE_COOCCURRENCES = "co_s";
+
+	/** Maximum number of buffered characters before rows are streamed to the db. */
+	private static final int COPY_BUFFER_SIZE = 8388608;
+
+	/** The co-occurrence service. */
+	private static CooccurrenceService cooccurrenceService;
+
+	/** The document-level co-occurrences. */
+	private CooccurrenceCounter documentCooccurrences;
+
+	/** The sentence-level co-occurrences. */
+	private CooccurrenceCounter sentenceCooccurrences;
+
+	/**
+	 * Instantiates a new co-occurrence service.
+	 */
+	private CooccurrenceService() {
+		documentCooccurrences = new CooccurrenceCounter();
+		sentenceCooccurrences = new CooccurrenceCounter();
+	}
+
+	/**
+	 * Gets the single instance of CooccurrenceService.
+	 *
+	 * @return single instance of CooccurrenceService
+	 */
+	public static synchronized CooccurrenceService getInstance() {
+		if (cooccurrenceService == null) {
+			cooccurrenceService = new CooccurrenceService();
+		}
+		return cooccurrenceService;
+	}
+
+	/**
+	 * Gets the document-level co-occurrences.
+	 *
+	 * @return the document co-occurrences
+	 */
+	public CooccurrenceCounter getDocumentCooccurrences() {
+		return documentCooccurrences;
+	}
+
+	/**
+	 * Gets the sentence-level co-occurrences.
+	 *
+	 * @return the sentence co-occurrences
+	 */
+	public CooccurrenceCounter getSentenceCooccurrences() {
+		return sentenceCooccurrences;
+	}
+
+	/**
+	 * Restores the document-level co-occurrences of documents written by an
+	 * earlier (interrupted) run from the documententity table. Sentence-level
+	 * co-occurrences cannot be restored, since sentence boundaries are not
+	 * stored in the db.
+	 *
+	 * @param connection
+	 *            the db connection
+	 * @param logger
+	 *            the logger
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	public void restoreDocumentCooccurrences(Connection connection, Logger logger) throws SQLException {
+		// cursors require a transaction
+		boolean autoCommit = connection.getAutoCommit();
+		connection.setAutoCommit(false);
+		Statement st = connection.createStatement();
+		st.setFetchSize(10000);
+		ResultSet rs = st.executeQuery("SELECT docid, entityid FROM documententity ORDER BY docid");
+		long documents = 0;
+		long currentDocId = -1;
+		ArrayList<Integer> ids = new ArrayList<Integer>();
+		while (rs.next()) {
+			long docId = rs.getLong(1);
+			if (docId != currentDocId && !ids.isEmpty()) {
+				documentCooccurrences.addUnit(ids.stream().mapToInt(Integer::intValue).toArray());
+				documents++;
+				ids.clear();
+			}
+			currentDocId = docId;
+			ids.add(rs.getInt(2));
+		}
+		if (!ids.isEmpty()) {
+			documentCooccurrences.addUnit(ids.stream().mapToInt(Integer::intValue).toArray());
+			documents++;
+		}
+		rs.close();
+
+		// documents without entities
+		rs = st.executeQuery("SELECT count(*) FROM document");
+		rs.next();
+		documentCooccurrences.addUnits(Math.max(rs.getLong(1) - documents, 0));
+		rs.close();
+		st.close();
+		connection.commit();
+		connection.setAutoCommit(autoCommit);
+		logger.log(Level.INFO, "Restored document co-occurrences of " + documents + " documents");
+	}
+
+	/**
+	 * Replaces the contents of the co-occurrence tables with the collected
+	 * counts. Rows are bulk loaded via COPY.
+	 *
+	 * @param connection
+	 *            the db connection
+	 * @param logger
+	 *            the logger
+	 * @throws SQLException
+	 *             the SQL exception
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public void writeToPostgres(Connection connection, Logger logger) throws SQLException, IOException {
+		writeTable(connection, TABLE_DOCUMENT_COOCCURRENCES, documentCooccurrences, logger);
+		writeTable(connection, TABLE_SENTENCE_COOCCURRENCES, sentenceCooccurrences, logger);
+	}
+
+	/**
+	 * Replaces the contents of one co-occurrence table.
+	 *
+	 * @param connection
+	 *            the db connection
+	 * @param table
+	 *            the table
+	 * @param counter
+	 *            the counter
+	 * @param logger
+	 *            the logger
+	 * @throws SQLException
+	 *             the SQL exception
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private void writeTable(Connection connection, String table, CooccurrenceCounter counter, Logger logger)
+			throws SQLException, IOException {
+		Statement st = connection.createStatement();
+		st.executeUpdate("TRUNCATE TABLE " + table + ";");
+		st.close();
+
+		CopyManager copyManager = new CopyManager((BaseConnection) connection);
+		CopyBuffer copyBuffer = new CopyBuffer(table, "w1_id", "w2_id", "freq", "sig");
+		long[] n = new long[] { 0 };
+		try {
+			counter.forEachPair((w1, w2, freq, sig) -> {
+				copyBuffer.addRow(w1, w2, freq, sig);
+				if (copyBuffer.getSize() >= COPY_BUFFER_SIZE) {
+					try {
+						n[0] += copyBuffer.flush(copyManager);
+					} catch (SQLException | IOException e) {
+						throw new IllegalStateException(e);
+					}
+				}
+			});
+		} catch (IllegalStateException e) {
+			if (e.getCause() instanceof SQLException) {
+				throw (SQLException) e.getCause();
+			} else if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw e;
+		}
+		n[0] += copyBuffer.flush(copyManager);
+		logger.log(Level.INFO, n[0] + " co-occurrences written to " + table + " (" + counter.getUnits() + " units)");
+	}
+
+}
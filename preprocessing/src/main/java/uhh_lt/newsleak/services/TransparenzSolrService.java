@@ -1,24 +1,51 @@
 package uhh_lt.newsleak.services;
 
 import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.HttpSolrClient;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
-import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.client.solrj.util.ClientUtils;
+import org.apache.solr.common.params.CursorMarkParams;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.util.Level;
 import org.apache.uima.util.Logger;
 import uhh_lt.newsleak.types.TpResource;
+import uhh_lt.newsleak.util.DocumentCache;
+import uhh_lt.newsleak.util.PrefetchIterator;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
-
+import java.util.Map;
+
+/**
+ * Retrieves datasets from the Transparenzportal Solr Index.
+ *
+ * Datasets are retrieved page by page (with a Solr cursor) and only with the
+ * fields that are needed, so the size of a single response does not grow with
+ * the size of the index.
+ */
 public class TransparenzSolrService {
+    /** Number of pages that are fetched ahead while streaming datasets. */
+    private static final int PREFETCH_PAGES = 2;
+
     /** The solr client */
     HttpSolrClient solrClient;
 
+    /** Number of datasets per page */
+    int pageSize;
+
     /** The address (URL) to the Transparenzportal Solr Index core */
     String solrCoreAddress;
 
@@ -26,9 +53,11 @@ public class TransparenzSolrService {
     Logger logger;
 
 
-    public TransparenzSolrService(String solrCoreAddress, Logger logger){
+    public TransparenzSolrService(String solrCoreAddress, int pageSize, Logger logger){
         this.solrCoreAddress = solrCoreAddress;
+        this.pageSize = pageSize;
         this.logger = logger;
+        this.solrClient = new HttpSolrClient.Builder(solrCoreAddress).build();
     }
 
     /**
@@ -39,36 +68,36 @@ public class TransparenzSolrService {
      */
     public List<TpResource> getAllResourcesFromSolr() throws ResourceInitializationException {
         List<TpResource> tpResources = new ArrayList<>();
+        int numOfDatasets = 0;
 
-        solrClient = new HttpSolrClient.Builder(solrCoreAddress).build();
-
-        //gets the datasets from solr
-        SolrDocumentList datasets = getAllDatasetsFromSolr();
-
-        logger.log(Level.INFO, "Total number of datasets: " + datasets.size());
         logger.log(Level.INFO, "Getting Transparenzportal resources from datasets.");
 
-        //gets the TP resources from the datasets
-        for(SolrDocument dataset: datasets) {
-            List<TpResource> tempTpResources = getAllTpResourcesFromDataset(dataset);
-
-            tpResources.addAll(tempTpResources);
+        //gets the TP resources from the datasets, page by page
+        PrefetchIterator<SolrDocument> datasets = getAllDatasetsFromSolr();
+        try {
+            while (datasets.hasNext()) {
+                tpResources.addAll(getAllTpResourcesFromDataset(datasets.next()));
+                numOfDatasets++;
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Failed retrieving datasets from Transparenzportal Solr Index "+solrCoreAddress);
+            e.printStackTrace();
+            throw new ResourceInitializationException(e);
         }
 
+        logger.log(Level.INFO, "Total number of datasets: " + numOfDatasets);
+
         return tpResources;
     }
 
 
     /**
-     * Gets all datasets from the Transparenzportal Solr Index.
+     * Gets all datasets from the Transparenzportal Solr Index (without fulltexts).
      * For more information on datasets and resources see {@link TpResource}
      *
-     * @return A list of datasets. Each dataset is represented by a {@link SolrDocument})
-     * @throws ResourceInitializationException if no datasets could be retrieved (for any reason)
+     * @return The datasets, retrieved page by page. Each dataset is represented by a {@link SolrDocument})
      */
-    public SolrDocumentList getAllDatasetsFromSolr() throws ResourceInitializationException{
-        QueryResponse response = null;
-
+    public PrefetchIterator<SolrDocument> getAllDatasetsFromSolr() {
         SolrQuery documentQuery = new SolrQuery("*:*");
         documentQuery.addField("id");
         documentQuery.addField("res_format");
@@ -76,23 +105,273 @@ public class TransparenzSolrService {
         documentQuery.addField("res_name");
         documentQuery.addField("title");
         documentQuery.addField("publishing_date");
-        documentQuery.setRows(Integer.MAX_VALUE);
+
+        return streamDatasets(documentQuery);
+    }
+
+
+    /**
+     * Streams all datasets matching a query, page by page.
+     * The pages are retrieved with a Solr cursor (sorted by id), so deep pages are as cheap as the first one.
+     * While the caller processes a page, the next pages are fetched in the background.
+     *
+     * @param documentQuery The query (including the list of fields to retrieve)
+     * @return The datasets matching the query. A failed request is reported by the iterator as {@link IOException}.
+     */
+    public PrefetchIterator<SolrDocument> streamDatasets(SolrQuery documentQuery) {
+        return streamDatasets(documentQuery, PREFETCH_PAGES);
+    }
 
 
+    /**
+     * Streams all datasets matching a query, page by page (see {@link #streamDatasets(SolrQuery)}).
+     *
+     * @param documentQuery The query (including the list of fields to retrieve)
+     * @param prefetchPages The maximum number of pages fetched ahead (e.g. less for pages with fulltexts)
+     * @return The datasets matching the query. A failed request is reported by the iterator as {@link IOException}.
+     */
+    public PrefetchIterator<SolrDocument> streamDatasets(SolrQuery documentQuery, int prefetchPages) {
+        return streamDatasets(documentQuery, prefetchPages, null);
+    }
+
+
+    /**
+     * Streams all datasets matching a query, page by page (see {@link #streamDatasets(SolrQuery)}).
+     *
+     * With a document cache, the pages only contain ids and versions (field _version_) of the datasets.
+     * Datasets are taken from the cache if possible, all others are retrieved in one batched query per page
+     * (with the fields of the given query) and added to the cache (as JSON, see {@link #encodeDataset(SolrDocument)}).
+     *
+     * @param documentQuery The query (including the list of fields to retrieve)
+     * @param prefetchPages The maximum number of pages fetched ahead (e.g. less for pages with fulltexts)
+     * @param documentCache The document cache (or null)
+     * @return The datasets matching the query. A failed request is reported by the iterator as {@link IOException}.
+     */
+    public PrefetchIterator<SolrDocument> streamDatasets(SolrQuery documentQuery, int prefetchPages, DocumentCache documentCache) {
+        String[] fields = documentQuery.getFields() == null ? new String[0] : documentQuery.getFields().split(",");
+        if (documentCache != null) {
+            documentQuery = documentQuery.getCopy();
+            documentQuery.setFields("id", "_version_");
+        }
+        SolrQuery pageQuery = documentQuery;
+        pageQuery.setRows(pageSize);
+        pageQuery.setSort(SolrQuery.SortClause.asc("id"));
+
+        return new PrefetchIterator<SolrDocument>(new PrefetchIterator.BatchSource<SolrDocument>() {
+
+            /** The cursor mark of the next page */
+            private String cursorMark = CursorMarkParams.CURSOR_MARK_START;
+
+            /** True if the last page has been retrieved */
+            private boolean done = false;
+
+            @Override
+            public List<SolrDocument> nextBatch() throws Exception {
+                List<SolrDocument> datasets = new ArrayList<>();
+                // a page may be empty only at the end (or if all of its cached datasets have been deleted)
+                while (datasets.isEmpty() && !done) {
+                    pageQuery.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+                    QueryResponse response = solrClient.query(pageQuery);
+                    if (response == null) {
+                        throw new IOException("No response from Transparenzportal Solr Index " + solrCoreAddress);
+                    }
+                    String nextCursorMark = response.getNextCursorMark();
+                    done = cursorMark.equals(nextCursorMark);
+                    cursorMark = nextCursorMark;
+                    logger.log(Level.FINE, "Retrieved " + response.getResults().size() + " of "
+                            + response.getResults().getNumFound() + " datasets from " + solrCoreAddress);
+                    datasets = documentCache == null ? response.getResults() : getCachedDatasets(response.getResults(), fields, documentCache);
+                }
+                return datasets;
+            }
+
+            @Override
+            public void close() {
+            }
+        }, prefetchPages, "solr-cursor");
+    }
+
+
+    /**
+     * Gets the complete datasets for a page of dataset ids and versions, from the cache if possible.
+     *
+     * @param page The datasets (fields id and _version_ only)
+     * @param fields The fields to retrieve
+     * @param documentCache The document cache
+     * @return The complete datasets, in the order of the page
+     * @throws IOException if the missing datasets could not be retrieved
+     */
+    private List<SolrDocument> getCachedDatasets(List<SolrDocument> page, String[] fields, DocumentCache documentCache) throws IOException {
+        List<SolrDocument> datasets = new ArrayList<>();
+        List<String> missingIds = new ArrayList<>();
+        for (SolrDocument stub : page) {
+            String datasetId = (String) stub.getFieldValue("id");
+            String stamp = String.valueOf(stub.getFieldValue("_version_"));
+            String cached = documentCache.getString(datasetId, stamp);
+            SolrDocument dataset = null;
+            if (cached != null) {
+                try {
+                    dataset = decodeDataset(cached);
+                } catch (RuntimeException e) {
+                    documentCache.invalidate(datasetId, stamp, e.toString());
+                }
+            }
+            if (dataset == null) {
+                missingIds.add(datasetId);
+            }
+            datasets.add(dataset);
+        }
+        if (missingIds.isEmpty()) {
+            return datasets;
+        }
+
+        // retrieve all missing datasets at once
+        StringBuilder idQuery = new StringBuilder("id:(");
+        for (int i = 0; i < missingIds.size(); i++) {
+            idQuery.append(i == 0 ? "" : " OR ").append(ClientUtils.escapeQueryChars(missingIds.get(i)));
+        }
+        SolrQuery datasetQuery = new SolrQuery(idQuery.append(")").toString());
+        datasetQuery.setFields(fields);
+        datasetQuery.setRows(missingIds.size());
+        Map<String, SolrDocument> retrieved = new HashMap<>();
         try {
-            response = solrClient.query(documentQuery);
+            for (SolrDocument dataset : solrClient.query(datasetQuery).getResults()) {
+                retrieved.put((String) dataset.getFieldValue("id"), dataset);
+            }
+        } catch (SolrServerException e) {
+            throw new IOException(e);
+        }
+        logger.log(Level.FINE, "Retrieved " + retrieved.size() + " of " + page.size() + " datasets (others cached)");
+
+        for (int i = 0; i < page.size(); i++) {
+            if (datasets.get(i) == null) {
+                SolrDocument stub = page.get(i);
+                SolrDocument dataset = retrieved.get((String) stub.getFieldValue("id"));
+                if (dataset == null) {
+                    // deleted since the page was retrieved
+                    continue;
+                }
+                String encoded = encodeDataset(dataset);
+                if (encoded != null) {
+                    documentCache.putString((String) stub.getFieldValue("id"), String.valueOf(stub.getFieldValue("_version_")), encoded);
+                }
+                datasets.set(i, dataset);
+            }
+        }
+        datasets.removeIf(dataset -> dataset == null);
+        return datasets;
+    }
+
 
-            if (response == null) {
-                throw new ResourceInitializationException();
+    /**
+     * Encodes a dataset for the document cache as JSON, independent of the SolrJ version.
+     * Strings and booleans are stored as JSON values, multi-valued fields as arrays, and other values
+     * (dates and numbers) as objects tagged with their type, so they are decoded with the same type.
+     *
+     * @param dataset The dataset
+     * @return The JSON text (null if the dataset contains a value of an unsupported type)
+     */
+    static String encodeDataset(SolrDocument dataset) {
+        JsonObject json = new JsonObject();
+        for (String field : dataset.getFieldNames()) {
+            JsonElement value = encodeValue(dataset.getFieldValue(field));
+            if (value == null) {
+                return null;
             }
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "Failed retrieving datasets from Transparenzportal Solr Index "+solrCoreAddress);
+            json.add(field, value);
+        }
+        return json.toString();
+    }
 
-            e.printStackTrace();
-            throw new ResourceInitializationException();
+
+    /**
+     * Encodes a field value (see {@link #encodeDataset(SolrDocument)}).
+     *
+     * @param value The value
+     * @return The JSON value (null if the type is not supported)
+     */
+    private static JsonElement encodeValue(Object value) {
+        if (value instanceof String) {
+            return new JsonPrimitive((String) value);
+        } else if (value instanceof Boolean) {
+            return new JsonPrimitive((Boolean) value);
+        } else if (value instanceof Collection) {
+            JsonArray array = new JsonArray();
+            for (Object item : (Collection<?>) value) {
+                JsonElement encodedItem = encodeValue(item);
+                if (encodedItem == null) {
+                    return null;
+                }
+                array.add(encodedItem);
+            }
+            return array;
+        }
+        JsonObject tagged = new JsonObject();
+        if (value instanceof Date) {
+            tagged.addProperty("date", ((Date) value).getTime());
+        } else if (value instanceof Long) {
+            tagged.addProperty("long", (Long) value);
+        } else if (value instanceof Integer) {
+            tagged.addProperty("int", (Integer) value);
+        } else if (value instanceof Double) {
+            tagged.addProperty("double", (Double) value);
+        } else if (value instanceof Float) {
+            tagged.addProperty("float", (Float) value);
+        } else {
+            return null;
+        }
+        return tagged;
+    }
+
+
+    /**
+     * Decodes a dataset encoded by {@link #encodeDataset(SolrDocument)}.
+     *
+     * @param encoded The JSON text
+     * @return The dataset
+     * @throws RuntimeException if the text is no encoded dataset
+     */
+    static SolrDocument decodeDataset(String encoded) {
+        SolrDocument dataset = new SolrDocument();
+        for (Map.Entry<String, JsonElement> field : new JsonParser().parse(encoded).getAsJsonObject().entrySet()) {
+            dataset.setField(field.getKey(), decodeValue(field.getValue()));
         }
+        return dataset;
+    }
 
-        return response.getResults();
+
+    /**
+     * Decodes a field value (see {@link #encodeDataset(SolrDocument)}).
+     *
+     * @param value The JSON value
+     * @return The value
+     */
+    private static Object decodeValue(JsonElement value) {
+        if (value.isJsonArray()) {
+            List<Object> items = new ArrayList<>();
+            for (JsonElement item : value.getAsJsonArray()) {
+                items.add(decodeValue(item));
+            }
+            return items;
+        } else if (value.isJsonPrimitive()) {
+            JsonPrimitive primitive = value.getAsJsonPrimitive();
+            return primitive.isBoolean() ? (Object) primitive.getAsBoolean() : primitive.getAsString();
+        }
+        Map.Entry<String, JsonElement> tagged = value.getAsJsonObject().entrySet().iterator().next();
+        switch (tagged.getKey()) {
+        case "date":
+            return new Date(tagged.getValue().getAsLong());
+        case "long":
+            return tagged.getValue().getAsLong();
+        case "int":
+            return tagged.getValue().getAsInt();
+        case "double":
+            return tagged.getValue().getAsDouble();
+        case "float":
+            return tagged.getValue().getAsFloat();
+        default:
+            throw new IllegalArgumentException("Unknown value type " + tagged.getKey());
+        }
     }
 
 
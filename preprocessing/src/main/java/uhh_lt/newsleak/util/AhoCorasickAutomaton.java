@@ -0,0 +1,495 @@
+package uhh_lt.newsleak.util;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A case-insensitive Aho-Corasick automaton to find all occurrences of many
+ * keys in a text in a single pass (linear in the length of the text plus the
+ * number of matches, independent of the number of keys).
+ *
+ * Keys are added to a trie first, then the automaton is built once. Building
+ * numbers the nodes in breadth-first order, so the children of a node are
+ * consecutive, and replaces the trie by flat tables: the label of each node
+ * (children sorted by label), the first child, failure and output link and
+ * depth of each node, and the values of each node. A built automaton is
+ * immutable, so it can be shared by several threads. Case is folded per
+ * character, so match offsets are offsets into the original text.
+ *
+ * A built automaton can be written to a binary file. Reading it back takes
+ * constant time apart from the (small) table of distinct values: the tables are
+ * used directly as views of the (memory-mapped) buffer.
+ *
+ * @param <V>
+ *            the type of values associated with keys
+ */
+public class AhoCorasickAutomaton<V> {
+
+	/** The root node of the trie (null, once the automaton is built). */
+	private Node<V> root = new Node<V>(0);
+
+	/** The number of keys. */
+	private int size = 0;
+
+	/** The distinct values. */
+	private List<V> valueTable;
+
+	/** The labels of the nodes (the label of the root is unused). */
+	private CharBuffer labels;
+
+	/** The first children of the nodes (one more than nodes). */
+	private IntBuffer firstChildren;
+
+	/** The failure links of the nodes (longest proper suffix in the trie). */
+	private IntBuffer failures;
+
+	/**
+	 * The output links of the nodes (next node on the failure chain at which a key
+	 * ends, -1 if none).
+	 */
+	private IntBuffer outputs;
+
+	/** The depths of the nodes (length of the key prefix). */
+	private IntBuffer depths;
+
+	/** The start offsets of the values of nodes (one more than nodes). */
+	private IntBuffer valueStarts;
+
+	/** The value table indexes of values. */
+	private IntBuffer values;
+
+	/**
+	 * Adds a key with a value. A key may be added several times with different
+	 * values (equal values are kept once).
+	 *
+	 * @param key
+	 *            the key (not empty)
+	 * @param value
+	 *            the value
+	 */
+	public void add(String key, V value) {
+		if (root == null) {
+			throw new IllegalStateException("Automaton has been built already");
+		}
+		Node<V> node = root;
+		for (int i = 0; i < key.length(); i++) {
+			node = node.getOrAddChild(Character.toLowerCase(key.charAt(i)));
+		}
+		if (node.values == null) {
+			node.values = new ArrayList<V>(1);
+			size++;
+		}
+		if (!node.values.contains(value)) {
+			node.values.add(value);
+		}
+	}
+
+	/**
+	 * Computes the failure and output links and replaces the trie by the flat
+	 * tables. Must be called once after all keys have been added.
+	 *
+	 * @return the automaton
+	 */
+	public AhoCorasickAutomaton<V> build() {
+		// number nodes in breadth-first order
+		List<Node<V>> nodes = new ArrayList<Node<V>>();
+		nodes.add(root);
+		for (int i = 0; i < nodes.size(); i++) {
+			Node<V> node = nodes.get(i);
+			node.id = i;
+			nodes.addAll(Arrays.asList(node.children));
+		}
+
+		// failure and output links (parents are linked before their children)
+		root.failure = root;
+		for (Node<V> child : root.children) {
+			child.failure = root;
+		}
+		for (int i = 1; i < nodes.size(); i++) {
+			Node<V> node = nodes.get(i);
+			for (int c = 0; c < node.labels.length; c++) {
+				Node<V> child = node.children[c];
+				Node<V> failure = node.failure;
+				Node<V> next = failure.getChild(node.labels[c]);
+				while (next == null && failure != root) {
+					failure = failure.failure;
+					next = failure.getChild(node.labels[c]);
+				}
+				child.failure = next == null ? root : next;
+				child.output = child.failure.values != null ? child.failure : child.failure.output;
+			}
+		}
+
+		// flat tables
+		char[] labelTable = new char[nodes.size()];
+		int[] firstChildTable = new int[nodes.size() + 1];
+		int[] failureTable = new int[nodes.size()];
+		int[] outputTable = new int[nodes.size()];
+		int[] depthTable = new int[nodes.size()];
+		int[] valueStartTable = new int[nodes.size() + 1];
+		List<Integer> valueList = new ArrayList<Integer>();
+		valueTable = new ArrayList<V>();
+		Map<V, Integer> valueIds = new HashMap<V, Integer>();
+		int nextChild = 1;
+		for (int i = 0; i < nodes.size(); i++) {
+			Node<V> node = nodes.get(i);
+			for (int c = 0; c < node.labels.length; c++) {
+				labelTable[nextChild + c] = node.labels[c];
+			}
+			firstChildTable[i] = nextChild;
+			nextChild += node.children.length;
+			failureTable[i] = node.failure.id;
+			outputTable[i] = node.output == null ? -1 : node.output.id;
+			depthTable[i] = node.depth;
+			valueStartTable[i] = valueList.size();
+			if (node.values != null) {
+				for (V value : node.values) {
+					Integer id = valueIds.get(value);
+					if (id == null) {
+						id = valueTable.size();
+						valueIds.put(value, id);
+						valueTable.add(value);
+					}
+					valueList.add(id);
+				}
+			}
+		}
+		firstChildTable[nodes.size()] = nextChild;
+		valueStartTable[nodes.size()] = valueList.size();
+		int[] valueIdTable = new int[valueList.size()];
+		for (int i = 0; i < valueIdTable.length; i++) {
+			valueIdTable[i] = valueList.get(i);
+		}
+
+		labels = CharBuffer.wrap(labelTable);
+		firstChildren = IntBuffer.wrap(firstChildTable);
+		failures = IntBuffer.wrap(failureTable);
+		outputs = IntBuffer.wrap(outputTable);
+		depths = IntBuffer.wrap(depthTable);
+		valueStarts = IntBuffer.wrap(valueStartTable);
+		values = IntBuffer.wrap(valueIdTable);
+		root = null;
+		return this;
+	}
+
+	/**
+	 * Finds all (possibly overlapping) occurrences of all keys.
+	 *
+	 * @param text
+	 *            the text
+	 * @return the matches, ordered by end offset
+	 */
+	public List<Match<V>> findAll(CharSequence text) {
+		if (labels == null) {
+			throw new IllegalStateException("Automaton has not been built");
+		}
+		List<Match<V>> matches = new ArrayList<Match<V>>();
+		int node = 0;
+		for (int i = 0; i < text.length(); i++) {
+			char c = Character.toLowerCase(text.charAt(i));
+			int next = getChild(node, c);
+			while (next < 0 && node != 0) {
+				node = failures.get(node);
+				next = getChild(node, c);
+			}
+			node = next < 0 ? 0 : next;
+			int match = hasValues(node) ? node : outputs.get(node);
+			for (; match >= 0; match = outputs.get(match)) {
+				matches.add(new Match<V>(i + 1 - depths.get(match), i + 1, getValues(match)));
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * Gets a child of a node (by binary search of the labels of its children).
+	 *
+	 * @param node
+	 *            the node
+	 * @param label
+	 *            the label
+	 * @return the child (-1, if there is none)
+	 */
+	private int getChild(int node, char label) {
+		int low = firstChildren.get(node);
+		int high = firstChildren.get(node + 1) - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			char midLabel = labels.get(mid);
+			if (midLabel < label) {
+				low = mid + 1;
+			} else if (midLabel > label) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Checks if a key ends at a node.
+	 *
+	 * @param node
+	 *            the node
+	 * @return true, if the node has values
+	 */
+	private boolean hasValues(int node) {
+		return valueStarts.get(node + 1) > valueStarts.get(node);
+	}
+
+	/**
+	 * Gets the values of a node.
+	 *
+	 * @param node
+	 *            the node
+	 * @return the values
+	 */
+	private List<V> getValues(int node) {
+		int start = valueStarts.get(node);
+		int end = valueStarts.get(node + 1);
+		List<V> nodeValues = new ArrayList<V>(end - start);
+		for (int v = start; v < end; v++) {
+			nodeValues.add(valueTable.get(values.get(v)));
+		}
+		return nodeValues;
+	}
+
+	/**
+	 * Writes the built automaton: the value table and the flat tables.
+	 *
+	 * @param out
+	 *            the output
+	 * @param valueEncoder
+	 *            encodes a value as string
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public void write(DataOutput out, Function<V, String> valueEncoder) throws IOException {
+		if (labels == null) {
+			throw new IllegalStateException("Automaton has not been built");
+		}
+		out.writeInt(size);
+		out.writeInt(labels.limit());
+		out.writeInt(valueTable.size());
+		out.writeInt(values.limit());
+		for (V value : valueTable) {
+			BinaryFormat.writeString(out, valueEncoder.apply(value));
+		}
+		BinaryFormat.writeChars(out, labels);
+		BinaryFormat.writeInts(out, firstChildren);
+		BinaryFormat.writeInts(out, failures);
+		BinaryFormat.writeInts(out, outputs);
+		BinaryFormat.writeInts(out, depths);
+		BinaryFormat.writeInts(out, valueStarts);
+		BinaryFormat.writeInts(out, values);
+	}
+
+	/**
+	 * Reads an automaton written by {@link #write(DataOutput, Function)}. Only
+	 * the value table is decoded, the flat tables are views of the input, which
+	 * is positioned after the automaton.
+	 *
+	 * @param <V>
+	 *            the type of values associated with keys
+	 * @param in
+	 *            the input
+	 * @param valueDecoder
+	 *            decodes a value from its string
+	 * @return the built automaton
+	 */
+	public static <V> AhoCorasickAutomaton<V> read(ByteBuffer in, Function<String, V> valueDecoder) {
+		AhoCorasickAutomaton<V> automaton = new AhoCorasickAutomaton<V>();
+		automaton.root = null;
+		automaton.size = in.getInt();
+		int nNodes = in.getInt();
+		int nDistinctValues = in.getInt();
+		int nValues = in.getInt();
+		automaton.valueTable = new ArrayList<V>(nDistinctValues);
+		for (int i = 0; i < nDistinctValues; i++) {
+			automaton.valueTable.add(valueDecoder.apply(BinaryFormat.readString(in)));
+		}
+		automaton.labels = BinaryFormat.readChars(in, nNodes);
+		automaton.firstChildren = BinaryFormat.readInts(in, nNodes + 1);
+		automaton.failures = BinaryFormat.readInts(in, nNodes);
+		automaton.outputs = BinaryFormat.readInts(in, nNodes);
+		automaton.depths = BinaryFormat.readInts(in, nNodes);
+		automaton.valueStarts = BinaryFormat.readInts(in, nNodes + 1);
+		automaton.values = BinaryFormat.readInts(in, nValues);
+		return automaton;
+	}
+
+	/**
+	 * Gets the number of distinct keys.
+	 *
+	 * @return the number of keys
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * An occurrence of a key.
+	 *
+	 * @param <V>
+	 *            the type of values associated with keys
+	 */
+	public static class Match<V> {
+
+		/** The begin offset. */
+		private final int begin;
+
+		/** The end offset (exclusive). */
+		private final int end;
+
+		/** The values of the key. */
+		private final List<V> values;
+
+		/**
+		 * Instantiates a new match.
+		 *
+		 * @param begin
+		 *            the begin offset
+		 * @param end
+		 *            the end offset
+		 * @param values
+		 *            the values of the key
+		 */
+		Match(int begin, int end, List<V> values) {
+			this.begin = begin;
+			this.end = end;
+			this.values = values;
+		}
+
+		/**
+		 * Gets the begin offset.
+		 *
+		 * @return the begin offset
+		 */
+		public int getBegin() {
+			return begin;
+		}
+
+		/**
+		 * Gets the end offset (exclusive).
+		 *
+		 * @return the end offset
+		 */
+		public int getEnd() {
+			return end;
+		}
+
+		/**
+		 * Gets the values of the key.
+		 *
+		 * @return the values
+		 */
+		public List<V> getValues() {
+			return values;
+		}
+	}
+
+	/**
+	 * A node of the trie (only used until the automaton is built). Children are
+	 * kept in arrays sorted by label, which is much more compact than a map per
+	 * node for large dictionaries.
+	 *
+	 * @param <V>
+	 *            the type of values associated with keys
+	 */
+	private static class Node<V> {
+
+		/** The labels of the children (sorted). */
+		private char[] labels = new char[0];
+
+		/** The children. */
+		private Node<V>[] children = newArray(0);
+
+		/** The depth (length of the key prefix). */
+		private final int depth;
+
+		/** The values, if a key ends at this node (null otherwise). */
+		private List<V> values;
+
+		/** The failure link (longest proper suffix in the trie). */
+		private Node<V> failure;
+
+		/** The next node on the failure chain at which a key ends. */
+		private Node<V> output;
+
+		/** The number (in breadth-first order). */
+		private int id;
+
+		/**
+		 * Instantiates a new node.
+		 *
+		 * @param depth
+		 *            the depth
+		 */
+		Node(int depth) {
+			this.depth = depth;
+		}
+
+		/**
+		 * Gets a child.
+		 *
+		 * @param label
+		 *            the label
+		 * @return the child (null, if there is none)
+		 */
+		Node<V> getChild(char label) {
+			int i = Arrays.binarySearch(labels, label);
+			return i < 0 ? null : children[i];
+		}
+
+		/**
+		 * Gets a child, which is added if necessary.
+		 *
+		 * @param label
+		 *            the label
+		 * @return the child
+		 */
+		Node<V> getOrAddChild(char label) {
+			int i = Arrays.binarySearch(labels, label);
+			if (i >= 0) {
+				return children[i];
+			}
+			i = -i - 1;
+			char[] newLabels = new char[labels.length + 1];
+			Node<V>[] newChildren = newArray(children.length + 1);
+			System.arraycopy(labels, 0, newLabels, 0, i);
+			System.arraycopy(children, 0, newChildren, 0, i);
+			System.arraycopy(labels, i, newLabels, i + 1, labels.length - i);
+			System.arraycopy(children, i, newChildren, i + 1, children.length - i);
+			newLabels[i] = label;
+			newChildren[i] = new Node<V>(depth + 1);
+			labels = newLabels;
+			children = newChildren;
+			return newChildren[i];
+		}
+
+		/**
+		 * Creates a new child array.
+		 *
+		 * @param <V>
+		 *            the type of values associated with keys
+		 * @param length
+		 *            the length
+		 * @return the array
+		 */
+		@SuppressWarnings("unchecked")
+		private static <V> Node<V>[] newArray(int length) {
+			return (Node<V>[]) new Node<?>[length];
+		}
+	}
+
+}
@@ -0,0 +1,132 @@
+package uhh_lt.newsleak.util;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Reads and writes binary files which are written with a DataOutput and used
+ * from a (memory-mapped) ByteBuffer. Values are big-endian, the default byte
+ * order of both. A string is stored as its length followed by its UTF-16
+ * chars. Tables of ints or chars are not copied when read, but used as views of
+ * the buffer.
+ */
+public class BinaryFormat {
+
+	/**
+	 * Writes a string.
+	 *
+	 * @param out
+	 *            the output
+	 * @param s
+	 *            the string
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public static void writeString(DataOutput out, String s) throws IOException {
+		out.writeInt(s.length());
+		out.writeChars(s);
+	}
+
+	/**
+	 * Reads a string.
+	 *
+	 * @param in
+	 *            the input
+	 * @return the string
+	 */
+	public static String readString(ByteBuffer in) {
+		char[] chars = new char[in.getInt()];
+		in.asCharBuffer().get(chars);
+		in.position(in.position() + 2 * chars.length);
+		return new String(chars);
+	}
+
+	/**
+	 * Writes a table of ints.
+	 *
+	 * @param out
+	 *            the output
+	 * @param table
+	 *            the table
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public static void writeInts(DataOutput out, IntBuffer table) throws IOException {
+		for (int i = 0; i < table.limit(); i++) {
+			out.writeInt(table.get(i));
+		}
+	}
+
+	/**
+	 * Writes a table of chars.
+	 *
+	 * @param out
+	 *            the output
+	 * @param table
+	 *            the table
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public static void writeChars(DataOutput out, CharBuffer table) throws IOException {
+		for (int i = 0; i < table.limit(); i++) {
+			out.writeChar(table.get(i));
+		}
+	}
+
+	/**
+	 * Gets a table of ints as a view of the input, which is positioned after the
+	 * table.
+	 *
+	 * @param in
+	 *            the input
+	 * @param length
+	 *            the number of ints
+	 * @return the table
+	 */
+	public static IntBuffer readInts(ByteBuffer in, int length) {
+		IntBuffer table = in.asIntBuffer();
+		table.limit(length);
+		in.position(in.position() + 4 * length);
+		return table;
+	}
+
+	/**
+	 * Gets a table of chars as a view of the input, which is positioned after the
+	 * table.
+	 *
+	 * @param in
+	 *            the input
+	 * @param length
+	 *            the number of chars
+	 * @return the table
+	 */
+	public static CharBuffer readChars(ByteBuffer in, int length) {
+		CharBuffer table = in.asCharBuffer();
+		table.limit(length);
+		in.position(in.position() + 2 * length);
+		return table;
+	}
+
+	/**
+	 * Gets a string from a table of chars (without changing the table position).
+	 *
+	 * @param table
+	 *            the table
+	 * @param start
+	 *            the start of the string
+	 * @param end
+	 *            the end of the string (exclusive)
+	 * @return the string
+	 */
+	public static String getString(CharBuffer table, int start, int end) {
+		char[] chars = new char[end - start];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = table.get(start + i);
+		}
+		return new String(chars);
+	}
+
+}
@@ -0,0 +1,203 @@
+package uhh_lt.newsleak.util;
+
+/**
+ * Decides when a db transaction is committed and keeps statistics of the
+ * observed commit latencies.
+ *
+ * A transaction is committed as soon as one of the budgets is exhausted: the
+ * number of documents, the number of rows, the (estimated) number of buffered
+ * bytes, or the time since the last commit. A budget of 0 (or less) is
+ * disabled. Budgets by size keep transactions small for very large documents,
+ * while the document and time budgets avoid needless commits (and fsyncs) for
+ * many small documents.
+ *
+ * One policy can be shared by several sessions: each session tracks its own
+ * pending transaction, while latencies are collected for all sessions.
+ */
+public class CommitPolicy {
+
+	/** The number of latency histogram buckets (powers of two of milliseconds). */
+	private static final int N_BUCKETS = 32;
+
+	/** The maximum number of documents per transaction. */
+	private final int maxDocuments;
+
+	/** The maximum number of rows per transaction. */
+	private final long maxRows;
+
+	/** The maximum number of bytes per transaction. */
+	private final long maxBytes;
+
+	/** The maximum time in milliseconds between two commits. */
+	private final long maxMillis;
+
+	/** The number of commits. */
+	private long commits = 0;
+
+	/** The number of committed documents. */
+	private long committedDocuments = 0;
+
+	/** The number of committed bytes. */
+	private long committedBytes = 0;
+
+	/** The total commit latency in nanoseconds. */
+	private long totalNanos = 0;
+
+	/** The maximum commit latency in nanoseconds. */
+	private long maxNanos = 0;
+
+	/** The commit latency histogram (bucket i counts latencies below 2^i ms). */
+	private final long[] histogram = new long[N_BUCKETS];
+
+	/**
+	 * Instantiates a new commit policy.
+	 *
+	 * @param maxDocuments
+	 *            the maximum number of documents per transaction
+	 * @param maxRows
+	 *            the maximum number of rows per transaction
+	 * @param maxBytes
+	 *            the maximum number of bytes per transaction
+	 * @param maxMillis
+	 *            the maximum time in milliseconds between two commits
+	 */
+	public CommitPolicy(int maxDocuments, long maxRows, long maxBytes, long maxMillis) {
+		this.maxDocuments = maxDocuments;
+		this.maxRows = maxRows;
+		this.maxBytes = maxBytes;
+		this.maxMillis = maxMillis;
+	}
+
+	/**
+	 * Checks if a pending transaction should be committed.
+	 *
+	 * @param documents
+	 *            the number of pending documents
+	 * @param rows
+	 *            the number of pending rows
+	 * @param bytes
+	 *            the number of pending bytes
+	 * @param millis
+	 *            the time in milliseconds since the last commit
+	 * @return true, if one of the budgets is exhausted
+	 */
+	public boolean isCommitDue(int documents, long rows, long bytes, long millis) {
+		if (documents == 0) {
+			return false;
+		}
+		return (maxDocuments > 0 && documents >= maxDocuments) || (maxRows > 0 && rows >= maxRows)
+				|| (maxBytes > 0 && bytes >= maxBytes) || (maxMillis > 0 && millis >= maxMillis);
+	}
+
+	/**
+	 * Records a commit.
+	 *
+	 * @param documents
+	 *            the number of committed documents
+	 * @param bytes
+	 *            the number of committed bytes
+	 * @param nanos
+	 *            the latency of the commit in nanoseconds
+	 */
+	public synchronized void recordCommit(int documents, long bytes, long nanos) {
+		commits++;
+		committedDocuments += documents;
+		committedBytes += bytes;
+		totalNanos += nanos;
+		maxNanos = Math.max(maxNanos, nanos);
+		long millis = nanos / 1000000;
+		int bucket = 0;
+		while (bucket < N_BUCKETS - 1 && millis >= (1L << bucket)) {
+			bucket++;
+		}
+		histogram[bucket]++;
+	}
+
+	/**
+	 * Gets the number of commits.
+	 *
+	 * @return the number of commits
+	 */
+	public synchronized long getCommits() {
+		return commits;
+	}
+
+	/**
+	 * Gets the mean commit latency.
+	 *
+	 * @return the mean latency in milliseconds
+	 */
+	public synchronized double getMeanLatency() {
+		return commits == 0 ? 0 : totalNanos / 1000000.0 / commits;
+	}
+
+	/**
+	 * Gets the maximum commit latency.
+	 *
+	 * @return the maximum latency in milliseconds
+	 */
+	public synchronized double getMaxLatency() {
+		return maxNanos / 1000000.0;
+	}
+
+	/**
+	 * Gets an upper bound of a commit latency percentile (with a precision of
+	 * powers of two).
+	 *
+	 * @param percentile
+	 *            the percentile (between 0 and 100)
+	 * @return the latency in milliseconds below which the given percentage of
+	 *         commits finished
+	 */
+	public synchronized long getLatencyPercentile(double percentile) {
+		long rank = (long) Math.ceil(commits * percentile / 100.0);
+		long n = 0;
+		for (int i = 0; i < N_BUCKETS; i++) {
+			n += histogram[i];
+			if (n >= rank) {
+				return 1L << i;
+			}
+		}
+		return 1L << (N_BUCKETS - 1);
+	}
+
+	/**
+	 * Describes the observed commits.
+	 *
+	 * @return the commit statistics
+	 */
+	public synchronized String getStatistics() {
+		if (commits == 0) {
+			return "no commits";
+		}
+		return String.format("%d commits, %.1f documents and %d KB per commit, latency mean %.1f ms, "
+				+ "p50 < %d ms, p95 < %d ms, p99 < %d ms, max %.1f ms", commits, committedDocuments / (double) commits,
+				committedBytes / commits / 1024, getMeanLatency(), getLatencyPercentile(50),
+				getLatencyPercentile(95), getLatencyPercentile(99), getMaxLatency());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "commit after " + describe(maxDocuments, " documents") + ", " + describe(maxRows, " rows") + ", "
+				+ describe(maxBytes, " bytes") + " or " + describe(maxMillis, " ms");
+	}
+
+	/**
+	 * Describes a budget.
+	 *
+	 * @param budget
+	 *            the budget
+	 * @param unit
+	 *            the unit
+	 * @return the description
+	 */
+	private static String describe(long budget, String unit) {
+		return budget > 0 ? budget + unit : "unlimited" + unit;
+	}
+
+}
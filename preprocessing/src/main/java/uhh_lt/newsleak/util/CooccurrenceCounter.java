@@ -0,0 +1,329 @@
+package uhh_lt.newsleak.util;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts co-occurrences of entity pairs within context units (e.g. documents
+ * or sentences), together with the number of units each single entity occurs
+ * in. From these counts, a log-likelihood significance can be computed for
+ * each pair.
+ *
+ * Counts are kept in primitive long-keyed hash maps (a pair of entity ids w1 &lt;
+ * w2 is packed into one long key) to avoid boxing millions of pairs. The maps
+ * are split into shards with separate locks, so many threads can add units
+ * concurrently.
+ */
+public class CooccurrenceCounter {
+
+	/** The number of shards. */
+	private static final int N_SHARDS = 64;
+
+	/** The pair counts, sharded by key. */
+	private final LongIntHashMap[] pairShards;
+
+	/** The single entity counts, sharded by key. */
+	private final LongIntHashMap[] singleShards;
+
+	/** The number of counted units. */
+	private final AtomicLong units = new AtomicLong(0);
+
+	/**
+	 * Instantiates a new, empty co-occurrence counter.
+	 */
+	public CooccurrenceCounter() {
+		pairShards = new LongIntHashMap[N_SHARDS];
+		singleShards = new LongIntHashMap[N_SHARDS];
+		for (int i = 0; i < N_SHARDS; i++) {
+			pairShards[i] = new LongIntHashMap();
+			singleShards[i] = new LongIntHashMap();
+		}
+	}
+
+	/**
+	 * Adds a context unit. Each distinct entity is counted once, and each
+	 * distinct pair of entities is counted once.
+	 *
+	 * @param entityIds
+	 *            the ids of the entities in the unit (may contain duplicates)
+	 */
+	public void addUnit(int[] entityIds) {
+		int[] ids = distinct(entityIds);
+		units.incrementAndGet();
+		for (int i = 0; i < ids.length; i++) {
+			add(singleShards, ids[i], 1);
+			for (int j = i + 1; j < ids.length; j++) {
+				add(pairShards, getKey(ids[i], ids[j]), 1);
+			}
+		}
+	}
+
+	/**
+	 * Adds to the number of counted units.
+	 *
+	 * @param n
+	 *            the number of units
+	 */
+	public void addUnits(long n) {
+		units.addAndGet(n);
+	}
+
+	/**
+	 * Gets the number of counted units.
+	 *
+	 * @return the number of units
+	 */
+	public long getUnits() {
+		return units.get();
+	}
+
+	/**
+	 * Passes each pair with its frequency and log-likelihood significance to the
+	 * consumer. Must not run concurrently with adding units.
+	 *
+	 * @param consumer
+	 *            the consumer
+	 */
+	public void forEachPair(PairConsumer consumer) {
+		long n = units.get();
+		for (LongIntHashMap shard : pairShards) {
+			synchronized (shard) {
+				for (int i = 0; i < shard.keys.length; i++) {
+					long key = shard.keys[i];
+					if (key == 0) {
+						continue;
+					}
+					int w1 = (int) (key >>> 32);
+					int w2 = (int) key;
+					int k = shard.values[i];
+					double sig = logLikelihood(n, getSingle(w1), getSingle(w2), k);
+					consumer.accept(w1, w2, k, sig);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of units an entity occurs in.
+	 *
+	 * @param id
+	 *            the entity id
+	 * @return the frequency
+	 */
+	private int getSingle(int id) {
+		LongIntHashMap shard = singleShards[getShard(id)];
+		synchronized (shard) {
+			return shard.get(id);
+		}
+	}
+
+	/**
+	 * Computes the log-likelihood ratio (Dunning 1993) of a pair.
+	 *
+	 * @param n
+	 *            the number of units
+	 * @param a
+	 *            the number of units containing the first entity
+	 * @param b
+	 *            the number of units containing the second entity
+	 * @param k
+	 *            the number of units containing both entities
+	 * @return the significance
+	 */
+	static double logLikelihood(long n, long a, long b, long k) {
+		double ll = xlogx(k) + xlogx(a - k) + xlogx(b - k) + xlogx(n - a - b + k) - xlogx(a) - xlogx(b)
+				- xlogx(n - a) - xlogx(n - b) + xlogx(n);
+		return 2 * ll;
+	}
+
+	/**
+	 * x * ln(x), with 0 for x = 0.
+	 *
+	 * @param x
+	 *            the x
+	 * @return the result
+	 */
+	private static double xlogx(long x) {
+		return x <= 0 ? 0 : x * Math.log(x);
+	}
+
+	/**
+	 * Adds to the value of a key in the responsible shard.
+	 *
+	 * @param shards
+	 *            the shards
+	 * @param key
+	 *            the key
+	 * @param delta
+	 *            the delta
+	 */
+	private static void add(LongIntHashMap[] shards, long key, int delta) {
+		LongIntHashMap shard = shards[getShard(key)];
+		synchronized (shard) {
+			shard.add(key, delta);
+		}
+	}
+
+	/**
+	 * Gets the shard of a key.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the shard index
+	 */
+	private static int getShard(long key) {
+		return (int) ((mix(key) >>> 32) & (N_SHARDS - 1));
+	}
+
+	/**
+	 * Packs a pair of entity ids (w1 &lt; w2) into one key.
+	 *
+	 * @param w1
+	 *            the first entity id
+	 * @param w2
+	 *            the second entity id
+	 * @return the key
+	 */
+	private static long getKey(int w1, int w2) {
+		return ((long) w1 << 32) | (w2 & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Sorts the ids and removes duplicates.
+	 *
+	 * @param ids
+	 *            the ids
+	 * @return the distinct ids in ascending order
+	 */
+	private static int[] distinct(int[] ids) {
+		int[] sorted = ids.clone();
+		Arrays.sort(sorted);
+		int n = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if (i == 0 || sorted[i] != sorted[i - 1]) {
+				sorted[n++] = sorted[i];
+			}
+		}
+		return Arrays.copyOf(sorted, n);
+	}
+
+	/**
+	 * Scrambles the bits of a key (murmur3 finalizer).
+	 *
+	 * @param key
+	 *            the key
+	 * @return the hash
+	 */
+	private static long mix(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return key;
+	}
+
+	/**
+	 * Receives the pairs of a co-occurrence counter.
+	 */
+	public interface PairConsumer {
+
+		/**
+		 * Accepts a pair.
+		 *
+		 * @param w1
+		 *            the first entity id
+		 * @param w2
+		 *            the second entity id
+		 * @param frequency
+		 *            the number of units containing both entities
+		 * @param sig
+		 *            the log-likelihood significance
+		 */
+		void accept(int w1, int w2, int frequency, double sig);
+	}
+
+	/**
+	 * An open addressing hash map from long keys (other than 0) to int values.
+	 * The map is not thread-safe.
+	 */
+	private static class LongIntHashMap {
+
+		/** The keys (0 marks an empty slot). */
+		long[] keys = new long[1024];
+
+		/** The values. */
+		int[] values = new int[1024];
+
+		/** The number of keys. */
+		int size = 0;
+
+		/**
+		 * Adds to the value of a key.
+		 *
+		 * @param key
+		 *            the key
+		 * @param delta
+		 *            the delta
+		 */
+		void add(long key, int delta) {
+			if (size * 4 >= keys.length * 3) {
+				grow();
+			}
+			int slot = find(keys, key);
+			if (keys[slot] == 0) {
+				keys[slot] = key;
+				size++;
+			}
+			values[slot] += delta;
+		}
+
+		/**
+		 * Gets the value of a key.
+		 *
+		 * @param key
+		 *            the key
+		 * @return the value (0, if the key is unknown)
+		 */
+		int get(long key) {
+			int slot = find(keys, key);
+			return keys[slot] == 0 ? 0 : values[slot];
+		}
+
+		/**
+		 * Doubles the capacity.
+		 */
+		private void grow() {
+			long[] oldKeys = keys;
+			int[] oldValues = values;
+			keys = new long[oldKeys.length * 2];
+			values = new int[oldValues.length * 2];
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != 0) {
+					int slot = find(keys, oldKeys[i]);
+					keys[slot] = oldKeys[i];
+					values[slot] = oldValues[i];
+				}
+			}
+		}
+
+		/**
+		 * Finds the slot of a key, or the empty slot where it would be inserted.
+		 *
+		 * @param keys
+		 *            the key table
+		 * @param key
+		 *            the key
+		 * @return the slot
+		 */
+		private static int find(long[] keys, long key) {
+			int mask = keys.length - 1;
+			int slot = (int) mix(key) & mask;
+			while (keys[slot] != 0 && keys[slot] != key) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+	}
+
+}
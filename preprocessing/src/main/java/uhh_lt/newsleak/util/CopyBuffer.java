@@ -0,0 +1,156 @@
+package uhh_lt.newsleak.util;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.SQLException;
+
+import org.postgresql.copy.CopyManager;
+
+/**
+ * A bounded in-memory buffer of rows for a single postgres table. Rows are
+ * serialized in the text format of the postgres COPY command and streamed to
+ * the database in one COPY ... FROM STDIN round trip once the buffer is
+ * flushed.
+ *
+ * The buffer is not thread-safe. Callers either own the buffer exclusively or
+ * synchronize access to it.
+ */
+public class CopyBuffer {
+
+	/** The COPY statement for the target table. */
+	private final String copySql;
+
+	/** The buffered rows in COPY text format. */
+	private StringBuilder buffer;
+
+	/** The number of buffered rows. */
+	private int rowCount = 0;
+
+	/** The time of the last flush in milliseconds. */
+	private long lastFlush;
+
+	/**
+	 * Instantiates a new copy buffer.
+	 *
+	 * @param table
+	 *            the target table
+	 * @param columns
+	 *            the target columns in the order values are added
+	 */
+	public CopyBuffer(String table, String... columns) {
+		this.copySql = "COPY " + table + " (" + String.join(", ", columns) + ") FROM STDIN";
+		this.buffer = new StringBuilder();
+		this.lastFlush = System.currentTimeMillis();
+	}
+
+	/**
+	 * Adds a row to the buffer. Null values are written as SQL NULL.
+	 *
+	 * @param values
+	 *            the column values
+	 */
+	public void addRow(Object... values) {
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				buffer.append('\t');
+			}
+			appendValue(values[i]);
+		}
+		buffer.append('\n');
+		rowCount++;
+	}
+
+	/**
+	 * Appends a single escaped value in COPY text format.
+	 *
+	 * @param value
+	 *            the value
+	 */
+	private void appendValue(Object value) {
+		if (value == null) {
+			buffer.append("\\N");
+			return;
+		}
+		String s = value.toString();
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '\\':
+				buffer.append("\\\\");
+				break;
+			case '\t':
+				buffer.append("\\t");
+				break;
+			case '\n':
+				buffer.append("\\n");
+				break;
+			case '\r':
+				buffer.append("\\r");
+				break;
+			case '\u0000':
+				// postgres does not accept null characters in text values
+				break;
+			default:
+				buffer.append(c);
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of buffered rows.
+	 *
+	 * @return the row count
+	 */
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Gets the number of buffered characters.
+	 *
+	 * @return the size of the buffer
+	 */
+	public int getSize() {
+		return buffer.length();
+	}
+
+	/**
+	 * Checks if the buffer should be flushed, i.e. if it exceeds the given size or
+	 * has not been flushed for the given time.
+	 *
+	 * @param maxSize
+	 *            the maximum number of buffered characters
+	 * @param maxMillis
+	 *            the maximum time between two flushes in milliseconds
+	 * @return true, if a flush is due
+	 */
+	public boolean isFlushDue(int maxSize, long maxMillis) {
+		if (rowCount == 0) {
+			return false;
+		}
+		return buffer.length() >= maxSize || System.currentTimeMillis() - lastFlush >= maxMillis;
+	}
+
+	/**
+	 * Streams all buffered rows to the database and empties the buffer.
+	 *
+	 * @param copyManager
+	 *            the copy manager of the connection to write to
+	 * @return the number of rows written
+	 * @throws SQLException
+	 *             the SQL exception
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public long flush(CopyManager copyManager) throws SQLException, IOException {
+		long n = 0;
+		if (rowCount > 0) {
+			n = copyManager.copyIn(copySql, new StringReader(buffer.toString()));
+			buffer = new StringBuilder();
+			rowCount = 0;
+		}
+		lastFlush = System.currentTimeMillis();
+		return n;
+	}
+
+}
@@ -0,0 +1,102 @@
+package uhh_lt.newsleak.util;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * A forward-only server-side cursor over the rows of a query which is ordered
+ * by document id. The document id has to be the first column of the query.
+ *
+ * Several cursors over different tables can be merge-joined by visiting the
+ * same ascending sequence of document ids: rows of documents which are not
+ * visited are skipped, so a cursor never needs to go back.
+ *
+ * Postgres only streams rows (instead of fetching the complete result) if the
+ * connection is not in auto commit mode.
+ */
+public class DocidCursor {
+
+	/** The statement. */
+	private Statement statement;
+
+	/** The result set. */
+	private ResultSet resultSet;
+
+	/** True, if the result set is positioned on a row. */
+	private boolean hasRow;
+
+	/**
+	 * Opens a new cursor.
+	 *
+	 * @param connection
+	 *            the db connection (with auto commit disabled)
+	 * @param sql
+	 *            the query (first column: document id, ordered by document id)
+	 * @param fetchSize
+	 *            the number of rows fetched per round trip
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	public DocidCursor(Connection connection, String sql, int fetchSize) throws SQLException {
+		statement = connection.createStatement();
+		statement.setFetchSize(fetchSize);
+		resultSet = statement.executeQuery(sql);
+		hasRow = resultSet.next();
+	}
+
+	/**
+	 * Passes all rows of a document to the row handler. Document ids have to be
+	 * visited in ascending order.
+	 *
+	 * @param docId
+	 *            the document id
+	 * @param rowHandler
+	 *            the row handler
+	 * @return the number of rows of the document
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	public int forEachRow(long docId, RowHandler rowHandler) throws SQLException {
+		while (hasRow && resultSet.getLong(1) < docId) {
+			hasRow = resultSet.next();
+		}
+		int n = 0;
+		while (hasRow && resultSet.getLong(1) == docId) {
+			rowHandler.accept(resultSet);
+			n++;
+			hasRow = resultSet.next();
+		}
+		return n;
+	}
+
+	/**
+	 * Closes the cursor.
+	 */
+	public void close() {
+		try {
+			resultSet.close();
+			statement.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Handles a single row of a cursor.
+	 */
+	public interface RowHandler {
+
+		/**
+		 * Accepts a row. The handler must not move the result set.
+		 *
+		 * @param resultSet
+		 *            the result set, positioned on the row
+		 * @throws SQLException
+		 *             the SQL exception
+		 */
+		void accept(ResultSet resultSet) throws SQLException;
+	}
+
+}
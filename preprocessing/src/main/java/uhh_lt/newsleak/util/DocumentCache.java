@@ -0,0 +1,213 @@
+package uhh_lt.newsleak.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.uima.util.Level;
+import org.apache.uima.util.Logger;
+
+/**
+ * A local on-disk cache of source documents, e.g. for repeated preprocessing
+ * runs on the same collection.
+ *
+ * Entries are addressed by a hash of the source id and a modification stamp
+ * (e.g. a version number of the source index), so a changed document gets a
+ * new entry and outdated entries are never read. Entries are stored gzipped,
+ * one file per document, in subdirectories named by the first two characters
+ * of the hash. A new entry is written to a temporary file and then moved into
+ * place, so a crashed run leaves no partial entries. The cache is an
+ * optimization only: an unreadable entry (e.g. a truncated file) is logged,
+ * removed and treated as missing, so the document is retrieved again.
+ */
+public class DocumentCache {
+
+	/** The cache directory. */
+	private File directory;
+
+	/** The logger. */
+	private Logger logger;
+
+	/** The number of cache hits. */
+	private AtomicLong hits = new AtomicLong(0);
+
+	/** The number of cache misses. */
+	private AtomicLong misses = new AtomicLong(0);
+
+	/**
+	 * Instantiates a new document cache.
+	 *
+	 * @param directory
+	 *            the cache directory (created if necessary)
+	 * @param logger
+	 *            the logger
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public DocumentCache(File directory, Logger logger) throws IOException {
+		this.directory = directory;
+		this.logger = logger;
+		Files.createDirectories(directory.toPath());
+	}
+
+	/**
+	 * Gets a cached document.
+	 *
+	 * @param sourceId
+	 *            the source id
+	 * @param stamp
+	 *            the modification stamp
+	 * @return the content (null, if the document is not cached or the entry is
+	 *         unreadable)
+	 */
+	public byte[] get(String sourceId, String stamp) {
+		File entry = getEntry(sourceId, stamp);
+		if (!entry.isFile()) {
+			misses.incrementAndGet();
+			return null;
+		}
+		try (InputStream in = new GZIPInputStream(new FileInputStream(entry))) {
+			ByteArrayOutputStream content = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) > 0) {
+				content.write(buffer, 0, n);
+			}
+			hits.incrementAndGet();
+			return content.toByteArray();
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Removing unreadable cache entry of " + sourceId + ": " + e.getMessage());
+			entry.delete();
+			misses.incrementAndGet();
+			return null;
+		}
+	}
+
+	/**
+	 * Removes an entry which has been read, but could not be decoded by the
+	 * caller (it is counted as miss then).
+	 *
+	 * @param sourceId
+	 *            the source id
+	 * @param stamp
+	 *            the modification stamp
+	 * @param reason
+	 *            the reason (for the log)
+	 */
+	public void invalidate(String sourceId, String stamp, String reason) {
+		logger.log(Level.WARNING, "Removing undecodable cache entry of " + sourceId + ": " + reason);
+		getEntry(sourceId, stamp).delete();
+		hits.decrementAndGet();
+		misses.incrementAndGet();
+	}
+
+	/**
+	 * Gets a cached text document.
+	 *
+	 * @param sourceId
+	 *            the source id
+	 * @param stamp
+	 *            the modification stamp
+	 * @return the text (null, if the document is not cached or the entry is
+	 *         unreadable)
+	 */
+	public String getString(String sourceId, String stamp) {
+		byte[] content = get(sourceId, stamp);
+		return content == null ? null : new String(content, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Adds a document to the cache.
+	 *
+	 * @param sourceId
+	 *            the source id
+	 * @param stamp
+	 *            the modification stamp
+	 * @param content
+	 *            the content
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public void put(String sourceId, String stamp, byte[] content) throws IOException {
+		File entry = getEntry(sourceId, stamp);
+		Files.createDirectories(entry.getParentFile().toPath());
+		File tmpEntry = File.createTempFile(entry.getName(), ".tmp", entry.getParentFile());
+		try (OutputStream out = new GZIPOutputStream(new FileOutputStream(tmpEntry))) {
+			out.write(content);
+		}
+		Files.move(tmpEntry.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Adds a text document to the cache.
+	 *
+	 * @param sourceId
+	 *            the source id
+	 * @param stamp
+	 *            the modification stamp
+	 * @param text
+	 *            the text
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public void putString(String sourceId, String stamp, String text) throws IOException {
+		put(sourceId, stamp, text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Describes the cache usage so far.
+	 *
+	 * @return the statistics
+	 */
+	public String getStatistics() {
+		return "Document cache " + directory + ": " + hits.get() + " hits, " + misses.get() + " misses";
+	}
+
+	/**
+	 * Gets the file of a cache entry.
+	 *
+	 * @param sourceId
+	 *            the source id
+	 * @param stamp
+	 *            the modification stamp
+	 * @return the file
+	 */
+	private File getEntry(String sourceId, String stamp) {
+		String key = sha1(sourceId + "\u0000" + stamp);
+		return new File(new File(directory, key.substring(0, 2)), key + ".gz");
+	}
+
+	/**
+	 * Hashes a string.
+	 *
+	 * @param s
+	 *            the string
+	 * @return the hex encoded SHA-1 hash
+	 */
+	private static String sha1(String s) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(s.getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder();
+			for (byte b : digest) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
@@ -0,0 +1,231 @@
+package uhh_lt.newsleak.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.uima.util.Level;
+import org.apache.uima.util.Logger;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+
+/**
+ * A thread-safe sink for index requests which are sent to elasticsearch in
+ * asynchronous bulk requests (based on the elasticsearch @see
+ * org.elasticsearch.action.bulk.BulkProcessor).
+ *
+ * A bulk request is sent as soon as it contains a maximum number of requests
+ * or exceeds a maximum payload size. Several bulk requests may be in flight
+ * at the same time. Items rejected by elasticsearch because its bulk queue is
+ * full are retried with exponential backoff. All other failures are counted
+ * (by status and reason) and reported once the sink is closed.
+ */
+public class ElasticsearchBulkSink {
+
+	/** The maximum number of failed document ids kept for the failure report. */
+	private static final int MAX_REPORTED_IDS = 20;
+
+	/** The initial delay before a rejected bulk request is retried. */
+	private static final TimeValue BACKOFF_INITIAL_DELAY = TimeValue.timeValueMillis(100);
+
+	/** The maximum number of retries of a rejected bulk request. */
+	private static final int BACKOFF_MAX_RETRIES = 8;
+
+	/** The logger. */
+	private Logger logger;
+
+	/** The bulk processor. */
+	private BulkProcessor bulkProcessor;
+
+	/** The number of requests added to the sink. */
+	private AtomicLong added = new AtomicLong(0);
+
+	/** The number of successfully indexed requests. */
+	private AtomicLong indexed = new AtomicLong(0);
+
+	/** The number of failed requests. */
+	private AtomicLong failed = new AtomicLong(0);
+
+	/** The number of failed requests per status and reason. */
+	private Map<String, Long> failureCounts = new TreeMap<String, Long>();
+
+	/** Ids of failed requests (the first few only). */
+	private List<String> failedIds = new ArrayList<String>();
+
+	/**
+	 * Instantiates a new bulk sink.
+	 *
+	 * @param client
+	 *            the elasticsearch client
+	 * @param bulkActions
+	 *            the maximum number of requests per bulk request
+	 * @param bulkSizeMb
+	 *            the maximum payload size of a bulk request in MB
+	 * @param concurrentRequests
+	 *            the number of bulk requests in flight while new requests are
+	 *            collected (0 = synchronous)
+	 * @param logger
+	 *            the logger
+	 */
+	public ElasticsearchBulkSink(Client client, int bulkActions, int bulkSizeMb, int concurrentRequests,
+			Logger logger) {
+		this.logger = logger;
+		this.bulkProcessor = BulkProcessor.builder(client, new BulkProcessor.Listener() {
+
+			@Override
+			public void beforeBulk(long executionId, BulkRequest request) {
+				logger.log(Level.FINEST, "Sending bulk request " + executionId + " (" + request.numberOfActions()
+						+ " requests, " + request.estimatedSizeInBytes() + " bytes)");
+			}
+
+			@Override
+			public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+				long nFailed = 0;
+				if (response.hasFailures()) {
+					for (BulkItemResponse item : response.getItems()) {
+						if (item.isFailed()) {
+							nFailed++;
+							addFailure(item.getId(), item.getFailure().getStatus() + " " + getReason(item));
+						}
+					}
+				}
+				indexed.addAndGet(request.numberOfActions() - nFailed);
+				failed.addAndGet(nFailed);
+				logger.log(Level.FINE, "Bulk request " + executionId + " took " + response.getTookInMillis()
+						+ " ms (" + nFailed + " failures)");
+			}
+
+			@Override
+			public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+				failed.addAndGet(request.numberOfActions());
+				logger.log(Level.SEVERE, "Bulk request " + executionId + " failed: " + failure.getMessage());
+				synchronized (ElasticsearchBulkSink.this) {
+					failureCounts.merge("request failed: " + failure.getClass().getSimpleName(),
+							(long) request.numberOfActions(), Long::sum);
+				}
+			}
+		}).setBulkActions(bulkActions).setBulkSize(new ByteSizeValue(bulkSizeMb, ByteSizeUnit.MB))
+				.setConcurrentRequests(concurrentRequests)
+				.setBackoffPolicy(BackoffPolicy.exponentialBackoff(BACKOFF_INITIAL_DELAY, BACKOFF_MAX_RETRIES))
+				.build();
+	}
+
+	/**
+	 * Adds an index request. Blocks while the maximum number of bulk requests is
+	 * in flight.
+	 *
+	 * @param request
+	 *            the request
+	 */
+	public void add(IndexRequest request) {
+		added.incrementAndGet();
+		bulkProcessor.add(request);
+	}
+
+	/**
+	 * Sends the collected requests without waiting for the response.
+	 */
+	public void flush() {
+		bulkProcessor.flush();
+	}
+
+	/**
+	 * Sends the collected requests, waits for all bulk requests in flight and
+	 * logs the failure report. The sink cannot be used afterwards.
+	 *
+	 * @param timeout
+	 *            the maximum time to wait in seconds
+	 * @return true, if all bulk requests finished in time
+	 * @throws InterruptedException
+	 *             the interrupted exception
+	 */
+	public boolean close(long timeout) throws InterruptedException {
+		boolean finished = bulkProcessor.awaitClose(timeout, TimeUnit.SECONDS);
+		if (!finished) {
+			logger.log(Level.SEVERE, "Bulk requests did not finish within " + timeout + " seconds");
+		}
+		if (failed.get() > 0) {
+			logger.log(Level.SEVERE, getFailureReport());
+		} else {
+			logger.log(Level.INFO, indexed.get() + " of " + added.get() + " requests indexed without failures");
+		}
+		return finished;
+	}
+
+	/**
+	 * Gets the number of successfully indexed requests.
+	 *
+	 * @return the number of indexed requests
+	 */
+	public long getIndexed() {
+		return indexed.get();
+	}
+
+	/**
+	 * Gets the number of failed requests.
+	 *
+	 * @return the number of failed requests
+	 */
+	public long getFailed() {
+		return failed.get();
+	}
+
+	/**
+	 * Describes all failures so far.
+	 *
+	 * @return the failure report
+	 */
+	public synchronized String getFailureReport() {
+		StringBuilder report = new StringBuilder();
+		report.append(failed.get()).append(" of ").append(added.get()).append(" requests failed");
+		for (Map.Entry<String, Long> failureCount : failureCounts.entrySet()) {
+			report.append("\n  ").append(failureCount.getValue()).append(" x ").append(failureCount.getKey());
+		}
+		if (!failedIds.isEmpty()) {
+			report.append("\n  failed ids: ").append(String.join(", ", failedIds));
+			if (failed.get() > failedIds.size()) {
+				report.append(", ...");
+			}
+		}
+		return report.toString();
+	}
+
+	/**
+	 * Records a failed item.
+	 *
+	 * @param id
+	 *            the document id
+	 * @param reason
+	 *            the status and reason
+	 */
+	private synchronized void addFailure(String id, String reason) {
+		failureCounts.merge(reason, 1L, Long::sum);
+		if (failedIds.size() < MAX_REPORTED_IDS) {
+			failedIds.add(id);
+		}
+	}
+
+	/**
+	 * Gets the reason of a failed item (without document specific details).
+	 *
+	 * @param item
+	 *            the item
+	 * @return the reason
+	 */
+	private static String getReason(BulkItemResponse item) {
+		Throwable cause = item.getFailure().getCause();
+		return cause == null ? item.getFailureMessage() : cause.getClass().getSimpleName();
+	}
+
+}
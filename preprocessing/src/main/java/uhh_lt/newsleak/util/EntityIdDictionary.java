@@ -0,0 +1,228 @@
+package uhh_lt.newsleak.util;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.postgresql.copy.CopyManager;
+import org.postgresql.core.BaseConnection;
+
+/**
+ * A concurrent in-memory dictionary mapping (name, type) pairs of entities to
+ * their ids in the newsleak entity table. Ids are assigned in memory, and
+ * frequency increments are aggregated until the dictionary is flushed. A
+ * flush writes all new entities and the aggregated frequency deltas of known
+ * entities to the database in bulk.
+ *
+ * Lookups never touch the database, so annotation threads do not block on
+ * database round trips for each entity.
+ */
+public class EntityIdDictionary {
+
+	/** The temporary table holding frequency deltas during a flush. */
+	private static final String TABLE_FREQUENCY_DELTA = "entityfrequencydelta";
+
+	/** The entity table. */
+	private final String entityTable;
+
+	/** The entities by key (type and name). */
+	private final ConcurrentHashMap<String, Entry> entities;
+
+	/** Entries with pending frequency deltas or not yet written to the db. */
+	private final ConcurrentLinkedQueue<Entry> dirtyEntries;
+
+	/** The last assigned id. */
+	private final AtomicInteger maxId;
+
+	/**
+	 * Instantiates a new, empty entity id dictionary.
+	 *
+	 * @param entityTable
+	 *            the entity table
+	 */
+	public EntityIdDictionary(String entityTable) {
+		this.entityTable = entityTable;
+		this.entities = new ConcurrentHashMap<String, Entry>();
+		this.dirtyEntries = new ConcurrentLinkedQueue<Entry>();
+		this.maxId = new AtomicInteger(0);
+	}
+
+	/**
+	 * Loads all entities already stored in the entity table (e.g. from the
+	 * processing of a previous language).
+	 *
+	 * @param connection
+	 *            the db connection
+	 * @return the number of loaded entities
+	 * @throws SQLException
+	 *             the SQL exception
+	 */
+	public int load(Connection connection) throws SQLException {
+		int n = 0;
+		Statement st = connection.createStatement();
+		st.setFetchSize(10000);
+		ResultSet rs = st.executeQuery("SELECT id, name, type FROM " + entityTable);
+		while (rs.next()) {
+			int id = rs.getInt(1);
+			String name = rs.getString(2);
+			String type = rs.getString(3);
+			Entry entry = new Entry(id, name, type);
+			entry.persisted = true;
+			entities.put(getKey(name, type), entry);
+			if (id > maxId.get()) {
+				maxId.set(id);
+			}
+			n++;
+		}
+		rs.close();
+		st.close();
+		return n;
+	}
+
+	/**
+	 * Gets the id of an entity and adds to its frequency. Unknown entities get a
+	 * new id assigned.
+	 *
+	 * @param name
+	 *            the name
+	 * @param type
+	 *            the type
+	 * @param frequency
+	 *            the frequency to add
+	 * @return the entity id
+	 */
+	public int getId(String name, String type, int frequency) {
+		String cleanName = name.replaceAll("\u0000", "");
+		Entry entry = entities.computeIfAbsent(getKey(cleanName, type),
+				k -> new Entry(maxId.incrementAndGet(), cleanName, type));
+		if (entry.delta.getAndAdd(frequency) == 0) {
+			// first increment since the last flush
+			dirtyEntries.add(entry);
+		}
+		return entry.id;
+	}
+
+	/**
+	 * Gets the number of entities in the dictionary.
+	 *
+	 * @return the size
+	 */
+	public int size() {
+		return entities.size();
+	}
+
+	/**
+	 * Writes new entities and aggregated frequency deltas to the entity table.
+	 * New entities are inserted via COPY, frequencies of known entities are
+	 * updated in one statement from a temporary table. The caller is
+	 * responsible for committing the transaction.
+	 *
+	 * @param connection
+	 *            the db connection
+	 * @return the number of written entities
+	 * @throws SQLException
+	 *             the SQL exception
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public synchronized int flush(Connection connection) throws SQLException, IOException {
+		CopyBuffer newEntities = new CopyBuffer(entityTable, "id", "name", "type", "frequency");
+		CopyBuffer frequencyDeltas = new CopyBuffer(TABLE_FREQUENCY_DELTA, "id", "delta");
+
+		Entry entry;
+		while ((entry = dirtyEntries.poll()) != null) {
+			int delta = entry.delta.getAndSet(0);
+			if (!entry.persisted) {
+				newEntities.addRow(entry.id, entry.name, entry.type, delta);
+				entry.persisted = true;
+			} else if (delta > 0) {
+				frequencyDeltas.addRow(entry.id, delta);
+			}
+		}
+
+		int n = newEntities.getRowCount() + frequencyDeltas.getRowCount();
+		if (n == 0) {
+			return 0;
+		}
+
+		CopyManager copyManager = new CopyManager((BaseConnection) connection);
+		Statement st = connection.createStatement();
+		if (newEntities.getRowCount() > 0) {
+			newEntities.flush(copyManager);
+			// keep the serial sequence in sync with ids assigned in memory
+			PreparedStatement setval = connection
+					.prepareStatement("SELECT setval(pg_get_serial_sequence('" + entityTable + "', 'id'), ?)");
+			setval.setInt(1, Math.max(maxId.get(), 1));
+			setval.execute();
+			setval.close();
+		}
+		if (frequencyDeltas.getRowCount() > 0) {
+			st.execute("CREATE TEMPORARY TABLE IF NOT EXISTS " + TABLE_FREQUENCY_DELTA
+					+ " (id integer, delta integer) ON COMMIT DELETE ROWS");
+			frequencyDeltas.flush(copyManager);
+			st.executeUpdate("UPDATE " + entityTable + " AS e SET frequency = e.frequency + d.delta FROM "
+					+ TABLE_FREQUENCY_DELTA + " AS d WHERE e.id = d.id");
+			st.execute("TRUNCATE " + TABLE_FREQUENCY_DELTA);
+		}
+		st.close();
+		return n;
+	}
+
+	/**
+	 * Gets the dictionary key of an entity.
+	 *
+	 * @param name
+	 *            the name
+	 * @param type
+	 *            the type
+	 * @return the key
+	 */
+	private static String getKey(String name, String type) {
+		// names are stripped of null characters, so \u0000 is a safe separator
+		return type + '\u0000' + name;
+	}
+
+	/**
+	 * A dictionary entry.
+	 */
+	private static class Entry {
+
+		/** The id. */
+		final int id;
+
+		/** The name. */
+		final String name;
+
+		/** The type. */
+		final String type;
+
+		/** The frequency not yet written to the db. */
+		final AtomicInteger delta = new AtomicInteger(0);
+
+		/** True, if the entity exists in the entity table. */
+		volatile boolean persisted = false;
+
+		/**
+		 * Instantiates a new entry.
+		 *
+		 * @param id
+		 *            the id
+		 * @param name
+		 *            the name
+		 * @param type
+		 *            the type
+		 */
+		Entry(int id, String name, String type) {
+			this.id = id;
+			this.name = name;
+			this.type = type;
+		}
+	}
+
+}
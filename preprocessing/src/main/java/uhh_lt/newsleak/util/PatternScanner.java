@@ -0,0 +1,151 @@
+package uhh_lt.newsleak.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the matches of several regular expression patterns (email addresses,
+ * URLs, IP addresses and phone numbers) in a single pass over a text.
+ *
+ * The text is split into runs which no match can cross: runs of
+ * non-whitespace characters for email addresses, URLs and phone numbers, and
+ * lines for IP addresses. Cheap character triggers select the runs which may
+ * contain a match ('@' for email addresses, "://" for URLs, '+' for phone
+ * numbers, a backslash for IP addresses). Only these runs are matched against
+ * the full patterns, with transparent and non-anchoring bounds, so the result
+ * is the same as matching each pattern against the complete text.
+ */
+public class PatternScanner {
+
+	/** Index of the email pattern. */
+	public static final int EMAIL = 0;
+
+	/** Index of the URL pattern. */
+	public static final int URL = 1;
+
+	/** Index of the IP pattern. */
+	public static final int IP = 2;
+
+	/** Index of the phone pattern. */
+	public static final int PHONE = 3;
+
+	/** The patterns (null, if disabled). */
+	private final Pattern[] patterns;
+
+	/**
+	 * Instantiates a new pattern scanner. The patterns must not match whitespace
+	 * (email, URL and phone) or line terminators (IP).
+	 *
+	 * @param email
+	 *            the email pattern (null to disable)
+	 * @param url
+	 *            the URL pattern (null to disable)
+	 * @param ip
+	 *            the IP pattern (null to disable)
+	 * @param phone
+	 *            the phone pattern (null to disable)
+	 */
+	public PatternScanner(Pattern email, Pattern url, Pattern ip, Pattern phone) {
+		this.patterns = new Pattern[] { email, url, ip, phone };
+	}
+
+	/**
+	 * Finds all matches of all enabled patterns.
+	 *
+	 * @param text
+	 *            the text
+	 * @return the matches per pattern (indexed by EMAIL, URL, IP and PHONE), each
+	 *         in text order
+	 */
+	public List<List<MatchResult>> scan(CharSequence text) {
+		List<List<MatchResult>> matches = new ArrayList<List<MatchResult>>();
+		Matcher[] matchers = new Matcher[patterns.length];
+		for (int i = 0; i < patterns.length; i++) {
+			matches.add(new ArrayList<MatchResult>());
+			if (patterns[i] != null) {
+				matchers[i] = patterns[i].matcher(text).useTransparentBounds(true).useAnchoringBounds(false);
+			}
+		}
+
+		int length = text.length();
+		int runStart = 0;
+		int lineStart = 0;
+		boolean hasAt = false;
+		boolean hasScheme = false;
+		boolean hasPlus = false;
+		boolean hasBackslash = false;
+		for (int i = 0; i <= length; i++) {
+			char c = i < length ? text.charAt(i) : '\n';
+			if (Character.isWhitespace(c) || isLineTerminator(c)) {
+				// end of run
+				if (i > runStart) {
+					if (hasAt) {
+						find(matchers[EMAIL], runStart, i, matches.get(EMAIL));
+					}
+					if (hasScheme) {
+						find(matchers[URL], runStart, i, matches.get(URL));
+					}
+					if (hasPlus) {
+						find(matchers[PHONE], runStart, i, matches.get(PHONE));
+					}
+				}
+				runStart = i + 1;
+				hasAt = hasScheme = hasPlus = false;
+				if (isLineTerminator(c)) {
+					// end of line
+					if (hasBackslash) {
+						find(matchers[IP], lineStart, i, matches.get(IP));
+					}
+					lineStart = i + 1;
+					hasBackslash = false;
+				}
+			} else if (c == '@') {
+				hasAt = true;
+			} else if (c == ':') {
+				hasScheme |= i + 2 < length && text.charAt(i + 1) == '/' && text.charAt(i + 2) == '/';
+			} else if (c == '+') {
+				hasPlus = true;
+			} else if (c == '\\') {
+				hasBackslash = true;
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * Finds all matches of a pattern in a region of the text.
+	 *
+	 * @param matcher
+	 *            the matcher (null, if the pattern is disabled)
+	 * @param start
+	 *            the start of the region
+	 * @param end
+	 *            the end of the region
+	 * @param matches
+	 *            the list the matches are added to
+	 */
+	private static void find(Matcher matcher, int start, int end, List<MatchResult> matches) {
+		if (matcher == null) {
+			return;
+		}
+		matcher.region(start, end);
+		while (matcher.find()) {
+			matches.add(matcher.toMatchResult());
+		}
+	}
+
+	/**
+	 * Checks if a character terminates a line (for the regex dot).
+	 *
+	 * @param c
+	 *            the character
+	 * @return true, if it is a line terminator
+	 */
+	private static boolean isLineTerminator(char c) {
+		return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+	}
+
+}
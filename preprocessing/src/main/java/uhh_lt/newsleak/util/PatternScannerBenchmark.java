@@ -0,0 +1,150 @@
+package uhh_lt.newsleak.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import uhh_lt.newsleak.annotator.DictionaryExtractor;
+
+/**
+ * Checks that the @see uhh_lt.newsleak.util.PatternScanner finds exactly the
+ * matches of separate full-text passes of the patterns of @see
+ * uhh_lt.newsleak.annotator.DictionaryExtractor, and compares the run times of
+ * both.
+ *
+ * Usage: PatternScannerBenchmark [number of random texts] [text files ...]
+ *
+ * Random texts are composed of fragments which trigger or end pattern matches
+ * (e.g. '@', "://", '+', backslashes, whitespace and line terminators). Text
+ * files are compared and timed as a whole. The exit code is 1, if any matches
+ * differ.
+ */
+public class PatternScannerBenchmark {
+
+	/** The patterns (indexed as in the pattern scanner). */
+	private static final Pattern[] PATTERNS = { DictionaryExtractor.REGEX_EMAIL, DictionaryExtractor.REGEX_URL,
+			DictionaryExtractor.REGEX_IP, DictionaryExtractor.REGEX_PHONE };
+
+	/** The fragments of random texts. */
+	private static final String[] FRAGMENTS = { "a", "b", "\u00dc", "\u00e9", "x.y", "@", "://", "http", "https",
+			"ftp", "file", " ", "\n", "\t", "\r", "\u2028", "\u2029", "\u0085", "\u00a0", "+", "49", "1", "255",
+			"\\", "\\ ", "\\.", ".", "-", "_", "de", "com", "/", "?", "=", "%", "12345678", "\ud835\udc00", ":",
+			"//" };
+
+	/** The sample text for timing (if no text files are given). */
+	private static final String SAMPLE_LINE = "Lorem ipsum dolor sit amet, mail foo.bar@example.org "
+			+ "or see https://example.com/a?b=c, call +4940123456\n";
+
+	/**
+	 * The main method.
+	 *
+	 * @param args
+	 *            the number of random texts (default 100000) and text files
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public static void main(String[] args) throws IOException {
+		PatternScanner scanner = new PatternScanner(PATTERNS[PatternScanner.EMAIL], PATTERNS[PatternScanner.URL],
+				PATTERNS[PatternScanner.IP], PATTERNS[PatternScanner.PHONE]);
+		int nRandomTexts = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+
+		// equal matches for random texts
+		Random random = new Random(42);
+		long nMatches = 0;
+		for (int i = 0; i < nRandomTexts; i++) {
+			StringBuilder text = new StringBuilder();
+			for (int length = random.nextInt(40); length > 0; length--) {
+				text.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+			}
+			if (!compare(scanner, text.toString())) {
+				System.exit(1);
+			}
+			nMatches += countMatches(text.toString());
+		}
+		System.out.println(nRandomTexts + " random texts: equal matches (" + nMatches + ")");
+
+		// equal matches and run times for whole texts
+		List<String> texts = new ArrayList<String>();
+		for (int i = 1; i < args.length; i++) {
+			texts.add(new String(Files.readAllBytes(new File(args[i]).toPath()), StandardCharsets.UTF_8));
+		}
+		if (texts.isEmpty()) {
+			StringBuilder sample = new StringBuilder();
+			for (int i = 0; i < 20000; i++) {
+				sample.append(SAMPLE_LINE);
+			}
+			texts.add(sample.toString());
+		}
+		for (String text : texts) {
+			if (!compare(scanner, text)) {
+				System.exit(1);
+			}
+			for (int run = 0; run < 5; run++) {
+				long start = System.nanoTime();
+				countMatches(text);
+				long regexTime = System.nanoTime() - start;
+				start = System.nanoTime();
+				scanner.scan(text);
+				long scannerTime = System.nanoTime() - start;
+				System.out.println(text.length() + " chars: separate passes " + regexTime / 1000000
+						+ " ms, single pass " + scannerTime / 1000000 + " ms");
+			}
+		}
+	}
+
+	/**
+	 * Compares the matches of the scanner with separate full-text passes.
+	 *
+	 * @param scanner
+	 *            the scanner
+	 * @param text
+	 *            the text
+	 * @return true, if the matches are equal
+	 */
+	private static boolean compare(PatternScanner scanner, String text) {
+		List<List<MatchResult>> scannerMatches = scanner.scan(text);
+		for (int i = 0; i < PATTERNS.length; i++) {
+			List<String> expected = new ArrayList<String>();
+			Matcher matcher = PATTERNS[i].matcher(text);
+			while (matcher.find()) {
+				expected.add(matcher.start() + "-" + matcher.end() + ":" + matcher.group());
+			}
+			List<String> actual = new ArrayList<String>();
+			for (MatchResult match : scannerMatches.get(i)) {
+				actual.add(match.start() + "-" + match.end() + ":" + match.group());
+			}
+			if (!expected.equals(actual)) {
+				System.out.println("Different matches of pattern " + i + " in text '" + text + "': expected "
+						+ expected + ", found " + actual);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Counts the matches of separate full-text passes.
+	 *
+	 * @param text
+	 *            the text
+	 * @return the number of matches
+	 */
+	private static int countMatches(String text) {
+		int n = 0;
+		for (Pattern pattern : PATTERNS) {
+			Matcher matcher = pattern.matcher(text);
+			while (matcher.find()) {
+				n++;
+			}
+		}
+		return n;
+	}
+
+}
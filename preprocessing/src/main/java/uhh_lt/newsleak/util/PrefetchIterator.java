@@ -0,0 +1,152 @@
+package uhh_lt.newsleak.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Iterates over items which are fetched in batches (e.g. pages of a scroll
+ * request) by a background thread. The thread keeps a bounded buffer of
+ * batches filled, so the consumer only waits if it is faster than the source.
+ *
+ * A failure of the source is passed to the consumer on the next call of
+ * {@link #hasNext()} after all batches fetched before the failure.
+ *
+ * @param <T>
+ *            the item type
+ */
+public class PrefetchIterator<T> {
+
+	/** The marker for the end of the batches. */
+	private final List<T> endOfBatches = new ArrayList<T>();
+
+	/** The buffer of fetched batches. */
+	private BlockingQueue<List<T>> buffer;
+
+	/** The fetching thread. */
+	private Thread fetcher;
+
+	/** The failure of the source (null, if there is none). */
+	private volatile Exception failure;
+
+	/** The current batch. */
+	private Iterator<T> currentBatch;
+
+	/** True, if all batches have been consumed. */
+	private boolean finished = false;
+
+	/**
+	 * Starts prefetching from a batch source.
+	 *
+	 * @param source
+	 *            the batch source
+	 * @param bufferedBatches
+	 *            the maximum number of batches fetched ahead
+	 * @param name
+	 *            the name of the fetching thread
+	 */
+	public PrefetchIterator(BatchSource<T> source, int bufferedBatches, String name) {
+		buffer = new ArrayBlockingQueue<List<T>>(Math.max(1, bufferedBatches));
+		fetcher = new Thread(() -> {
+			try {
+				List<T> batch = source.nextBatch();
+				while (batch != null && !batch.isEmpty()) {
+					buffer.put(batch);
+					batch = source.nextBatch();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (Exception e) {
+				failure = e;
+			} finally {
+				source.close();
+			}
+			try {
+				buffer.put(endOfBatches);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}, name);
+		fetcher.setDaemon(true);
+		fetcher.start();
+	}
+
+	/**
+	 * Checks for a next item. Blocks until the next batch has been fetched.
+	 *
+	 * @return true, if there is a next item
+	 * @throws IOException
+	 *             if fetching a batch failed
+	 */
+	public boolean hasNext() throws IOException {
+		while (!finished && (currentBatch == null || !currentBatch.hasNext())) {
+			List<T> batch;
+			try {
+				batch = buffer.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for the next batch", e);
+			}
+			if (batch == endOfBatches) {
+				finished = true;
+				if (failure != null) {
+					throw new IOException("Fetching the next batch failed", failure);
+				}
+			} else {
+				currentBatch = batch.iterator();
+			}
+		}
+		return !finished;
+	}
+
+	/**
+	 * Gets the next item.
+	 *
+	 * @return the item
+	 * @throws IOException
+	 *             if fetching a batch failed
+	 */
+	public T next() throws IOException {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return currentBatch.next();
+	}
+
+	/**
+	 * Stops prefetching.
+	 */
+	public void close() {
+		fetcher.interrupt();
+	}
+
+	/**
+	 * A source of item batches. Batches are requested sequentially by a single
+	 * thread.
+	 *
+	 * @param <T>
+	 *            the item type
+	 */
+	public interface BatchSource<T> {
+
+		/**
+		 * Fetches the next batch.
+		 *
+		 * @return the batch (null or empty at the end)
+		 * @throws Exception
+		 *             the exception
+		 */
+		List<T> nextBatch() throws Exception;
+
+		/**
+		 * Releases the source (after the last batch or a failure).
+		 */
+		void close();
+	}
+
+}
@@ -0,0 +1,152 @@
+package uhh_lt.newsleak.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.uima.util.Level;
+import org.apache.uima.util.Logger;
+
+/**
+ * Executes independent SQL statements (e.g. the index definitions of
+ * <i>desc/postgresIndices.sql</i>) concurrently over several db connections.
+ * Each statement runs in its own transaction. Since postgres builds a single
+ * index with a single backend, creating the indexes of a freshly loaded
+ * database in parallel is considerably faster than running the script as one
+ * statement.
+ */
+public class SqlScriptRunner {
+
+	/** The jdbc url of the database. */
+	private String jdbcUrl;
+
+	/** The db user. */
+	private String dbUser;
+
+	/** The db pass. */
+	private String dbPass;
+
+	/** The number of concurrent connections. */
+	private int threads;
+
+	/** The logger. */
+	private Logger logger;
+
+	/**
+	 * Instantiates a new SQL script runner.
+	 *
+	 * @param dbUrl
+	 *            the db url (host:port)
+	 * @param dbName
+	 *            the db name
+	 * @param dbUser
+	 *            the db user
+	 * @param dbPass
+	 *            the db pass
+	 * @param threads
+	 *            the number of concurrent connections
+	 * @param logger
+	 *            the logger
+	 */
+	public SqlScriptRunner(String dbUrl, String dbName, String dbUser, String dbPass, int threads, Logger logger) {
+		this.jdbcUrl = "jdbc:postgresql://" + dbUrl + "/" + dbName;
+		this.dbUser = dbUser;
+		this.dbPass = dbPass;
+		this.threads = Math.max(threads, 1);
+		this.logger = logger;
+	}
+
+	/**
+	 * Reads a SQL script and splits it into single statements. Comments are
+	 * removed. Statements must not contain semicolons in string literals.
+	 *
+	 * @param scriptFile
+	 *            the script file
+	 * @return the statements
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public static List<String> readStatements(String scriptFile) throws IOException {
+		String script = FileUtils.readFileToString(new File(scriptFile));
+		script = script.replaceAll("(?s)/\\*.*?\\*/", " ").replaceAll("--[^\n]*", " ");
+		List<String> statements = new ArrayList<String>();
+		for (String statement : script.split(";")) {
+			statement = statement.replaceAll("\\s+", " ").trim();
+			if (!statement.isEmpty()) {
+				statements.add(statement);
+			}
+		}
+		return statements;
+	}
+
+	/**
+	 * Executes the given statements concurrently and waits until all of them
+	 * are finished. Failing statements are logged and do not stop the execution
+	 * of the remaining statements.
+	 *
+	 * @param statements
+	 *            the statements
+	 * @return the number of failed statements
+	 * @throws SQLException
+	 *             if no db connection could be established
+	 */
+	public int executeParallel(List<String> statements) throws SQLException {
+		ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<String>(statements);
+		AtomicInteger failed = new AtomicInteger(0);
+		int nWorkers = Math.min(threads, statements.size());
+
+		List<Connection> connections = new ArrayList<Connection>();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(nWorkers, 1));
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (int i = 0; i < nWorkers; i++) {
+				Connection connection = DriverManager.getConnection(jdbcUrl, dbUser, dbPass);
+				connections.add(connection);
+				futures.add(executor.submit(() -> {
+					try (Statement st = connection.createStatement()) {
+						String sql;
+						while ((sql = queue.poll()) != null) {
+							long start = System.currentTimeMillis();
+							try {
+								st.execute(sql);
+								logger.log(Level.INFO, "Executed in " + (System.currentTimeMillis() - start)
+										+ " ms: " + sql);
+							} catch (SQLException e) {
+								failed.incrementAndGet();
+								logger.log(Level.SEVERE, "Failed: " + sql + " (" + e.getMessage() + ")");
+							}
+						}
+					} catch (SQLException e) {
+						e.printStackTrace();
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				try {
+					future.get();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		} finally {
+			executor.shutdown();
+			for (Connection connection : connections) {
+				connection.close();
+			}
+		}
+		// statements left over if a worker died without executing them
+		return failed.get() + queue.size();
+	}
+
+}
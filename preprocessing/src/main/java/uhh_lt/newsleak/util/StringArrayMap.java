@@ -0,0 +1,232 @@
+package uhh_lt.newsleak.util;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A read-only hash map from strings to string arrays, which is used directly
+ * from a (memory-mapped) buffer written by {@link #write(DataOutput, Map)}.
+ * Reading the map takes constant time, independent of the number of keys, and
+ * looking up a key allocates objects only for the values of a found key.
+ *
+ * All strings (keys and values, equal strings kept once) are stored in one
+ * char table. Keys are found by open addressing with linear probing in a slot
+ * table of at least twice the number of keys. Since the map is immutable, it
+ * can be shared by several threads.
+ */
+public class StringArrayMap {
+
+	/** The number of keys. */
+	private final int size;
+
+	/** The slots (key index + 1, 0 if empty). */
+	private final IntBuffer slots;
+
+	/** The start offsets of strings in the char table (one more than strings). */
+	private final IntBuffer stringStarts;
+
+	/** The start offsets of the values of keys (one more than keys). */
+	private final IntBuffer valueStarts;
+
+	/** The string indexes of values. */
+	private final IntBuffer values;
+
+	/** The char table. */
+	private final CharBuffer chars;
+
+	/**
+	 * Instantiates a new string array map.
+	 *
+	 * @param in
+	 *            the input
+	 */
+	private StringArrayMap(ByteBuffer in) {
+		size = in.getInt();
+		int nSlots = in.getInt();
+		int nStrings = in.getInt();
+		int nValues = in.getInt();
+		int nChars = in.getInt();
+		slots = BinaryFormat.readInts(in, nSlots);
+		stringStarts = BinaryFormat.readInts(in, nStrings + 1);
+		valueStarts = BinaryFormat.readInts(in, size + 1);
+		values = BinaryFormat.readInts(in, nValues);
+		chars = BinaryFormat.readChars(in, nChars);
+	}
+
+	/**
+	 * Writes a map.
+	 *
+	 * @param out
+	 *            the output
+	 * @param map
+	 *            the map
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public static void write(DataOutput out, Map<String, String[]> map) throws IOException {
+		// number keys first, then distinct values
+		List<String> keys = new ArrayList<String>(map.keySet());
+		List<String> strings = new ArrayList<String>(keys);
+		Map<String, Integer> stringIds = new HashMap<String, Integer>();
+		for (int i = 0; i < keys.size(); i++) {
+			stringIds.put(keys.get(i), i);
+		}
+		int[] valueStarts = new int[keys.size() + 1];
+		List<Integer> values = new ArrayList<Integer>();
+		for (int i = 0; i < keys.size(); i++) {
+			valueStarts[i] = values.size();
+			for (String value : map.get(keys.get(i))) {
+				Integer id = stringIds.get(value);
+				if (id == null) {
+					id = strings.size();
+					stringIds.put(value, id);
+					strings.add(value);
+				}
+				values.add(id);
+			}
+		}
+		valueStarts[keys.size()] = values.size();
+
+		int nSlots = Integer.highestOneBit(Math.max(1, keys.size()) * 2) * 2;
+		int[] slots = new int[nSlots];
+		for (int i = 0; i < keys.size(); i++) {
+			int slot = hash(keys.get(i)) & (nSlots - 1);
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & (nSlots - 1);
+			}
+			slots[slot] = i + 1;
+		}
+
+		int[] stringStarts = new int[strings.size() + 1];
+		for (int i = 0; i < strings.size(); i++) {
+			stringStarts[i + 1] = stringStarts[i] + strings.get(i).length();
+		}
+
+		out.writeInt(keys.size());
+		out.writeInt(nSlots);
+		out.writeInt(strings.size());
+		out.writeInt(values.size());
+		out.writeInt(stringStarts[strings.size()]);
+		BinaryFormat.writeInts(out, IntBuffer.wrap(slots));
+		BinaryFormat.writeInts(out, IntBuffer.wrap(stringStarts));
+		BinaryFormat.writeInts(out, IntBuffer.wrap(valueStarts));
+		for (int value : values) {
+			out.writeInt(value);
+		}
+		for (String s : strings) {
+			out.writeChars(s);
+		}
+	}
+
+	/**
+	 * Reads a map written by {@link #write(DataOutput, Map)}. The map is a view
+	 * of the input, which is positioned after the map.
+	 *
+	 * @param in
+	 *            the input
+	 * @return the map
+	 */
+	public static StringArrayMap read(ByteBuffer in) {
+		return new StringArrayMap(in);
+	}
+
+	/**
+	 * Gets the values of a key.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the values (null, if the key is not in the map)
+	 */
+	public String[] get(String key) {
+		int mask = slots.limit() - 1;
+		for (int slot = hash(key) & mask;; slot = (slot + 1) & mask) {
+			int i = slots.get(slot) - 1;
+			if (i < 0) {
+				return null;
+			}
+			if (equals(i, key)) {
+				return getValues(i);
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of keys.
+	 *
+	 * @return the number of keys
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets a key.
+	 *
+	 * @param i
+	 *            the index of the key (0 to size - 1)
+	 * @return the key
+	 */
+	public String getKey(int i) {
+		return BinaryFormat.getString(chars, stringStarts.get(i), stringStarts.get(i + 1));
+	}
+
+	/**
+	 * Gets the values of a key.
+	 *
+	 * @param i
+	 *            the index of the key (0 to size - 1)
+	 * @return the values
+	 */
+	public String[] getValues(int i) {
+		int start = valueStarts.get(i);
+		String[] result = new String[valueStarts.get(i + 1) - start];
+		for (int v = 0; v < result.length; v++) {
+			int s = values.get(start + v);
+			result[v] = BinaryFormat.getString(chars, stringStarts.get(s), stringStarts.get(s + 1));
+		}
+		return result;
+	}
+
+	/**
+	 * Checks if a stored string equals a string.
+	 *
+	 * @param s
+	 *            the index of the stored string
+	 * @param string
+	 *            the string
+	 * @return true, if the strings are equal
+	 */
+	private boolean equals(int s, String string) {
+		int start = stringStarts.get(s);
+		if (stringStarts.get(s + 1) - start != string.length()) {
+			return false;
+		}
+		for (int i = 0; i < string.length(); i++) {
+			if (chars.get(start + i) != string.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Computes the hash of a key (String.hashCode is specified, so the hash is
+	 * the same in every JVM).
+	 *
+	 * @param key
+	 *            the key
+	 * @return the hash
+	 */
+	private static int hash(String key) {
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+}
@@ -19,7 +19,6 @@ import org.apache.uima.jcas.JCas;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.util.Level;
 import org.apache.uima.util.Logger;
-import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.client.transport.TransportClient;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
@@ -49,6 +48,10 @@ import uhh_lt.newsleak.services.StatsService;
  * 
  * Paragraph splitting is heuristically assumed at occurrence of one or more
  * empty lines.
+ * 
+ * Documents are indexed asynchronously in bulk requests via the bulk sink of
+ * the @see uhh_lt.newsleak.resources.ElasticsearchResource. Pending requests
+ * are sent (and the index is refreshed) at the end of the collection.
  */
 @OperationalProperties(multipleDeploymentAllowed = true, modifiesCas = true)
 public class ElasticsearchDocumentWriter extends JCasAnnotator_ImplBase {
@@ -190,10 +193,10 @@ public class ElasticsearchDocumentWriter extends JCasAnnotator_ImplBase {
 				builder = XContentFactory.jsonBuilder().startObject().field("id", newsleakDocId.toString())
 						.field("Content", docText).field("Created", dateFormat.format(created))
 						.field("DocumentLanguage", jcas.getDocumentLanguage()).endObject();
-				IndexResponse response = client
+				esResource.getBulkSink().add(client
 						.prepareIndex(esResource.getIndex(), ES_TYPE_DOCUMENT, newsleakDocId.toString())
-						.setSource(builder).get();
-				logger.log(Level.INFO, response.toString());
+						.setSource(builder).request());
+				logger.log(Level.FINE, "Document " + newsleakDocId + " (" + tmpDocId + ") queued for indexing");
 			} catch (IOException e) {
 				e.printStackTrace();
 			} catch (ParseException e) {
@@ -316,8 +319,10 @@ public class ElasticsearchDocumentWriter extends JCasAnnotator_ImplBase {
 	@Override
 	public void collectionProcessComplete() throws AnalysisEngineProcessException {
 		try {
+			// send pending bulk requests
+			esResource.closeBulkSink();
 			esResource.writeDocumentIdMapping();
-		} catch (IOException e) {
+		} catch (IOException | InterruptedException e) {
 			throw new AnalysisEngineProcessException(e);
 		}
 		super.collectionProcessComplete();
@@ -2,9 +2,11 @@ package uhh_lt.newsleak.writer;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 
 import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
@@ -22,7 +24,13 @@ import org.apache.uima.util.Logger;
 import opennlp.uima.Location;
 import opennlp.uima.Organization;
 import opennlp.uima.Person;
+import opennlp.uima.Sentence;
+import uhh_lt.newsleak.resources.PostgresDocumentRecord;
+import uhh_lt.newsleak.resources.PostgresDocumentRecord.EntityRecord;
+import uhh_lt.newsleak.resources.PostgresDocumentRecord.EventtimeRecord;
+import uhh_lt.newsleak.resources.PostgresDocumentRecord.KeytermRecord;
 import uhh_lt.newsleak.resources.PostgresResource;
+import uhh_lt.newsleak.resources.PostgresSession;
 import uhh_lt.newsleak.types.DictTerm;
 import uhh_lt.newsleak.types.Metadata;
 import uhh_lt.newsleak.services.StatsService;
@@ -45,6 +53,9 @@ public class PostgresDbWriter extends JCasAnnotator_ImplBase {
 	@ExternalResource(key = RESOURCE_POSTGRES)
 	private PostgresResource postgresResource;
 
+	/** The session of this writer instance (if not in write-behind mode). */
+	private PostgresSession postgresSession;
+
 	/** The time formatter. */
 	private NewsleakTimeFormatter timeFormatter;
 
@@ -60,6 +71,15 @@ public class PostgresDbWriter extends JCasAnnotator_ImplBase {
 		super.initialize(context);
 		logger = context.getLogger();
 		timeFormatter = new NewsleakTimeFormatter();
+		if (!postgresResource.isWriteBehind()) {
+			try {
+				postgresSession = postgresResource.createSession();
+			} catch (SQLException e) {
+				logger.log(Level.SEVERE, "Could not connect to postgres db");
+				e.printStackTrace();
+				System.exit(1);
+			}
+		}
 	}
 
 	/*
@@ -72,7 +92,19 @@ public class PostgresDbWriter extends JCasAnnotator_ImplBase {
 	public void collectionProcessComplete() throws AnalysisEngineProcessException {
 		super.collectionProcessComplete();
 		// commit final inserts/updates
-		postgresResource.commit();
+		try {
+			if (postgresResource.isWriteBehind()) {
+				// wait until the writer threads have written everything queued so far
+				postgresResource.finish();
+			} else {
+				postgresSession.commit();
+				postgresSession.close();
+			}
+			logger.log(Level.INFO, "Commit statistics: " + postgresResource.getCommitPolicy().getStatistics());
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
 	}
 
 	/*
@@ -93,15 +125,23 @@ public class PostgresDbWriter extends JCasAnnotator_ImplBase {
 			// documents
 			String docText = jcas.getDocumentText().replaceAll("\r", "");
 			String docDate = metadata.getTimestamp();
-			postgresResource.insertDocument(docId, docText, docDate);
+
+			// sentence boundaries (for sentence-level co-occurrences)
+			Collection<Sentence> sentences = JCasUtil.select(jcas, Sentence.class);
+			int[] sentenceBegins = new int[sentences.size()];
+			int nSentences = 0;
+			for (Sentence sentence : sentences) {
+				sentenceBegins[nSentences++] = sentence.getBegin();
+			}
 
 			// entities and offsets
+			ArrayList<EntityRecord> entities = new ArrayList<EntityRecord>();
 			Collection<Person> persons = JCasUtil.select(jcas, Person.class);
-			processEntities(persons, "PER", docId);
+			processEntities(persons, "PER", sentenceBegins, entities);
 			Collection<Organization> orgs = JCasUtil.select(jcas, Organization.class);
-			processEntities(orgs, "ORG", docId);
+			processEntities(orgs, "ORG", sentenceBegins, entities);
 			Collection<Location> locs = JCasUtil.select(jcas, Location.class);
-			processEntities(locs, "LOC", docId);
+			processEntities(locs, "LOC", sentenceBegins, entities);
 
 			// dictionary entities
 			HashMap<String, HashSet<DictTerm>> dictAnnotations = new HashMap<String, HashSet<DictTerm>>();
@@ -123,10 +163,11 @@ public class PostgresDbWriter extends JCasAnnotator_ImplBase {
 				}
 			}
 			for (String type : dictAnnotations.keySet()) {
-				processEntities(dictAnnotations.get(type), type, docId, baseFormMap.get(type));
+				processEntities(dictAnnotations.get(type), type, sentenceBegins, entities, baseFormMap.get(type));
 			}
 
 			// eventtime
+			ArrayList<EventtimeRecord> eventtimes = new ArrayList<EventtimeRecord>();
 			ArrayList<String> extractedTimes = timeFormatter.format(jcas);
 			if (extractedTimes.size() > 0) {
 				for (String line : extractedTimes) {
@@ -134,8 +175,8 @@ public class PostgresDbWriter extends JCasAnnotator_ImplBase {
 					try {
 						String formattedDate = timeFormatter.filterDate(items[4]);
 						if (formattedDate != null) {
-							postgresResource.insertEventtime(docId, Integer.parseInt(items[0]),
-									Integer.parseInt(items[1]), items[2], items[3], formattedDate);
+							eventtimes.add(new EventtimeRecord(Integer.parseInt(items[0]), Integer.parseInt(items[1]),
+									items[2], items[3], formattedDate));
 						}
 					} catch (Exception e) {
 						System.out.println(items);
@@ -144,18 +185,26 @@ public class PostgresDbWriter extends JCasAnnotator_ImplBase {
 			}
 
 			// terms
+			ArrayList<KeytermRecord> keyterms = new ArrayList<KeytermRecord>();
 			String keytermList = metadata.getKeyterms();
 			if (keytermList != null) {
 				for (String item : metadata.getKeyterms().split("\t")) {
 					String[] termFrq = item.split(":");
 					if (termFrq.length == 2) {
-						postgresResource.insertKeyterms(docId, termFrq[0], Integer.parseInt(termFrq[1]));
+						keyterms.add(new KeytermRecord(termFrq[0], Integer.parseInt(termFrq[1])));
 					}
 				}
 			}
 
-			// execute batches
-			postgresResource.executeBatches();
+			PostgresDocumentRecord record = new PostgresDocumentRecord(docId, docText, docDate, nSentences,
+					entities, eventtimes, keyterms);
+			if (postgresResource.isWriteBehind()) {
+				// blocks while the write queue is full
+				postgresResource.submit(record);
+			} else if (postgresSession.write(record)) {
+				logger.log(Level.INFO, postgresSession.getDocumentCounter() + " documents committed by this writer (total: "
+						+ postgresResource.getDocumentCounter() + ")");
+			}
 
 		} catch (SQLException e) {
 			logger.log(Level.SEVERE, "Could not write document " + docId);
@@ -177,34 +226,34 @@ public class PostgresDbWriter extends JCasAnnotator_ImplBase {
 	 *            the matches
 	 * @param type
 	 *            the type
-	 * @param docId
-	 *            the doc id
-	 * @throws SQLException
-	 *             the SQL exception
+	 * @param sentenceBegins
+	 *            the begin offsets of the sentences of the document (sorted)
+	 * @param entities
+	 *            the entity records of the document
 	 */
-	private void processEntities(Collection<? extends Annotation> matches, String type, Integer docId)
-			throws SQLException {
-		processEntities(matches, type, docId, null);
+	private void processEntities(Collection<? extends Annotation> matches, String type, int[] sentenceBegins,
+			ArrayList<EntityRecord> entities) {
+		processEntities(matches, type, sentenceBegins, entities, null);
 	}
 
 	/**
-	 * Process entities.
+	 * Process entities. Mentions are grouped by entity name, and an entity record
+	 * with the offsets of all mentions is added for each entity.
 	 *
 	 * @param matches
 	 *            the matches
 	 * @param type
 	 *            the type
-	 * @param docId
-	 *            the doc id
+	 * @param sentenceBegins
+	 *            the begin offsets of the sentences of the document (sorted)
+	 * @param entities
+	 *            the entity records of the document
 	 * @param baseForms
 	 *            the base forms
-	 * @throws SQLException
-	 *             the SQL exception
 	 */
-	private void processEntities(Collection<? extends Annotation> matches, String type, Integer docId,
-			HashMap<String, String> baseForms) throws SQLException {
-		HashMap<String, Integer> counter = new HashMap<String, Integer>();
-		HashMap<String, ArrayList<Annotation>> offsets = new HashMap<String, ArrayList<Annotation>>();
+	private void processEntities(Collection<? extends Annotation> matches, String type, int[] sentenceBegins,
+			ArrayList<EntityRecord> entities, HashMap<String, String> baseForms) {
+		LinkedHashMap<String, ArrayList<Annotation>> offsets = new LinkedHashMap<String, ArrayList<Annotation>>();
 		for (Annotation annotation : matches) {
 			String entity;
 			if (baseForms == null) {
@@ -213,7 +262,6 @@ public class PostgresDbWriter extends JCasAnnotator_ImplBase {
 				String coveredText = annotation.getCoveredText();
 				entity = baseForms.containsKey(coveredText) ? baseForms.get(coveredText) : coveredText;
 			}
-			counter.put(entity, counter.containsKey(entity) ? counter.get(entity) + 1 : 1);
 			if (offsets.containsKey(entity)) {
 				offsets.get(entity).add(annotation);
 			} else {
@@ -222,12 +270,32 @@ public class PostgresDbWriter extends JCasAnnotator_ImplBase {
 				offsets.put(entity, l);
 			}
 		}
-		for (String entity : counter.keySet()) {
-			Integer entityId = postgresResource.insertEntity(entity, type, counter.get(entity));
-			for (Annotation annotation : offsets.get(entity)) {
-				postgresResource.insertEntityoffset(docId, entityId, annotation.getBegin(), annotation.getEnd());
+		for (String entity : offsets.keySet()) {
+			ArrayList<Annotation> mentions = offsets.get(entity);
+			int[] begins = new int[mentions.size()];
+			int[] ends = new int[mentions.size()];
+			int[] sentenceIndexes = new int[mentions.size()];
+			for (int i = 0; i < mentions.size(); i++) {
+				begins[i] = mentions.get(i).getBegin();
+				ends[i] = mentions.get(i).getEnd();
+				sentenceIndexes[i] = getSentenceIndex(sentenceBegins, begins[i]);
 			}
+			entities.add(new EntityRecord(entity, type, begins, ends, sentenceIndexes));
 		}
 	}
 
+	/**
+	 * Gets the index of the sentence containing an offset.
+	 *
+	 * @param sentenceBegins
+	 *            the begin offsets of the sentences (sorted)
+	 * @param offset
+	 *            the offset
+	 * @return the sentence index (-1, if the offset precedes all sentences)
+	 */
+	private static int getSentenceIndex(int[] sentenceBegins, int offset) {
+		int i = Arrays.binarySearch(sentenceBegins, offset);
+		return i >= 0 ? i : -i - 2;
+	}
+
 }